@@ -7,6 +7,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 
 import io.github.aaejo.institutionfinder.finder.InstitutionFinder;
+import io.github.aaejo.institutionfinder.finder.RunSummary;
 
 @SpringBootApplication
 public class InstitutionFinderApplication {
@@ -21,7 +22,8 @@ public class InstitutionFinderApplication {
         return args -> {
             System.out.println("Hit Enter to send...");
             System.in.read();
-            institutionFinder.produceInstitutions();
+            RunSummary summary = institutionFinder.produceInstitutions().join();
+            System.out.println(summary);
         };
     }
 
@@ -0,0 +1,80 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * InstitutionFinder that runs the finders for several countries at the same
+ * time, each on its own thread.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class CompositeInstitutionFinder implements InstitutionFinder {
+
+    private final Map<String, InstitutionFinder> finders;
+
+    /**
+     * @param finders   finders to run, by country
+     */
+    public CompositeInstitutionFinder(Map<String, InstitutionFinder> finders) {
+        this.finders = Map.copyOf(finders);
+    }
+
+    /**
+     * Produce institutions for every country concurrently, returning once all
+     * of them are done. A failure in one country is logged and does not affect
+     * the others, though the combined run is then incomplete.
+     *
+     * @param run   recorder of the run, which each country is recorded by a child of, or null for a
+     *              standalone run
+     * @return      combined summary of every country's run
+     */
+    @Async(EXECUTOR)
+    @Override
+    public CompletableFuture<RunSummary> produceInstitutions(RunRecorder run) {
+        log.info("Producing institutions for {}", finders.keySet());
+
+        List<String> countries = new ArrayList<>(finders.keySet());
+        List<RunSummary> summaries = new ArrayList<>(countries.size());
+        boolean complete = true;
+        ExecutorService executor = Executors.newFixedThreadPool(finders.size(),
+                new CustomizableThreadFactory("institution-finder-"));
+        try {
+            List<Future<RunSummary>> countryFutures = new ArrayList<>(countries.size());
+            for (String country : countries) {
+                InstitutionFinder finder = finders.get(country);
+                countryFutures.add(executor.submit(() -> finder.produceInstitutions(run).join()));
+            }
+
+            for (int i = 0; i < countries.size(); i++) {
+                try {
+                    summaries.add(countryFutures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.error("Unexpected failure producing for country = {}", countries.get(i), e.getCause());
+                    complete = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for countries to finish, abandoning remaining countries");
+            Thread.currentThread().interrupt();
+            complete = false;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.info("Done producing for all countries");
+        return CompletableFuture.completedFuture(RunSummary.combine(String.join(",", countries), complete, summaries));
+    }
+}
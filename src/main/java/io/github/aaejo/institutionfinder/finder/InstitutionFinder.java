@@ -1,5 +1,7 @@
 package io.github.aaejo.institutionfinder.finder;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.scheduling.annotation.Async;
 
 /**
@@ -9,9 +11,30 @@ import org.springframework.scheduling.annotation.Async;
  */
 public interface InstitutionFinder {
 
+    /**
+     * Name of the executor runs are started on, apart from the application's shared executor.
+     */
+    public static final String EXECUTOR = "institutionFinderExecutor";
+
     /**
      * Produce institutions in an implementation-specific manner.
+     *
+     * @param run   recorder of the run this is part of, which it is recorded by a child of and can be
+     *              cancelled through, or null for a standalone run
+     * @return      summary of the run, completed once the broker has acknowledged
+     *              (or failed) every institution sent
+     */
+    @Async(EXECUTOR)
+    public CompletableFuture<RunSummary> produceInstitutions(RunRecorder run);
+
+    /**
+     * Produce institutions in a standalone run.
+     *
+     * @return  summary of the run, completed once the broker has acknowledged
+     *          (or failed) every institution sent
      */
-    @Async
-    public void produceInstitutions();
+    @Async(EXECUTOR)
+    public default CompletableFuture<RunSummary> produceInstitutions() {
+        return produceInstitutions(null);
+    }
 }
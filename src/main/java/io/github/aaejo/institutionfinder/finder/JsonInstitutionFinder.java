@@ -6,41 +6,70 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.scheduling.annotation.Async;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 
+import io.github.aaejo.institutionfinder.finder.delta.InstitutionDelta;
+import io.github.aaejo.institutionfinder.finder.json.DataFileCompression;
+import io.github.aaejo.institutionfinder.finder.json.DataFileFormat;
+import io.github.aaejo.institutionfinder.finder.json.MappedJsonReader;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionKeys;
 import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
 import io.github.aaejo.messaging.records.Institution;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * JSON file-based InstitutionFinder implementation.
+ * File-based InstitutionFinder implementation, reading JSON, newline-delimited
+ * JSON or CSV data files, optionally gzip or Zstandard compressed.
  * 
  * @author Omri Harary
  */
 @Slf4j
 public class JsonInstitutionFinder implements InstitutionFinder {
 
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
     private final String country;
     private final InstitutionsProducer institutionsProducer;
     private final ObjectMapper objectMapper;
     private final Optional<String> file;
 
     private Counter institutionCounter;
+    private Timer jsonParseTimer;
+    private Timer ndjsonParseTimer;
+    private Timer csvParseTimer;
+    private InstitutionDelta delta;
+    private boolean sendTombstones;
+    private MappedJsonReader mappedReader;
+    private DataFileFormat format;
+    private DataFileCompression compression;
+    private RunRecorder run;
 
     public JsonInstitutionFinder(String country, InstitutionsProducer institutionsProducer, ObjectMapper objectMapper, Optional<String> file) {
         this.country = country.toLowerCase();
         this.institutionsProducer = institutionsProducer;
         this.objectMapper = objectMapper;
         this.file = file;
+        this.run = new RunRecorder(this.country);
     }
 
     public JsonInstitutionFinder(String country, InstitutionsProducer institutionsProducer, ObjectMapper objectMapper,
@@ -51,15 +80,70 @@ public class JsonInstitutionFinder implements InstitutionFinder {
                 .builder("jds.institution-finder.institutions")
                 .tag("country", this.country)
                 .register(registry);
+        jsonParseTimer = recordParseTimer(DataFileFormat.JSON, registry);
+        ndjsonParseTimer = recordParseTimer(DataFileFormat.NDJSON, registry);
+        csvParseTimer = recordParseTimer(DataFileFormat.CSV, registry);
+    }
+
+    /**
+     * Data files have no state to tag by, unlike registry pages.
+     */
+    private Timer recordParseTimer(DataFileFormat format, MeterRegistry registry) {
+        return Timer.builder("jds.institution-finder.data-file.parse")
+                .description("Time to parse a single record from a streamed data file")
+                .tag("country", country)
+                .tag("format", format.name().toLowerCase(Locale.ROOT))
+                .register(registry);
+    }
+
+    /**
+     * Only send institutions that are new or changed since the previous run.
+     * Institutions are identified by name.
+     *
+     * @param delta             fingerprints of previously sent institutions, or null to send every institution
+     * @param sendTombstones    whether to send tombstones for institutions that have disappeared
+     */
+    public void setDelta(InstitutionDelta delta, boolean sendTombstones) {
+        this.delta = delta;
+        this.sendTombstones = sendTombstones;
+    }
+
+    /**
+     * Read configured uncompressed JSON and NDJSON files by memory-mapping them
+     * and parsing chunks in parallel. Institutions on the classpath are always
+     * streamed.
+     *
+     * @param mappedReader  reader to use for configured files, or null to stream them
+     */
+    public void setMappedReader(MappedJsonReader mappedReader) {
+        this.mappedReader = mappedReader;
+    }
+
+    /**
+     * Set the format and compression of configured data files, instead of
+     * detecting them from the file extension.
+     *
+     * @param format        format of data files, or null to detect it
+     * @param compression   compression of data files, or null to detect it
+     */
+    public void setFormat(DataFileFormat format, DataFileCompression compression) {
+        this.format = format;
+        this.compression = compression;
     }
 
     /**
-     * Produce institutions from a configured JSON file or one in the classpath
+     * Produce institutions from a configured JSON, NDJSON or CSV file or one in the classpath
      * associated with this institution finder instance's country.
+     *
+     * A cancelled run stops at the next record.
+     *
+     * @param parentRun recorder of the run this is part of, or null for a standalone run
+     * @return          summary of the run, once every institution sent has been acknowledged
      */
-    @Async
+    @Async(EXECUTOR)
     @Override
-    public void produceInstitutions() {
+    public CompletableFuture<RunSummary> produceInstitutions(RunRecorder parentRun) {
+        run = parentRun != null ? parentRun.child(country) : new RunRecorder(country);
         String defaultFileName = country + ".json";
         Path dataFile = null;
         boolean useClasspathData = true;
@@ -67,11 +151,11 @@ public class JsonInstitutionFinder implements InstitutionFinder {
             dataFile = Paths.get(file.get());
 
             if (Files.isDirectory(dataFile)) {
-                // If a directory was provided, append default file name to it
-                dataFile = dataFile.resolve(defaultFileName);
+                // If a directory was provided, look for a file named for the country in it
+                dataFile = findDataFile(dataFile, defaultFileName);
                 log.warn(
-                        "Configured institutions file path was a directory, will attempt to find a file named {} in that directory",
-                        defaultFileName);
+                        "Configured institutions file path was a directory, will attempt to use {} in that directory",
+                        dataFile.getFileName());
             }
 
             if (Files.exists(dataFile, LinkOption.NOFOLLOW_LINKS)) {
@@ -86,12 +170,127 @@ public class JsonInstitutionFinder implements InstitutionFinder {
             log.info("Using {} on the classpath as institution data source", defaultFileName);
         }
 
-        try (InputStream inputStream = useClasspathData ? new ClassPathResource(defaultFileName).getInputStream()
-                : Files.newInputStream(dataFile);) {
-            produceInstitutionsJson(inputStream);
+        if (delta != null) {
+            delta.begin();
+        }
+
+        boolean complete = false;
+        try {
+            if (useClasspathData) {
+                ClassPathResource resource = new ClassPathResource(defaultFileName);
+                try (InputStream inputStream = resource.getInputStream()) {
+                    produceInstitutionsJson(inputStream);
+                }
+                run.bytesRead(resource.contentLength());
+            } else {
+                produceInstitutionsFile(dataFile);
+                run.bytesRead(Files.size(dataFile));
+            }
+            complete = true;
+        } catch (RunCancelledException e) {
+            log.warn("Run cancelled, institutions JSON file not fully processed");
         } catch (IOException e) {
             log.error("An error occurred processing the institutions JSON file", e);
         }
+
+        if (delta != null) {
+            // Fingerprints are only kept for sends that succeeded, so wait for them all first
+            complete = run.awaitSends(institutionsProducer) && complete;
+            List<String> removedNames = delta.finish(complete);
+            if (sendTombstones) {
+                removedNames.forEach(
+                        name -> run.track(institutionsProducer.sendTombstone(InstitutionKeys.byName(country, name))));
+            }
+            return CompletableFuture.completedFuture(run.finish(complete, institutionsProducer, "delta"));
+        }
+
+        return CompletableFuture.completedFuture(run.finish(complete, institutionsProducer));
+    }
+
+    /**
+     * Look in a directory for a data file named for this finder's country, in
+     * any supported format and compression.
+     *
+     * @param directory         directory to look in
+     * @param defaultFileName   file to use if none is found
+     * @return                  the first matching file, or the default file in the directory
+     */
+    private Path findDataFile(Path directory, String defaultFileName) {
+        for (String fileName : dataFileNames()) {
+            Path candidate = directory.resolve(fileName);
+            if (Files.exists(candidate, LinkOption.NOFOLLOW_LINKS)) {
+                return candidate;
+            }
+        }
+        return directory.resolve(defaultFileName);
+    }
+
+    /**
+     * @param fileName  name of a file in the configured data directory
+     * @return          whether it is a data file for this finder's country
+     */
+    public boolean isDataFileName(String fileName) {
+        return dataFileNames().contains(fileName);
+    }
+
+    /**
+     * @return  names a data file for this finder's country can have, in order of preference
+     */
+    private List<String> dataFileNames() {
+        List<DataFileFormat> formats = format != null ? List.of(format) : List.of(DataFileFormat.values());
+        List<DataFileCompression> compressions = compression != null ? List.of(compression)
+                : List.of(DataFileCompression.values());
+
+        List<String> fileNames = new ArrayList<>();
+        for (DataFileCompression fileCompression : compressions) {
+            List<String> compressionExtensions = fileCompression == DataFileCompression.NONE ? List.of("")
+                    : fileCompression.extensions();
+            for (DataFileFormat fileFormat : formats) {
+                for (String formatExtension : fileFormat.extensions()) {
+                    for (String compressionExtension : compressionExtensions) {
+                        fileNames.add(country + formatExtension + compressionExtension);
+                    }
+                }
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Produce institutions from a data file, in its configured or detected
+     * format and compression.
+     *
+     * @param dataFile      file to produce from
+     * @throws IOException  if the file can't be read or parsed
+     */
+    private void produceInstitutionsFile(Path dataFile) throws IOException {
+        DataFileFormat fileFormat = format != null ? format : DataFileFormat.detect(dataFile);
+        DataFileCompression fileCompression = compression != null ? compression
+                : DataFileCompression.detect(dataFile);
+        log.debug("Reading {} as {} with {} compression", dataFile, fileFormat, fileCompression);
+
+        // Compressed files can't be split without decompressing them, so those are always streamed
+        if (mappedReader != null && fileCompression == DataFileCompression.NONE) {
+            switch (fileFormat) {
+                case JSON -> {
+                    mappedReader.readArray(dataFile, Institution.class, this::produceInstitution);
+                    return;
+                }
+                case NDJSON -> {
+                    mappedReader.readLines(dataFile, Institution.class, this::produceInstitution);
+                    return;
+                }
+                case CSV -> log.debug("CSV files are not read in parallel, streaming {}", dataFile);
+            }
+        }
+
+        try (InputStream inputStream = fileCompression.decompress(Files.newInputStream(dataFile))) {
+            switch (fileFormat) {
+                case JSON -> produceInstitutionsJson(inputStream);
+                case NDJSON -> produceInstitutionsNdjson(inputStream);
+                case CSV -> produceInstitutionsCsv(inputStream);
+            }
+        }
     }
 
     /**
@@ -109,11 +308,73 @@ public class JsonInstitutionFinder implements InstitutionFinder {
             }
 
             while (parser.nextToken() != JsonToken.END_ARRAY) {
+                long start = System.nanoTime();
                 Institution institution = this.objectMapper.readValue(parser, Institution.class);
-                institutionsProducer.send(institution);
-                institutionCounter.increment();
+                long elapsed = System.nanoTime() - start;
+                jsonParseTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                run.recordPhase("parse", elapsed);
+                produceInstitution(institution);
+            }
+        }
+    }
+
+    /**
+     * Produce institutions from a newline-delimited JSON stream, one institution per line.
+     *
+     * @param institutionsNdjsonStream  input stream to produce from
+     * @throws IOException              thrown by ObjectMapper
+     */
+    public void produceInstitutionsNdjson(InputStream institutionsNdjsonStream) throws IOException {
+        try (MappingIterator<Institution> institutions = objectMapper.readerFor(Institution.class)
+                .readValues(institutionsNdjsonStream)) {
+            while (institutions.hasNextValue()) {
+                long start = System.nanoTime();
+                Institution institution = institutions.nextValue();
+                long elapsed = System.nanoTime() - start;
+                ndjsonParseTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                run.recordPhase("parse", elapsed);
+                produceInstitution(institution);
             }
         }
     }
 
+    /**
+     * Produce institutions from a CSV stream. The first row must be a header
+     * naming the institution fields, other columns are ignored.
+     *
+     * @param institutionsCsvStream input stream to produce from
+     * @throws IOException          thrown by CsvMapper
+     */
+    public void produceInstitutionsCsv(InputStream institutionsCsvStream) throws IOException {
+        try (MappingIterator<Institution> institutions = CSV_MAPPER.readerFor(Institution.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValues(institutionsCsvStream)) {
+            while (institutions.hasNextValue()) {
+                long start = System.nanoTime();
+                Institution institution = institutions.nextValue();
+                long elapsed = System.nanoTime() - start;
+                csvParseTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                run.recordPhase("parse", elapsed);
+                produceInstitution(institution);
+            }
+        }
+    }
+
+    private void produceInstitution(Institution institution) {
+        run.checkCancelled();
+        if (delta != null && !delta.isChanged(institution.name(), institution)) {
+            log.debug("{} unchanged since previous run, not sending", institution.name());
+            run.skipped();
+            return;
+        }
+        CompletableFuture<SendOutcome> sendOutcome = institutionsProducer.send(
+                InstitutionKeys.byName(country, institution.name()), institution);
+        if (delta != null) {
+            sendOutcome = delta.track(institution.name(), institution, sendOutcome);
+        }
+        run.track(sendOutcome);
+        institutionCounter.increment();
+    }
+
 }
@@ -0,0 +1,13 @@
+package io.github.aaejo.institutionfinder.finder;
+
+/**
+ * Thrown from within a run that has been cancelled, to stop reading records.
+ *
+ * @author Omri Harary
+ */
+public class RunCancelledException extends RuntimeException {
+
+    public RunCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Starts and keeps track of InstitutionFinder runs, allowing only one at a
+ * time. Starting a run while another is in progress returns the one in
+ * progress instead.
+ *
+ * The most recent runs are kept, so their outcomes can still be looked up
+ * after they finish.
+ *
+ * Runs of a single finder, such as those started when a watched data file
+ * changes, go through here too, so they never overlap a run of the same
+ * finder. If a run is in progress they are queued instead, and started once it
+ * finishes. Queuing the same finder again while it waits has no further effect.
+ *
+ * Every run is started on the given executor, so a run started from a watcher's
+ * thread, or by the run before it finishing, doesn't take over that thread.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class RunManager {
+
+    private static final int HISTORY = 20;
+
+    private final InstitutionFinder institutionFinder;
+    private final Executor executor;
+
+    private final Map<String, Run> runs = new LinkedHashMap<>();
+    private final Set<InstitutionFinder> queued = new LinkedHashSet<>();
+    private Run activeRun;
+
+    /**
+     * @param institutionFinder finder started by {@link #start()}
+     * @param executor          executor runs are started on
+     */
+    public RunManager(InstitutionFinder institutionFinder, Executor executor) {
+        this.institutionFinder = institutionFinder;
+        this.executor = executor;
+    }
+
+    /**
+     * Start a run, unless one is already in progress.
+     *
+     * @return  the new run, or the run already in progress
+     */
+    public Start start() {
+        Run run;
+        synchronized (this) {
+            if (activeRun != null) {
+                log.info("Run {} already in progress, not starting another", activeRun.id);
+                return new Start(activeRun.status(), false);
+            }
+            run = activate();
+        }
+
+        launch(run, institutionFinder);
+        return new Start(run.status(), true);
+    }
+
+    /**
+     * Start a run of the given finder, or queue it to start once the run in
+     * progress finishes.
+     *
+     * @param finder    finder to run, usually one of those the managed finder is made of
+     * @return          whether the run was started, rather than queued
+     */
+    public boolean startOrQueue(InstitutionFinder finder) {
+        Run run;
+        synchronized (this) {
+            if (activeRun != null) {
+                if (queued.add(finder)) {
+                    log.info("Run {} in progress, queuing another once it finishes", activeRun.id);
+                }
+                return false;
+            }
+            run = activate();
+        }
+
+        launch(run, finder);
+        return true;
+    }
+
+    private Run activate() {
+        Run run = new Run(UUID.randomUUID().toString());
+        activeRun = run;
+        runs.put(run.id, run);
+        if (runs.size() > HISTORY) {
+            runs.remove(runs.keySet().iterator().next());
+        }
+        return run;
+    }
+
+    private void launch(Run run, InstitutionFinder finder) {
+        log.info("Starting run {}", run.id);
+        CompletableFuture<RunSummary> summary;
+        try {
+            summary = CompletableFuture
+                    .supplyAsync(() -> finder.produceInstitutions(run.recorder), executor)
+                    .thenCompose(Function.identity());
+        } catch (RuntimeException e) { // Rejected by the executor
+            summary = CompletableFuture.failedFuture(e);
+        }
+        summary.whenComplete((result, ex) -> finished(run, result,
+                ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex));
+    }
+
+    /**
+     * @param id    ID of a run
+     * @return      status of the run, if it is one of the most recent
+     */
+    public synchronized Optional<RunStatus> status(String id) {
+        return Optional.ofNullable(runs.get(id)).map(Run::status);
+    }
+
+    /**
+     * Ask a run to stop at the next page or record. Sends already made are
+     * still waited for, so the run finishes shortly after rather than at once.
+     *
+     * @param id    ID of a run
+     * @return      status of the run, if it is one of the most recent
+     */
+    public synchronized Optional<RunStatus> cancel(String id) {
+        Run run = runs.get(id);
+        if (run == null) {
+            return Optional.empty();
+        }
+
+        if (run.finishedAt == null) {
+            log.info("Cancelling run {}", id);
+            run.recorder.cancel();
+        }
+        return Optional.of(run.status());
+    }
+
+    private void finished(Run run, RunSummary summary, Throwable failure) {
+        Run next = null;
+        InstitutionFinder nextFinder = null;
+        synchronized (this) {
+            run.summary = summary;
+            run.failure = failure;
+            run.finishedAt = Instant.now();
+            if (activeRun == run) {
+                activeRun = null;
+                Iterator<InstitutionFinder> waiting = queued.iterator();
+                if (waiting.hasNext()) {
+                    nextFinder = waiting.next();
+                    waiting.remove();
+                    next = activate();
+                }
+            }
+        }
+
+        if (failure != null) {
+            log.error("Run {} failed", run.id, failure);
+        } else {
+            log.info("Run {} finished: {}", run.id, summary);
+        }
+
+        if (next != null) {
+            launch(next, nextFinder);
+        }
+    }
+
+    /**
+     * @param run       the run
+     * @param started   whether the run was started, rather than already in progress
+     */
+    public record Start(RunStatus run, boolean started) {
+    }
+
+    /**
+     * State of a run at a point in time.
+     *
+     * @param id            ID of the run
+     * @param state         where the run is at
+     * @param startedAt     when the run started
+     * @param finishedAt    when the run finished, or null if it is in progress
+     * @param summary       counts and timings of the run, so far if it is in progress
+     */
+    public record RunStatus(String id, State state, Instant startedAt, Instant finishedAt, RunSummary summary) {
+    }
+
+    public enum State {
+        RUNNING,
+        CANCELLING,
+        COMPLETE,
+        INCOMPLETE,
+        CANCELLED,
+        FAILED
+    }
+
+    private static final class Run {
+
+        private final String id;
+        private final Instant startedAt = Instant.now();
+        private final RunRecorder recorder = new RunRecorder("all");
+
+        private volatile Instant finishedAt;
+        private volatile RunSummary summary;
+        private volatile Throwable failure;
+
+        private Run(String id) {
+            this.id = id;
+        }
+
+        private RunStatus status() {
+            Instant finished = finishedAt;
+            if (finished == null) {
+                return new RunStatus(id, recorder.isCancelled() ? State.CANCELLING : State.RUNNING, startedAt,
+                        null, recorder.progress());
+            }
+
+            State state;
+            if (failure != null) {
+                state = State.FAILED;
+            } else if (recorder.isCancelled()) {
+                state = State.CANCELLED;
+            } else {
+                state = summary.complete() ? State.COMPLETE : State.INCOMPLETE;
+            }
+            return new RunStatus(id, state, startedAt, finished, summary != null ? summary : recorder.progress());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the counts and timings of a single InstitutionFinder run, and
+ * tracks its sends until the broker has acknowledged all of them.
+ *
+ * Phases are timed back to back: each one ends when the next one does, the
+ * first starting when the recorder is created. Work that happens throughout a
+ * phase, such as fetching or parsing pages, is recorded as a phase of its own
+ * by adding up the time each piece of it took.
+ *
+ * A recorder can be cancelled while its run is in progress. Finders check for
+ * cancellation between pages and records, and stop early with an incomplete
+ * run. Runs over several countries record each country with a child recorder,
+ * which is cancelled along with its parent and included in its progress.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class RunRecorder {
+
+    private final String country;
+    private final RunRecorder parent;
+    private final List<RunRecorder> children = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder pagesFetched = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final Map<String, Duration> phases = new LinkedHashMap<>();
+    private long phaseStart = System.nanoTime();
+    private long pendingSends;
+
+    public RunRecorder(String country) {
+        this(country, null);
+    }
+
+    private RunRecorder(String country, RunRecorder parent) {
+        this.country = country;
+        this.parent = parent;
+    }
+
+    /**
+     * @param country   country the child run is for
+     * @return          recorder for part of this run, cancelled along with it
+     */
+    public RunRecorder child(String country) {
+        RunRecorder child = new RunRecorder(country, this);
+        children.add(child);
+        return child;
+    }
+
+    /**
+     * Ask the run to stop at the next page or record.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * @throws RunCancelledException    if the run has been cancelled
+     */
+    public void checkCancelled() {
+        if (isCancelled()) {
+            throw new RunCancelledException("Run for " + country + " cancelled");
+        }
+    }
+
+    /**
+     * Track a send until it completes.
+     *
+     * @param sendOutcome   outcome of the send, as returned by the producer
+     */
+    public void track(CompletableFuture<SendOutcome> sendOutcome) {
+        synchronized (this) {
+            pendingSends++;
+        }
+        sendOutcome.whenComplete((outcome, ex) -> {
+            if (ex != null || outcome == SendOutcome.FAILED) {
+                failed.increment();
+            } else if (outcome == SendOutcome.SPOOLED) {
+                spooled.increment();
+            } else {
+                emitted.increment();
+            }
+
+            synchronized (this) {
+                if (--pendingSends == 0) {
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Record an institution that was not sent, because it was unchanged or already sent.
+     */
+    public void skipped() {
+        skipped.increment();
+    }
+
+    /**
+     * Record an institution that could not be read.
+     */
+    public void failed() {
+        failed.increment();
+    }
+
+    /**
+     * @param bytes size of the page, or 0 if unknown
+     */
+    public void pageFetched(long bytes) {
+        pagesFetched.increment();
+        bytesRead.add(bytes);
+    }
+
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * End the current phase, starting the next one.
+     *
+     * @param phase name of the phase that ended
+     */
+    public synchronized void phaseEnded(String phase) {
+        long now = System.nanoTime();
+        phases.merge(phase, Duration.ofNanos(now - phaseStart), Duration::plus);
+        phaseStart = now;
+    }
+
+    /**
+     * Add time spent on work that runs alongside the back to back phases,
+     * possibly on several threads at once.
+     *
+     * @param phase name of the work
+     * @param nanos time spent on one piece of it
+     */
+    public synchronized void recordPhase(String phase, long nanos) {
+        phases.merge(phase, Duration.ofNanos(nanos), Duration::plus);
+    }
+
+    /**
+     * @return  counts and timings of the run so far. Sends still awaiting
+     *          acknowledgement are not counted yet.
+     */
+    public RunSummary progress() {
+        if (!children.isEmpty()) {
+            List<RunSummary> childProgress = children.stream().map(RunRecorder::progress).toList();
+            return RunSummary.combine(
+                    String.join(",", childProgress.stream().map(RunSummary::country).toList()),
+                    false,
+                    childProgress);
+        }
+        return summary(false);
+    }
+
+    /**
+     * Flush the producer and wait for the broker to acknowledge every send
+     * tracked so far, ending the {@code produce} and {@code acknowledge} phases.
+     *
+     * @param producer  producer the sends were made with
+     * @return          false if interrupted before every send completed
+     */
+    public boolean awaitSends(InstitutionsProducer producer) {
+        phaseEnded("produce");
+        boolean completed = flushAndWait(producer);
+        phaseEnded("acknowledge");
+        return completed;
+    }
+
+    /**
+     * Wait for every tracked send, as with {@link #awaitSends}, and summarise the run.
+     *
+     * @param complete  whether every source was read. A cancelled run is never complete.
+     * @param producer  producer the sends were made with
+     * @return          summary of the run
+     */
+    public RunSummary finish(boolean complete, InstitutionsProducer producer) {
+        complete = awaitSends(producer) && complete && !isCancelled();
+        return summarise(complete);
+    }
+
+    /**
+     * Wait for the sends tracked since {@link #awaitSends} was called, and
+     * summarise the run. The time since is recorded as the given phase, rather
+     * than as more of the {@code produce} and {@code acknowledge} phases.
+     *
+     * @param complete  whether every source was read. A cancelled run is never complete.
+     * @param producer  producer the sends were made with
+     * @param phase     name of the work done since the sends were awaited
+     * @return          summary of the run
+     */
+    public RunSummary finish(boolean complete, InstitutionsProducer producer, String phase) {
+        complete = flushAndWait(producer) && complete && !isCancelled();
+        phaseEnded(phase);
+        return summarise(complete);
+    }
+
+    private boolean flushAndWait(InstitutionsProducer producer) {
+        producer.flush();
+
+        synchronized (this) {
+            try {
+                while (pendingSends > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for {} sends to be acknowledged", pendingSends);
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RunSummary summarise(boolean complete) {
+        RunSummary summary = summary(complete);
+        log.info("Run summary: {}", summary);
+        return summary;
+    }
+
+    private synchronized RunSummary summary(boolean complete) {
+        return new RunSummary(country, complete, emitted.sum(), spooled.sum(), failed.sum(), skipped.sum(),
+                pagesFetched.sum(), bytesRead.sum(), Collections.unmodifiableMap(new LinkedHashMap<>(phases)));
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a run of an InstitutionFinder.
+ *
+ * @param country       country (or countries) the run was for
+ * @param complete      whether every source was read without interruption or unrecoverable errors
+ * @param emitted       institutions and tombstones the broker acknowledged
+ * @param spooled       institutions and tombstones spooled for sending later
+ * @param failed        institutions that could not be read or sent
+ * @param skipped       institutions not sent because they were unchanged or already sent
+ * @param pagesFetched  registry pages fetched
+ * @param bytesRead     bytes of data files or registry pages read
+ * @param phases        time spent in each phase of the run, in order. The {@code fetch} and
+ *                      {@code parse} phases are summed across threads and overlap {@code produce},
+ *                      so can add up to more than the run took.
+ *
+ * @author Omri Harary
+ */
+public record RunSummary(String country, boolean complete, long emitted, long spooled, long failed, long skipped,
+        long pagesFetched, long bytesRead, Map<String, Duration> phases) {
+
+    /**
+     * Combine the summaries of runs made at the same time. Phase durations are
+     * the longest of any run, as the runs overlapped.
+     *
+     * @param country   countries the runs were for
+     * @param complete  whether every run finished
+     * @param summaries summaries of the runs that finished
+     * @return          the combined summary
+     */
+    public static RunSummary combine(String country, boolean complete, List<RunSummary> summaries) {
+        Map<String, Duration> phases = new LinkedHashMap<>();
+        for (RunSummary summary : summaries) {
+            summary.phases().forEach((phase, duration) -> phases.merge(phase, duration,
+                    (a, b) -> a.compareTo(b) >= 0 ? a : b));
+        }
+
+        return new RunSummary(country,
+                complete && summaries.stream().allMatch(RunSummary::complete),
+                summaries.stream().mapToLong(RunSummary::emitted).sum(),
+                summaries.stream().mapToLong(RunSummary::spooled).sum(),
+                summaries.stream().mapToLong(RunSummary::failed).sum(),
+                summaries.stream().mapToLong(RunSummary::skipped).sum(),
+                summaries.stream().mapToLong(RunSummary::pagesFetched).sum(),
+                summaries.stream().mapToLong(RunSummary::bytesRead).sum(),
+                phases);
+    }
+}
@@ -1,20 +1,51 @@
 package io.github.aaejo.institutionfinder.finder;
 
 import java.io.IOException;
-import java.net.URI;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import org.apache.hc.core5.net.URIBuilder;
 import org.jsoup.Connection;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.scheduling.annotation.Async;
-
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.github.aaejo.institutionfinder.finder.checkpoint.CrawlCheckpoint;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.Crawl;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.HtmlParser;
+import io.github.aaejo.institutionfinder.finder.dedup.SchoolIdIndex;
+import io.github.aaejo.institutionfinder.finder.delta.InstitutionDelta;
+import io.github.aaejo.institutionfinder.finder.plan.StateSearchPlanner;
+import io.github.aaejo.institutionfinder.finder.registry.CollegeNavigatorParser;
+import io.github.aaejo.institutionfinder.finder.registry.JsoupCollegeNavigatorParser;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryMetrics;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryResponse;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryStatusException;
+import io.github.aaejo.institutionfinder.finder.registry.ResultsPage;
+import io.github.aaejo.institutionfinder.finder.registry.SchoolDetails;
+import io.github.aaejo.institutionfinder.finder.registry.SchoolLink;
+import io.github.aaejo.institutionfinder.finder.registry.StreamingCollegeNavigatorParser;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionKeys;
 import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
 import io.github.aaejo.messaging.records.Institution;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -27,9 +58,24 @@ public class USAInstitutionFinder implements InstitutionFinder {
 
     private final InstitutionsProducer institutionsProducer;
     private final Connection registryConnection;
+    private final RegistryFetcher registryFetcher;
     private final RetryTemplate retryTemplate;
+    private final Crawl crawl;
+    private final JsoupCollegeNavigatorParser jsoupParser = new JsoupCollegeNavigatorParser();
+    private final CollegeNavigatorParser pageParser;
 
     private Counter institutionCounter;
+    private RegistryMetrics registryMetrics = new RegistryMetrics("usa", new CompositeMeterRegistry());
+    private CrawlCheckpoint checkpoint;
+    private SchoolIdIndex schoolIdIndex;
+    private InstitutionDelta delta;
+    private StateSearchPlanner searchPlanner;
+    private boolean sendTombstones;
+    private final AtomicBoolean runComplete = new AtomicBoolean(true);
+    private RunRecorder run = new RunRecorder("usa");
+
+    private static final Pattern RESULT_COUNT_PATTERN = Pattern.compile("of ([0-9]+) Results");
+    private static final CompletableFuture<?> NOTHING_SENT = CompletableFuture.completedFuture(null);
 
     public static final String[] STATES = { "AL", "AK", "AZ", "AR", "CA", "CO", "CT", "DE", "DC", "FL", "GA", "HI",
             "ID", "IL", "IN", "IA", "KS", "KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS", "MO", "MT", "NE", "NV", "NH",
@@ -44,35 +90,220 @@ public class USAInstitutionFinder implements InstitutionFinder {
 
     public USAInstitutionFinder(InstitutionsProducer institutionsProducer, Connection registryConnection,
             RetryTemplate retryTemplate) {
+        this(institutionsProducer, registryConnection, retryTemplate, Crawl.DEFAULTS);
+    }
+
+    public USAInstitutionFinder(InstitutionsProducer institutionsProducer, Connection registryConnection,
+            RetryTemplate retryTemplate, Crawl crawl) {
+        this(institutionsProducer, registryConnection, null, retryTemplate, crawl);
+    }
+
+    public USAInstitutionFinder(InstitutionsProducer institutionsProducer, Connection registryConnection,
+            RetryTemplate retryTemplate, MeterRegistry registry) {
+        this(institutionsProducer, registryConnection, retryTemplate, registry, Crawl.DEFAULTS);
+    }
+
+    public USAInstitutionFinder(InstitutionsProducer institutionsProducer, Connection registryConnection,
+            RetryTemplate retryTemplate, MeterRegistry registry, Crawl crawl) {
+        this(institutionsProducer, registryConnection, null, retryTemplate, crawl);
+        registerMetrics(registry);
+    }
+
+    /**
+     * Create a USA finder that loads pages through a RegistryFetcher, eg. one
+     * backed by an on-disk cache, instead of directly through a Jsoup Connection.
+     */
+    public USAInstitutionFinder(InstitutionsProducer institutionsProducer, RegistryFetcher registryFetcher,
+            RetryTemplate retryTemplate, MeterRegistry registry, Crawl crawl) {
+        this(institutionsProducer, null, registryFetcher, retryTemplate, crawl);
+        registerMetrics(registry);
+    }
+
+    private USAInstitutionFinder(InstitutionsProducer institutionsProducer, Connection registryConnection,
+            RegistryFetcher registryFetcher, RetryTemplate retryTemplate, Crawl crawl) {
         this.institutionsProducer = institutionsProducer;
         this.registryConnection = registryConnection;
+        this.registryFetcher = registryFetcher;
         this.retryTemplate = retryTemplate;
+        this.crawl = crawl;
+        this.pageParser = crawl.parser() == HtmlParser.STREAMING ? new StreamingCollegeNavigatorParser() : jsoupParser;
     }
 
-    public USAInstitutionFinder(InstitutionsProducer institutionsProducer, Connection registryConnection,
-            RetryTemplate retryTemplate, MeterRegistry registry) {
-        this(institutionsProducer, registryConnection, retryTemplate);
+    /**
+     * Attach a checkpoint to record crawl progress to, and resume from.
+     *
+     * @param checkpoint    checkpoint to use, or null to crawl without one
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Set the index of school IDs already handled. By default duplicate schools are not skipped.
+     *
+     * @param schoolIdIndex index to use, or null to not skip duplicate schools
+     */
+    public void setSchoolIdIndex(SchoolIdIndex schoolIdIndex) {
+        this.schoolIdIndex = schoolIdIndex;
+    }
+
+    /**
+     * Only send institutions that are new or changed since the previous run.
+     *
+     * @param delta             fingerprints of previously sent institutions, or null to send every institution
+     * @param sendTombstones    whether to send tombstones for institutions that have disappeared
+     */
+    public void setDelta(InstitutionDelta delta, boolean sendTombstones) {
+        this.delta = delta;
+        this.sendTombstones = sendTombstones;
+    }
 
+    /**
+     * Combine states with few results into multi-state searches.
+     *
+     * @param searchPlanner planner to use, or null to search every state on its own
+     */
+    public void setSearchPlanner(StateSearchPlanner searchPlanner) {
+        this.searchPlanner = searchPlanner;
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
         institutionCounter = Counter
                 .builder("jds.institution-finder.institutions")
                 .tag("country", "usa")
                 .register(registry);
+        registryMetrics = new RegistryMetrics("usa", registry);
     }
 
     /**
      * Produce institutions from College Navigator, using the program codes
      * specified in {@code USAInstitutionFinder.PROGRAMS}.
+     *
+     * States are crawled one at a time unless the configured state concurrency
+     * is greater than 1, in which case they are spread over a bounded pool of
+     * workers.
+     *
+     * If a checkpoint is attached, progress is recorded as the crawl runs, and
+     * a resumed crawl skips the states, pages and institutions already done.
+     *
+     * A school listed more than once, whether in this run or (with a persisted
+     * index) an earlier one, is only fetched and sent the first time.
+     *
+     * In delta mode only new and changed institutions are sent, and after a
+     * complete crawl tombstones are optionally sent for institutions that
+     * were not found again.
+     *
+     * If a search planner is attached, states with few results are searched
+     * together, and everything else here applies to each combined search as it
+     * would to a single state.
+     *
+     * A cancelled run stops before the next results page or school, keeping
+     * the checkpoint (if any) at the last completed page.
+     *
+     * @param parentRun recorder of the run this is part of, or null for a standalone run
+     * @return          summary of the run, once every institution sent has been acknowledged
      */
-    @Async
+    @Async(EXECUTOR)
     @Override
-    public void produceInstitutions() {
+    public CompletableFuture<RunSummary> produceInstitutions(RunRecorder parentRun) {
         log.info("Producing institutions for {} US states and/or territories", STATES.length);
+        run = parentRun != null ? parentRun.child("usa") : new RunRecorder("usa");
 
-        for (String state : STATES) {
-            produceStateInstitutions(state);
+        if (checkpoint != null) {
+            checkpoint.begin();
+        }
+        if (schoolIdIndex != null) {
+            schoolIdIndex.begin();
         }
+        if (delta != null) {
+            delta.begin();
+        }
+        runComplete.set(true);
+
+        if (searchPlanner != null) {
+            searchPlanner.begin();
+        }
+        // A resumed crawl keeps its searches, as its saved pages are for those and not a fresh plan
+        List<String> plan = checkpoint != null ? checkpoint.plan() : null;
+        if (plan == null) {
+            plan = searchPlanner != null ? searchPlanner.plan(Arrays.asList(STATES)) : Arrays.asList(STATES);
+        }
+        if (checkpoint != null) {
+            checkpoint.planned(plan);
+        }
+        String[] searches = plan.toArray(String[]::new);
 
-        log.info("Done");
+        if (crawl.stateConcurrency() > 1) {
+            produceStatesConcurrently(searches);
+        } else {
+            for (String search : searches) {
+                produceStateInstitutions(search);
+            }
+        }
+
+        if (checkpoint != null) {
+            checkpoint.finish(Arrays.asList(STATES));
+        }
+        if (schoolIdIndex != null) {
+            schoolIdIndex.save();
+        }
+        if (searchPlanner != null) {
+            searchPlanner.save();
+        }
+        if (delta != null) {
+            // Schools skipped as sent by an earlier run weren't fetched, so disappearances can't be told apart
+            boolean complete = runComplete.get() && (schoolIdIndex == null || !schoolIdIndex.isPersistent());
+            // Fingerprints are only kept for sends that succeeded, so wait for them all first
+            boolean acknowledged = run.awaitSends(institutionsProducer);
+            List<String> removedIds = delta.finish(acknowledged && complete);
+            if (sendTombstones) {
+                removedIds.forEach(
+                        id -> run.track(institutionsProducer.sendTombstone(InstitutionKeys.bySourceId("USA", id))));
+            }
+            return CompletableFuture.completedFuture(
+                    run.finish(acknowledged && runComplete.get(), institutionsProducer, "delta"));
+        }
+
+        return CompletableFuture.completedFuture(run.finish(runComplete.get(), institutionsProducer));
+    }
+
+    /**
+     * Produce institutions for several states at once, with at most
+     * {@code crawl.stateConcurrency()} states in progress at any time.
+     *
+     * Each state is still processed by {@link #produceStateInstitutions(String)},
+     * so page failures are handled per state exactly as in a sequential crawl. An
+     * unexpected error in one state is logged and does not affect the others.
+     *
+     * @param states the states (or territories) to find institutions for.
+     */
+    private void produceStatesConcurrently(String[] states) {
+        log.info("Crawling up to {} states concurrently", crawl.stateConcurrency());
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(crawl.stateConcurrency(), states.length),
+                new CustomizableThreadFactory("usa-finder-state-"));
+        try {
+            List<Future<?>> stateFutures = new ArrayList<>(states.length);
+            for (String state : states) {
+                stateFutures.add(executor.submit(() -> produceStateInstitutions(state)));
+            }
+
+            for (int i = 0; i < states.length; i++) {
+                try {
+                    stateFutures.get(i).get();
+                } catch (ExecutionException e) {
+                    log.error("Unexpected failure producing for state = {}", states[i], e.getCause());
+                    runComplete.set(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for states to finish, abandoning remaining states");
+            runComplete.set(false);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -85,18 +316,87 @@ public class USAInstitutionFinder implements InstitutionFinder {
      * If two consecutive pages fail, the process will end for the state. Any
      * previous institutions will still have been produced.
      *
-     * @param state the state (or territory) to find institutions for.
+     * Detail pages for the institutions on a results page are fetched one at a
+     * time, unless the configured detail concurrency is greater than 1. In that
+     * case up to that many detail pages are in flight at once for each results
+     * page, and each institution is sent as soon as its details are loaded.
+     *
+     * If results prefetching is enabled, the next results page is loaded in the
+     * background while the current page's institutions are being processed.
+     *
+     * @param state the state (or territory) to find institutions for, or several joined by
+     *              {@link StateSearchPlanner#STATE_SEPARATOR} to search them together.
      */
     public void produceStateInstitutions(String state) {
+        if (checkpoint != null
+                && Arrays.stream(StateSearchPlanner.states(state)).allMatch(checkpoint::isStateComplete)) {
+            log.info("State = {} already completed according to checkpoint, skipping", state);
+            runComplete.set(false);
+            return;
+        }
+
+        ExecutorService detailExecutor = null;
+        ExecutorService prefetchExecutor = null;
+        try {
+            if (crawl.detailConcurrency() > 1) {
+                detailExecutor = Executors.newFixedThreadPool(crawl.detailConcurrency(),
+                        new CustomizableThreadFactory("usa-finder-" + state.toLowerCase() + "-details-"));
+            }
+            if (crawl.prefetchResults()) {
+                prefetchExecutor = Executors.newSingleThreadExecutor(
+                        new CustomizableThreadFactory("usa-finder-" + state.toLowerCase() + "-prefetch-"));
+            }
+
+            produceStateInstitutions(state, detailExecutor, prefetchExecutor);
+        } finally {
+            if (detailExecutor != null) {
+                detailExecutor.shutdownNow();
+            }
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @param state             the state (or territory) to find institutions for.
+     * @param detailExecutor    executor to fetch detail pages on, or null to fetch them on the calling thread
+     * @param prefetchExecutor  executor to load the next results page on, or null to not prefetch
+     */
+    private void produceStateInstitutions(String state, ExecutorService detailExecutor,
+            ExecutorService prefetchExecutor) {
         log.info("Producing for state = {}", state);
 
-        int pageNum = 1;
+        int pageNum = checkpoint != null ? checkpoint.startPage(state) : 1;
+        if (pageNum > 1) {
+            // Schools on the pages skipped aren't listed again, so they can't be told apart from removed ones
+            log.info("Resuming state = {} from page {} according to checkpoint", state, pageNum);
+            runComplete.set(false);
+        }
         int pageLimit = 0; // Total number of results pages. 0 if unknown.
         boolean hasNextPage = false;
+        Future<ResultsPage> prefetchedPage = null; // Loading page pageNum, if prefetching
+        CompletableFuture<Void> pagesSent = CompletableFuture.completedFuture(null); // Pages checkpointed so far
 
         do {
+            if (run.isCancelled()) {
+                log.info("Run cancelled, stopping state = {} before page {}", state, pageNum);
+                runComplete.set(false);
+                return;
+            }
+
             // 1. Attempt to get results page
-            Document resultsPage = getResultsPage(state, pageNum);
+            ResultsPage resultsPage;
+            if (prefetchedPage != null) {
+                resultsPage = awaitPrefetchedPage(prefetchedPage, state, pageNum);
+                prefetchedPage = null;
+                if (Thread.currentThread().isInterrupted()) {
+                    runComplete.set(false);
+                    return;
+                }
+            } else {
+                resultsPage = getResultsPage(state, pageNum);
+            }
 
             if (resultsPage == null // 2. If getting the results page failed, and
                 && ((pageLimit != 0 && pageNum < pageLimit) // 2.1. either the current page is within the known page limit
@@ -111,25 +411,24 @@ public class USAInstitutionFinder implements InstitutionFinder {
             // 3. If trying the next page also failed, stop processing this state.
             if (resultsPage == null) {
                 log.error("Results page loading failing consistently, not continuing with this state.");
+                runComplete.set(false);
                 return;
             }
 
-            Element resultsTableBody = resultsPage
-                    .getElementById("ctl00_cphCollegeNavBody_ucResultsMain_tblResults").firstElementChild();
-            Element pagingControls = resultsPage
-                    .getElementById("ctl00_cphCollegeNavBody_ucResultsMain_divPagingControls");
-
-            if (resultsTableBody == null) {
+            if (!resultsPage.hasResults()) {
                 log.info("No results on page");
+                if (searchPlanner != null && pageLimit == 0) {
+                    searchPlanner.recordCount(state, 0);
+                }
                 hasNextPage = false;
                 continue;
             }
 
             if (pageLimit == 0) { // If pageLimit is unknown, let's figure it out
-                if (pagingControls.text().equals("Showing All Results")) {
+                if (resultsPage.pagingText().equals("Showing All Results")) {
                     pageLimit = 1;
                 } else {
-                    String[] pagingControlsTextTokens = pagingControls.text().split(" ");
+                    String[] pagingControlsTextTokens = resultsPage.pagingText().split(" ");
                     String finalToken = pagingControlsTextTokens[pagingControlsTextTokens.length - 1];
                     try {
                         pageLimit = Integer.parseInt(finalToken);
@@ -138,10 +437,17 @@ public class USAInstitutionFinder implements InstitutionFinder {
                                 finalToken);
                     }
                 }
+
+                if (searchPlanner != null) {
+                    int resultCount = resultCount(resultsPage);
+                    if (resultCount >= 0) {
+                        searchPlanner.recordCount(state, resultCount);
+                    }
+                }
             }
 
             if ((pageLimit != 0 && pageNum < pageLimit) // Page limit is known and current page is within it
-                    || pagingControls.selectFirst(":containsOwn(Next Page »)") != null) { // Backup check if next page button exists
+                    || resultsPage.hasNextPageLink()) { // Backup check if next page button exists
                 log.info("Another page of results exists");
                 hasNextPage = true;
                 pageNum++;
@@ -150,29 +456,197 @@ public class USAInstitutionFinder implements InstitutionFinder {
                 hasNextPage = false;
             }
 
-            Elements results = resultsTableBody.select(".resultsW, .resultsY");
-            log.info("{} results on page", results.size());
+            if (hasNextPage && prefetchExecutor != null) {
+                int nextPageNum = pageNum;
+                prefetchedPage = prefetchExecutor.submit(() -> getResultsPage(state, nextPageNum));
+            }
+
+            List<SchoolLink> schools = resultsPage.schools();
+            log.info("{} results on page", schools.size());
+            schools.forEach(school -> log.debug("{} id = {}", school.name(), school.id()));
 
-            for (Element result : results) {
-                Element schoolInfoLink = result
-                                        .child(1) // 0 = info button, 1 = school page link, 2 = add button
-                                        .getElementsByAttribute("href")
-                                        .first();
-                String schoolName = schoolInfoLink.text();
-                String schoolId = new URIBuilder(URI.create(schoolInfoLink.absUrl("href")))
-                        .getQueryParams().stream()
-                        .filter(p -> p.getName().equals("id"))
-                        .findFirst().get().getValue();
+            List<CompletableFuture<?>> pageSends;
+            if (detailExecutor == null) {
+                pageSends = new ArrayList<>(schools.size());
+                for (SchoolLink school : schools) {
+                    pageSends.add(produceInstitution(state, school.name(), school.id()));
+                }
+            } else {
+                pageSends = produceInstitutionsConcurrently(state, schools, detailExecutor);
+            }
 
-                log.debug("{} id = {}", schoolName, schoolId);
+            // Schools not reached are left out of the checkpoint, so a resumed crawl repeats this page
+            if (run.isCancelled()) {
+                log.info("Run cancelled, stopping state = {} part way through a page", state);
+                runComplete.set(false);
+                return;
+            }
 
-                Institution institution = getInstitutionDetails(schoolName, schoolId);
-                if (institution != null) {
-                    institutionsProducer.send(institution);
-                    institutionCounter.increment();
+            if (checkpoint != null) {
+                // Pages are only checkpointed once their sends are done, and in order
+                CompletableFuture<Void> pageSent = CompletableFuture
+                        .allOf(pageSends.toArray(CompletableFuture[]::new))
+                        .exceptionally(ex -> null); // Failed sends are counted by the run
+                pagesSent = pagesSent.thenCombine(pageSent, (previous, page) -> null);
+                if (hasNextPage) {
+                    int nextPageNum = pageNum;
+                    pagesSent = pagesSent.thenRun(() -> checkpoint.pageCompleted(state, nextPageNum));
                 }
             }
         } while (hasNextPage);
+
+        if (checkpoint != null) {
+            pagesSent.join();
+            for (String completedState : StateSearchPlanner.states(state)) {
+                checkpoint.stateCompleted(completedState);
+            }
+        }
+        if (schoolIdIndex != null) {
+            schoolIdIndex.save();
+        }
+    }
+
+    /**
+     * @param resultsPage   a results page
+     * @return              total number of results across all pages, from the paging controls, or -1 if unknown
+     */
+    private static int resultCount(ResultsPage resultsPage) {
+        if (resultsPage.pagingText().equals("Showing All Results")) {
+            return resultsPage.schools().size();
+        }
+
+        Matcher matcher = RESULT_COUNT_PATTERN.matcher(resultsPage.pagingText());
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Wait for a results page that was loaded in the background.
+     *
+     * @param prefetchedPage    the background load of the page
+     * @param state             2-letter state abbreviation
+     * @param page              page number of results being loaded
+     * @return                  the parsed results page, or null if it could not be loaded or the wait was
+     *                          interrupted
+     */
+    private ResultsPage awaitPrefetchedPage(Future<ResultsPage> prefetchedPage, String state, int page) {
+        try {
+            return prefetchedPage.get();
+        } catch (ExecutionException e) {
+            log.error("Unexpected failure prefetching page {} of results for state = {}", page, state, e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for page {} of results for state = {}", page, state);
+            prefetchedPage.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Fetch details for every school on a results page using the given executor,
+     * returning once all of them have been handled. The executor's pool size is
+     * the in-flight limit for the page.
+     *
+     * @param state             the state (or combined search) the results page is for
+     * @param schools           schools listed on a results page
+     * @param detailExecutor    executor to fetch detail pages on
+     * @return                  the sends made for the schools handled
+     */
+    private List<CompletableFuture<?>> produceInstitutionsConcurrently(String state, List<SchoolLink> schools,
+            ExecutorService detailExecutor) {
+        List<Future<CompletableFuture<?>>> detailFutures = new ArrayList<>(schools.size());
+        for (SchoolLink school : schools) {
+            detailFutures.add(detailExecutor.submit(() -> produceInstitution(state, school.name(), school.id())));
+        }
+
+        List<CompletableFuture<?>> sends = new ArrayList<>(schools.size());
+        for (int i = 0; i < detailFutures.size(); i++) {
+            try {
+                sends.add(detailFutures.get(i).get());
+            } catch (ExecutionException e) {
+                log.error("Unexpected failure producing {}", schools.get(i).name(), e.getCause());
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for detail pages, abandoning remainder of page");
+                runComplete.set(false);
+                detailFutures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return sends;
+    }
+
+    /**
+     * Load the details for a single school and send it if they were found.
+     *
+     * @param state         the state (or combined search) the school was listed for
+     * @param schoolName    name of the institution
+     * @param schoolId      College Navigator ID for the institution
+     * @return              completes once the school's send does, or at once if nothing was sent
+     */
+    private CompletableFuture<?> produceInstitution(String state, String schoolName, String schoolId) {
+        if (run.isCancelled()) {
+            return NOTHING_SENT;
+        }
+
+        if (checkpoint != null && checkpoint.isEmitted(schoolId)) {
+            log.debug("{} already sent according to checkpoint, skipping", schoolName);
+            run.skipped();
+            if (delta != null) {
+                delta.seen(schoolId);
+            }
+            return NOTHING_SENT;
+        }
+
+        // Claimed before fetching so the same school on another page or state is not fetched concurrently
+        if (schoolIdIndex != null && !schoolIdIndex.claim(schoolId)) {
+            log.debug("{} (id = {}) already handled, skipping duplicate", schoolName, schoolId);
+            run.skipped();
+            if (delta != null) {
+                delta.seen(schoolId);
+            }
+            return NOTHING_SENT;
+        }
+
+        Institution institution = getInstitutionDetails(state, schoolName, schoolId);
+        if (institution == null) {
+            run.failed();
+            if (schoolIdIndex != null) {
+                schoolIdIndex.release(schoolId); // Allow a later listing to try again
+            }
+            if (delta != null) {
+                delta.seen(schoolId); // Still listed, so not removed
+            }
+            return NOTHING_SENT;
+        }
+
+        if (delta != null && !delta.isChanged(schoolId, institution)) {
+            log.debug("{} unchanged since previous run, not sending", schoolName);
+            run.skipped();
+            if (checkpoint != null) {
+                checkpoint.institutionEmitted(schoolId);
+            }
+            return NOTHING_SENT;
+        }
+
+        // College Navigator school IDs are IPEDS unit IDs, so keys match the IPEDS finder's
+        CompletableFuture<SendOutcome> sendOutcome = institutionsProducer.send(
+                InstitutionKeys.bySourceId("USA", schoolId), institution);
+        if (delta != null) {
+            sendOutcome = delta.track(schoolId, institution, sendOutcome);
+        }
+        if (checkpoint != null) {
+            // Only once sent, so a school whose send is lost to a crash is sent again on resume
+            sendOutcome = sendOutcome.thenApply(outcome -> {
+                if (outcome != SendOutcome.FAILED) {
+                    checkpoint.institutionEmitted(schoolId);
+                }
+                return outcome;
+            });
+        }
+        run.track(sendOutcome);
+        institutionCounter.increment();
+        return sendOutcome;
     }
 
     /**
@@ -185,35 +659,35 @@ public class USAInstitutionFinder implements InstitutionFinder {
      * @return              a complete Institution record, or null if unable to load the page
      */
     public Institution getInstitutionDetails(String schoolName, String schoolId) {
-        Document infoPage = retryTemplate.execute(
-                // Retryable part
-                ctx -> {
-                    try {
-                        return registryConnection
-                                .newRequest()
-                                .data("id", schoolId)
-                                .get();
-                    } catch (IOException e) {
-                        log.error("Failed to fetch details page for {}. May retry.", schoolName, e);
-                        // Rethrowing as RuntimeException for retry handling
-                        throw new RuntimeException(e);
-                    }
-                },
-                // Recovery part
-                ctx -> {
-                    log.info("Max retries exceeded for fetching details page for {}", schoolName);
-                    // If we exceed max retries, return null
-                    return null;
-                });
+        return getInstitutionDetails("unknown", schoolName, schoolId);
+    }
 
-        if (infoPage == null) {
-            return null;
+    /**
+     * @param state         the state (or combined search) the school was listed for, to tag metrics with
+     * @param schoolName    name of the institution being queried for
+     * @param schoolId      College Navigator ID for the institution being queried for
+     * @return              a complete Institution record, or null if unable to load the page
+     */
+    private Institution getInstitutionDetails(String state, String schoolName, String schoolId) {
+        String page = RegistryMetrics.DETAILS_PAGE;
+        String description = "details page for " + schoolName;
+        Map<String, String> params = Map.of("id", schoolId);
+
+        SchoolDetails details;
+        if (registryFetcher != null) {
+            RegistryResponse response = fetchWithRetry(state, page, description,
+                    () -> fetchResponse(state, page, params));
+            details = parse(state, page, description, response, pageParser::parseDetails);
+        } else {
+            Document document = fetchWithRetry(state, page, description, () -> fetchDocument(state, page, params));
+            details = parse(state, page, description, document, jsoupParser::parseDetails);
         }
 
-        String address = infoPage.selectFirst(".headerlg").parent().textNodes().get(0).text();
-        String website = "https://" + infoPage.selectFirst(":containsOwn(Website:)").siblingElements().first().text();
+        if (details == null) {
+            return null;
+        }
 
-        return new Institution(schoolName, "USA", address, website);
+        return new Institution(schoolName, "USA", details.address(), details.website());
     }
 
     /**
@@ -222,32 +696,135 @@ public class USAInstitutionFinder implements InstitutionFinder {
      *
      * @param state 2-letter state abbreviation
      * @param page  page number of results to fetch
-     * @return      page contents as a Jsoup Document, or null
+     * @return      the parsed results page, or null
      */
-    private Document getResultsPage(String state, int page) {
-        Document resultsPage = retryTemplate.execute(
+    private ResultsPage getResultsPage(String state, int page) {
+        String pageKind = RegistryMetrics.RESULTS_PAGE;
+        String description = "results page " + page + " for state = " + state;
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("p", PROGRAMS);
+        params.put("s", state);
+        params.put("pg", Integer.toString(page));
+
+        if (registryFetcher != null) {
+            RegistryResponse response = fetchWithRetry(state, pageKind, description,
+                    () -> fetchResponse(state, pageKind, params));
+            return parse(state, pageKind, description, response, pageParser::parseResults);
+        }
+        Document document = fetchWithRetry(state, pageKind, description,
+                () -> fetchDocument(state, pageKind, params));
+        return parse(state, pageKind, description, document, jsoupParser::parseResults);
+    }
+
+    /**
+     * Load a page with the instance's RetryTemplate. Only loading is retried,
+     * as a page that loaded but can't be parsed will be the same next time.
+     *
+     * @param state         the state (or combined search) the page is for
+     * @param page          kind of page, to tag metrics with
+     * @param description   what is being loaded, for logging
+     * @param fetch         loads the page
+     * @return              the loaded page, or null if retries ran out
+     */
+    private <T> T fetchWithRetry(String state, String page, String description, PageFetch<T> fetch) {
+        return retryTemplate.execute(
                 // Retryable part
                 ctx -> {
+                    if (ctx.getRetryCount() > 0) {
+                        registryMetrics.retried(state, page);
+                    }
                     try {
-                        return registryConnection
-                                .newRequest()
-                                .data("p", PROGRAMS)
-                                .data("s", state)
-                                .data("pg", Integer.toString(page))
-                                .get();
+                        return fetch.fetch();
                     } catch (IOException e) {
-                        log.error("Failed to connect to College Navigator with state = {}. May retry.", state, e);
+                        log.error("Failed to fetch {}. May retry.", description, e);
                         // Rethrowing as RuntimeException for retry handling
                         throw new RuntimeException(e);
                     }
                 },
                 // Recovery part
                 ctx -> {
-                    log.info("Max retries exceeded for connecting to College Navigator with state = {}", state);
+                    log.info("Max retries exceeded for fetching {}", description);
+                    registryMetrics.recovered(state, page);
                     // If we exceed max retries, return null
                     return null;
                 });
+    }
+
+    /**
+     * @param state         the state (or combined search) the page is for
+     * @param page          kind of page, to tag metrics with
+     * @param description   what was loaded, for logging
+     * @param loaded        the loaded page, or null if it could not be loaded
+     * @param parser        extracts what is needed from the page
+     * @return              what was extracted, or null if the page was not loaded or could not be parsed
+     */
+    private <P, T> T parse(String state, String page, String description, P loaded, PageParser<P, T> parser) {
+        if (loaded == null) {
+            return null;
+        }
+
+        Timer.Sample parse = Timer.start();
+        try {
+            return parser.parse(loaded);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to parse {}", description, e);
+            return null;
+        } finally {
+            run.recordPhase("parse", parse.stop(registryMetrics.parse(state, page)));
+        }
+    }
+
+    private RegistryResponse fetchResponse(String state, String page, Map<String, String> params)
+            throws IOException {
+        Timer.Sample fetch = Timer.start();
+        RegistryResponse response;
+        try {
+            response = registryFetcher.fetch(params);
+        } finally {
+            run.recordPhase("fetch", fetch.stop(registryMetrics.fetch(state, page)));
+        }
+        run.pageFetched(response.body().length);
+        return response;
+    }
+
+    /**
+     * The fetch time of a Jsoup request includes building its Document, so
+     * only selecting from the Document counts as parsing. Error statuses are
+     * checked here rather than by Jsoup so the registry's Retry-After is kept.
+     */
+    private Document fetchDocument(String state, String page, Map<String, String> params) throws IOException {
+        Connection request = registryConnection
+                .newRequest()
+                .ignoreHttpErrors(true);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            request = request.data(param.getKey(), param.getValue());
+        }
+        Timer.Sample fetch = Timer.start();
+        int bytesRead;
+        Document document;
+        try {
+            Connection.Response response = request.execute();
+            if (response.statusCode() >= 400) {
+                throw new RegistryStatusException("HTTP error fetching URL", response.statusCode(),
+                        response.url().toString(),
+                        RegistryStatusException.parseRetryAfter(response.header("Retry-After"), Clock.systemUTC()));
+            }
+            bytesRead = response.bodyAsBytes().length; // Buffers the body, which is then parsed from the buffer
+            document = response.parse();
+        } finally {
+            run.recordPhase("fetch", fetch.stop(registryMetrics.fetch(state, page)));
+        }
+        run.pageFetched(bytesRead);
+        return document;
+    }
+
+    @FunctionalInterface
+    private interface PageFetch<T> {
+        T fetch() throws IOException;
+    }
 
-        return resultsPage;
+    @FunctionalInterface
+    private interface PageParser<P, T> {
+        T parse(P page) throws IOException;
     }
 }
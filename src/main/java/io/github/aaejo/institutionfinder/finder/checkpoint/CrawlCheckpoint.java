@@ -0,0 +1,276 @@
+package io.github.aaejo.institutionfinder.finder.checkpoint;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Progress of a registry crawl, persisted to a local file so that an
+ * interrupted crawl can be resumed.
+ *
+ * Tracks the searches planned for the crawl, which states are complete, the
+ * next results page to load for searches in progress, and the IDs of schools
+ * already sent. A resumed crawl makes the same searches, so the saved pages
+ * still line up with them. The file is rewritten after every results page and
+ * removed once every state has completed.
+ *
+ * As they grow with the crawl, the IDs of schools sent are not part of that
+ * file. Those sent since the last save are appended to a file alongside it,
+ * named for it with {@code .emitted} added, one ID per line.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class CrawlCheckpoint {
+
+    private final Path file;
+    private final Path emittedFile;
+    private final ObjectMapper objectMapper;
+    private final boolean resume;
+
+    private final Set<String> completedStates = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> nextPages = new ConcurrentHashMap<>();
+    private final Set<String> emittedIds = ConcurrentHashMap.newKeySet();
+    private final Queue<String> unsavedIds = new ConcurrentLinkedQueue<>();
+    private volatile List<String> plan;
+
+    /**
+     * @param file          checkpoint file location
+     * @param objectMapper  mapper used to read and write the checkpoint file
+     * @param resume        whether {@link #begin()} continues from an existing checkpoint file,
+     *                      rather than starting over
+     */
+    public CrawlCheckpoint(Path file, ObjectMapper objectMapper, boolean resume) {
+        this.file = file;
+        this.emittedFile = file.resolveSibling(file.getFileName() + ".emitted");
+        this.objectMapper = objectMapper;
+        this.resume = resume;
+    }
+
+    /**
+     * Prepare for a new crawl, loading the existing checkpoint file if resuming.
+     */
+    public synchronized void begin() {
+        completedStates.clear();
+        nextPages.clear();
+        emittedIds.clear();
+        unsavedIds.clear();
+        plan = null;
+
+        if (!Files.exists(file)) {
+            deleteEmittedFile();
+            return;
+        }
+
+        if (!resume) {
+            log.info("Ignoring existing crawl checkpoint at {}, starting from the beginning", file);
+            deleteEmittedFile();
+            return;
+        }
+
+        try {
+            Progress progress = objectMapper.readValue(file.toFile(), Progress.class);
+            completedStates.addAll(progress.completedStates());
+            nextPages.putAll(progress.nextPages());
+            plan = progress.plan(); // Null in checkpoints saved before plans were
+            if (progress.emittedIds() != null) { // Saved before IDs were appended separately
+                emittedIds.addAll(progress.emittedIds());
+                unsavedIds.addAll(progress.emittedIds());
+            }
+            emittedIds.addAll(readEmittedFile());
+        } catch (IOException e) {
+            log.error("Failed to read crawl checkpoint at {}, starting from the beginning", file, e);
+            completedStates.clear();
+            nextPages.clear();
+            emittedIds.clear();
+            unsavedIds.clear();
+            plan = null;
+            deleteEmittedFile();
+            return;
+        }
+
+        log.info("Resuming crawl from {}: {} states complete, {} in progress, {} institutions already sent",
+                file, completedStates.size(), nextPages.size(), emittedIds.size());
+    }
+
+    /**
+     * @return  searches planned by the crawl being resumed, or null if not resuming or they weren't saved
+     */
+    public List<String> plan() {
+        return plan;
+    }
+
+    /**
+     * Record the searches this crawl will make, to be saved with its progress.
+     *
+     * @param plan  each search a single state or several combined
+     */
+    public void planned(List<String> plan) {
+        this.plan = List.copyOf(plan);
+    }
+
+    public boolean isStateComplete(String state) {
+        return completedStates.contains(state);
+    }
+
+    /**
+     * @param state state (or territory) about to be crawled
+     * @return      the results page to start the state from
+     */
+    public int startPage(String state) {
+        return nextPages.getOrDefault(state, 1);
+    }
+
+    public boolean isEmitted(String schoolId) {
+        return emittedIds.contains(schoolId);
+    }
+
+    /**
+     * Record that a school was sent, to be saved with the next page.
+     *
+     * @param schoolId  College Navigator ID of the school
+     */
+    public void institutionEmitted(String schoolId) {
+        if (emittedIds.add(schoolId)) {
+            unsavedIds.add(schoolId);
+        }
+    }
+
+    /**
+     * Record that a results page has been fully processed and save the checkpoint.
+     *
+     * @param state     state (or territory) being crawled
+     * @param nextPage  next results page to load for the state
+     */
+    public void pageCompleted(String state, int nextPage) {
+        nextPages.put(state, nextPage);
+        save();
+    }
+
+    /**
+     * Record that every results page for a state has been processed and save the checkpoint.
+     *
+     * @param state state (or territory) that was crawled
+     */
+    public void stateCompleted(String state) {
+        completedStates.add(state);
+        nextPages.remove(state);
+        save();
+    }
+
+    /**
+     * Finish a crawl. The checkpoint file is removed if every state completed,
+     * and kept for a later resume otherwise.
+     *
+     * @param states    all states (or territories) that were to be crawled
+     */
+    public synchronized void finish(Collection<String> states) {
+        if (!completedStates.containsAll(states)) {
+            log.warn("Crawl finished with incomplete states, keeping checkpoint at {} for resuming", file);
+            save();
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to remove crawl checkpoint at {}", file, e);
+        }
+        deleteEmittedFile();
+    }
+
+    private synchronized void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            appendEmittedIds();
+            Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), new Progress(plan, completedStates, nextPages, null));
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Losing a checkpoint only costs re-fetching on resume, so the crawl carries on
+            log.error("Failed to save crawl checkpoint to {}", file, e);
+        }
+    }
+
+    /**
+     * Append the IDs recorded since the last save. IDs that fail to be written
+     * are kept for the next save.
+     */
+    private void appendEmittedIds() throws IOException {
+        if (unsavedIds.isEmpty()) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        int count = 0;
+        for (String id : unsavedIds) {
+            lines.append(id).append('\n');
+            count++;
+        }
+        try (Writer writer = Files.newBufferedWriter(emittedFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(lines.toString());
+        }
+        for (int i = 0; i < count; i++) {
+            unsavedIds.poll();
+        }
+    }
+
+    /**
+     * A last line cut short by an interrupted save is removed, so that IDs
+     * appended later start on a line of their own.
+     *
+     * @return  IDs in the emitted file
+     */
+    private List<String> readEmittedFile() throws IOException {
+        if (!Files.exists(emittedFile)) {
+            return List.of();
+        }
+
+        String content = Files.readString(emittedFile, StandardCharsets.UTF_8);
+        String complete = content.substring(0, content.lastIndexOf('\n') + 1);
+        if (complete.length() < content.length()) {
+            log.warn("Removing partly written line from {}", emittedFile);
+            try (FileChannel channel = FileChannel.open(emittedFile, StandardOpenOption.WRITE)) {
+                channel.truncate(complete.getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+        return complete.lines().filter(id -> !id.isEmpty()).toList();
+    }
+
+    private void deleteEmittedFile() {
+        try {
+            Files.deleteIfExists(emittedFile);
+        } catch (IOException e) {
+            log.warn("Failed to remove emitted IDs of crawl checkpoint at {}", emittedFile, e);
+        }
+    }
+
+    /**
+     * Serialized form of the checkpoint file.
+     *
+     * @param emittedIds    only in checkpoints saved before IDs were appended to their own file
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Progress(List<String> plan, Set<String> completedStates, Map<String, Integer> nextPages,
+            Set<String> emittedIds) {
+    }
+}
@@ -1,25 +1,56 @@
 package io.github.aaejo.institutionfinder.finder.configuration;
 
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.UnsatisfiedDependencyException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.retry.support.RetryTemplateBuilder;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.github.aaejo.institutionfinder.finder.CompositeInstitutionFinder;
 import io.github.aaejo.institutionfinder.finder.InstitutionFinder;
 import io.github.aaejo.institutionfinder.finder.JsonInstitutionFinder;
+import io.github.aaejo.institutionfinder.finder.RunManager;
 import io.github.aaejo.institutionfinder.finder.USAInstitutionFinder;
+import io.github.aaejo.institutionfinder.finder.checkpoint.CrawlCheckpoint;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.HtmlParser;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.HttpClientType;
+import io.github.aaejo.institutionfinder.finder.dedup.SchoolIdIndex;
+import io.github.aaejo.institutionfinder.finder.delta.InstitutionDelta;
+import io.github.aaejo.institutionfinder.finder.ipeds.IpedsInstitutionFinder;
+import io.github.aaejo.institutionfinder.finder.json.MappedJsonReader;
+import io.github.aaejo.institutionfinder.finder.plan.StateSearchPlanner;
+import io.github.aaejo.institutionfinder.finder.registry.CachingRegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.HttpClientRegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.JsoupRegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryBackOffPolicy;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryCircuitBreaker;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryRetryPolicy;
+import io.github.aaejo.institutionfinder.finder.watch.DataFileWatcher;
 import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
 import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author Omri Harary
  */
+@Slf4j
 @Configuration
 @EnableConfigurationProperties(InstitutionFinderProperties.class)
 public class InstitutionFinderConfiguration {
@@ -33,9 +64,51 @@ public class InstitutionFinderConfiguration {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ObjectProvider<RunManager> runManagerProvider;
+
+    @Bean
+    @ConditionalOnProperty(prefix = "aaejo.jds.institution-finder.watch", name = "enabled", havingValue = "true")
+    public DataFileWatcher dataFileWatcher() {
+        return new DataFileWatcher(properties.watch().debounce());
+    }
+
+    @Bean
+    public InstitutionFinder institutionFinder(MeterRegistry registry, Optional<DataFileWatcher> watcher) {
+        List<SupportedCountry> countries = properties.countriesToFind();
+        if (countries.size() == 1) {
+            return institutionFinder(countries.get(0), registry, watcher);
+        }
+
+        Map<String, InstitutionFinder> finders = new LinkedHashMap<>();
+        for (SupportedCountry country : countries) {
+            finders.put(country.name(), institutionFinder(country, registry, watcher));
+        }
+        return new CompositeInstitutionFinder(finders);
+    }
+
     @Bean
-    public InstitutionFinder institutionFinder(MeterRegistry registry) {
-        if (properties.country() == SupportedCountry.USA) {
+    public RunManager runManager(InstitutionFinder institutionFinder,
+            @Qualifier(InstitutionFinder.EXECUTOR) AsyncTaskExecutor executor) {
+        return new RunManager(institutionFinder, executor);
+    }
+
+    private InstitutionFinder institutionFinder(SupportedCountry country, MeterRegistry registry,
+            Optional<DataFileWatcher> watcher) {
+        if (country == SupportedCountry.USA && properties.ipeds().enabled()) {
+            Optional<String> file = properties.file(country);
+            if (file.isEmpty()) {
+                throw new UnsatisfiedDependencyException(
+                        null,
+                        "institutionFinder",
+                        "file",
+                        "IPEDS Institution Finder must have a data directory.");
+            }
+
+            InstitutionFinderProperties.Ipeds ipeds = properties.ipeds();
+            return new IpedsInstitutionFinder(institutionsProducer, Paths.get(file.get()),
+                    ipeds.directoryFile(), ipeds.completionsFile(), ipeds.charset(), registry);
+        } else if (country == SupportedCountry.USA) {
             if (properties.registryUrl() == null) {
                 throw new UnsatisfiedDependencyException(
                         null,
@@ -45,17 +118,126 @@ public class InstitutionFinderConfiguration {
             }
 
             // All configuration for the Jsoup client for the USA Finder can be done here before injection.
-            Connection connection = Jsoup.connect(properties.registryUrl().toString());
+            InstitutionFinderProperties.Http http = properties.http();
+            Connection connection = Jsoup.connect(properties.registryUrl().toString())
+                                        .timeout((int) http.readTimeout().toMillis());
+
+            RetryTemplate retryTemplate = registryRetryTemplate(properties.retry());
 
-            RetryTemplate retryTemplate = RetryTemplate.builder()
-                                            .maxAttempts(2) // Initial + 1 retry
-                                            .fixedBackoff(2000L)
-                                            .build();
+            USAInstitutionFinder usaFinder;
+            InstitutionFinderProperties.Cache cache = properties.cache();
+            if (cache.enabled() || cache.offline() || properties.crawl().parser() == HtmlParser.STREAMING
+                    || http.client() == HttpClientType.HTTP_CLIENT) {
+                // Caching, streaming parsing and the JDK client need raw responses rather than Jsoup Documents
+                RegistryFetcher registryFetcher = http.client() == HttpClientType.HTTP_CLIENT
+                        ? new HttpClientRegistryFetcher(
+                                properties.registryUrl(),
+                                http.connectTimeout(),
+                                http.readTimeout(),
+                                http.compression())
+                        : new JsoupRegistryFetcher(connection);
+                if (cache.enabled() || cache.offline()) {
+                    registryFetcher = new CachingRegistryFetcher(
+                            registryFetcher,
+                            Paths.get(cache.directory()),
+                            cache.ttl(),
+                            cache.maxSize().toBytes(),
+                            cache.offline());
+                }
 
-            return new USAInstitutionFinder(institutionsProducer, connection, retryTemplate, registry);
+                usaFinder = new USAInstitutionFinder(institutionsProducer, registryFetcher, retryTemplate, registry,
+                        properties.crawl());
+            } else {
+                usaFinder = new USAInstitutionFinder(institutionsProducer, connection, retryTemplate, registry,
+                        properties.crawl());
+            }
+
+            InstitutionFinderProperties.Checkpoint checkpoint = properties.checkpoint();
+            if (checkpoint.enabled() || checkpoint.resume()) {
+                usaFinder.setCheckpoint(
+                        new CrawlCheckpoint(Paths.get(checkpoint.file()), objectMapper, checkpoint.resume()));
+            }
+
+            InstitutionFinderProperties.Dedup dedup = properties.dedup();
+            if (dedup.enabled()) {
+                if (dedup.persist() && properties.delta().enabled()) {
+                    throw new UnsatisfiedDependencyException(
+                            null,
+                            "institutionFinder",
+                            "dedup",
+                            "Persisted dedup can't be used with delta, as changed schools would never be sent again.");
+                }
+                usaFinder.setSchoolIdIndex(new SchoolIdIndex(dedup.persist() ? Paths.get(dedup.file()) : null));
+            }
+
+            InstitutionFinderProperties.Planning planning = properties.planning();
+            if (planning.enabled()) {
+                usaFinder.setSearchPlanner(new StateSearchPlanner(
+                        Paths.get(planning.file()),
+                        objectMapper,
+                        planning.pageSize(),
+                        planning.maxStatesPerSearch()));
+            }
+
+            if (properties.delta().enabled()) {
+                usaFinder.setDelta(institutionDelta(country), properties.delta().tombstones());
+            }
+
+            return usaFinder;
         } else {
-            return new JsonInstitutionFinder(properties.country().name(), institutionsProducer, objectMapper,
-                    properties.file(), registry);
+            JsonInstitutionFinder jsonFinder = new JsonInstitutionFinder(country.name(),
+                    institutionsProducer, objectMapper, properties.file(country), registry);
+            if (properties.json().mapped()) {
+                jsonFinder.setMappedReader(new MappedJsonReader(objectMapper, properties.json().parallelism(),
+                        properties.json().chunkSize().toBytes(), properties.json().ordered()));
+            }
+            jsonFinder.setFormat(properties.json().format().orElse(null),
+                    properties.json().compression().orElse(null));
+            // Watching only sends what changed, which needs the fingerprints of what was sent before
+            if (properties.delta().enabled() || watcher.isPresent()) {
+                jsonFinder.setDelta(institutionDelta(country), properties.delta().tombstones());
+            }
+            if (watcher.isPresent()) {
+                Optional<String> file = properties.file(country);
+                if (file.isPresent()) {
+                    // Through the run manager, so a change never starts a run over one in progress
+                    watcher.get().watch(Paths.get(file.get()), jsonFinder::isDataFileName,
+                            () -> runManagerProvider.getObject().startOrQueue(jsonFinder));
+                } else {
+                    log.warn("No data file configured for {}, its institutions will not be watched", country);
+                }
+            }
+            return jsonFinder;
+        }
+    }
+
+    private InstitutionDelta institutionDelta(SupportedCountry country) {
+        return new InstitutionDelta(
+                Paths.get(properties.delta().directory(), country.name().toLowerCase() + ".json"),
+                objectMapper);
+    }
+
+    private RetryTemplate registryRetryTemplate(InstitutionFinderProperties.Retry retry) {
+        InstitutionFinderProperties.CircuitBreaker breakerProperties = retry.circuitBreaker();
+        RegistryCircuitBreaker circuitBreaker = null;
+        if (breakerProperties.enabled()) {
+            circuitBreaker = new RegistryCircuitBreaker(
+                    breakerProperties.failureThreshold(),
+                    breakerProperties.openDuration(),
+                    breakerProperties.maxOpenDuration());
+        }
+
+        RetryTemplateBuilder builder = RetryTemplate.builder()
+                .customPolicy(new RegistryRetryPolicy(retry.maxAttempts()))
+                .customBackoff(new RegistryBackOffPolicy(
+                        retry.initialBackoff(),
+                        retry.backoffMultiplier(),
+                        retry.maxBackoff(),
+                        retry.maxRetryAfter(),
+                        circuitBreaker));
+        if (circuitBreaker != null) {
+            builder.withListener(circuitBreaker);
         }
+        return builder.build();
     }
 }
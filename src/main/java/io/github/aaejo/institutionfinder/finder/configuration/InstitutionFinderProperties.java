@@ -1,13 +1,243 @@
 package io.github.aaejo.institutionfinder.finder.configuration;
 
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import io.github.aaejo.institutionfinder.finder.json.DataFileCompression;
+import io.github.aaejo.institutionfinder.finder.json.DataFileFormat;
 
 /**
+ * @param country   single country to find institutions for, if {@code countries} is not set
+ * @param countries countries to find institutions for concurrently
+ * @param files     data file or directory per country, overriding {@code file}
+ *
  * @author Omri Harary
  */
 @ConfigurationProperties(prefix = "aaejo.jds.institution-finder")
-public record InstitutionFinderProperties(SupportedCountry country, URI registryUrl, Optional<String> file) {
+public record InstitutionFinderProperties(SupportedCountry country, @DefaultValue List<SupportedCountry> countries,
+        URI registryUrl, Optional<String> file, @DefaultValue Map<SupportedCountry, String> files,
+        @DefaultValue Crawl crawl, @DefaultValue Cache cache, @DefaultValue Checkpoint checkpoint,
+        @DefaultValue Retry retry, @DefaultValue Http http, @DefaultValue Dedup dedup,
+        @DefaultValue Delta delta, @DefaultValue Planning planning, @DefaultValue Ipeds ipeds,
+        @DefaultValue Json json, @DefaultValue Watch watch, @DefaultValue RunExecutor runExecutor) {
+
+    /**
+     * @return the configured countries, or the single configured country
+     */
+    public List<SupportedCountry> countriesToFind() {
+        return countries.isEmpty() ? List.of(country) : countries;
+    }
+
+    /**
+     * @param country   a country being found
+     * @return          the data file or directory for the country, if there is one
+     */
+    public Optional<String> file(SupportedCountry country) {
+        return Optional.ofNullable(files.get(country)).or(() -> file);
+    }
+
+    /**
+     * Settings for crawling the College Navigator registry (USA only).
+     *
+     * @param stateConcurrency  maximum number of states crawled at the same time. 1 crawls states sequentially.
+     * @param detailConcurrency maximum number of detail pages in flight per results page. 1 fetches them
+     *                          sequentially.
+     * @param parser            how pages are parsed. STREAMING avoids building a DOM for each page.
+     * @param prefetchResults   whether the next results page is loaded while the current page's institutions
+     *                          are being processed
+     */
+    public record Crawl(@DefaultValue("1") int stateConcurrency, @DefaultValue("1") int detailConcurrency,
+            @DefaultValue("JSOUP") HtmlParser parser, @DefaultValue("false") boolean prefetchResults) {
+
+        public static final Crawl DEFAULTS = new Crawl(1, 1, HtmlParser.JSOUP, false);
+    }
+
+    public enum HtmlParser {
+        /** Build a Jsoup Document and use selectors */
+        JSOUP,
+        /** Scan the raw response for the required elements only */
+        STREAMING
+    }
+
+    /**
+     * Settings for the on-disk cache of College Navigator responses (USA only).
+     *
+     * @param enabled   whether responses are cached
+     * @param directory directory to keep cached responses in
+     * @param ttl       how long a cached response is used before it is revalidated with the registry
+     * @param maxSize   size of cached responses above which the oldest are evicted
+     * @param offline   serve only from the cache and never contact the registry. Implies enabled.
+     */
+    public record Cache(@DefaultValue("false") boolean enabled, @DefaultValue("registry-cache") String directory,
+            @DefaultValue("7d") Duration ttl, @DefaultValue("512MB") DataSize maxSize,
+            @DefaultValue("false") boolean offline) {
+    }
+
+    /**
+     * Settings for checkpointing registry crawl progress (USA only).
+     *
+     * @param enabled   whether crawl progress is saved while crawling
+     * @param file      checkpoint file location
+     * @param resume    continue from an existing checkpoint file instead of starting from the beginning
+     */
+    public record Checkpoint(@DefaultValue("false") boolean enabled,
+            @DefaultValue("crawl-checkpoint.json") String file, @DefaultValue("false") boolean resume) {
+    }
+
+    /**
+     * Settings for retrying failed registry requests (USA only).
+     *
+     * @param maxAttempts       attempts per request, including the first
+     * @param initialBackoff    upper bound of the delay before the first retry
+     * @param backoffMultiplier factor the delay bound grows by after each retry
+     * @param maxBackoff        largest delay bound between retries
+     * @param maxRetryAfter     longest Retry-After delay requested by the registry that is honoured
+     * @param circuitBreaker    settings for pausing all requests while the registry is unhealthy
+     */
+    public record Retry(@DefaultValue("2") int maxAttempts, @DefaultValue("2s") Duration initialBackoff,
+            @DefaultValue("2.0") double backoffMultiplier, @DefaultValue("30s") Duration maxBackoff,
+            @DefaultValue("2m") Duration maxRetryAfter, @DefaultValue CircuitBreaker circuitBreaker) {
+    }
+
+    /**
+     * @param enabled           whether requests are paused after repeated failures
+     * @param failureThreshold  consecutive transient failures that pause requests
+     * @param openDuration      how long requests are paused at first
+     * @param maxOpenDuration   longest requests are paused for at once, as pauses double while the registry
+     *                          stays unhealthy
+     */
+    public record CircuitBreaker(@DefaultValue("true") boolean enabled, @DefaultValue("5") int failureThreshold,
+            @DefaultValue("30s") Duration openDuration, @DefaultValue("5m") Duration maxOpenDuration) {
+    }
+
+    /**
+     * Settings for the HTTP client used to contact the registry (USA only).
+     *
+     * @param client            which HTTP client to use
+     * @param connectTimeout    how long to wait for a connection to the registry
+     * @param readTimeout       how long to wait for a response once a request has been sent
+     * @param compression       whether to request compressed responses (HTTP_CLIENT only, Jsoup always does)
+     */
+    public record Http(@DefaultValue("JSOUP") HttpClientType client, @DefaultValue("10s") Duration connectTimeout,
+            @DefaultValue("30s") Duration readTimeout, @DefaultValue("true") boolean compression) {
+    }
+
+    public enum HttpClientType {
+        /** Jsoup's own connection handling */
+        JSOUP,
+        /** JDK HttpClient, with pooled keep-alive connections and HTTP/2 */
+        HTTP_CLIENT
+    }
+
+    /**
+     * Settings for skipping schools that have already been handled (USA only).
+     *
+     * @param enabled   whether a school listed more than once is only fetched and sent once per run
+     * @param persist   whether handled schools are remembered across runs, so later runs only send new schools.
+     *                  Can't be used with {@code delta.enabled}, as changes to remembered schools would never
+     *                  be sent.
+     * @param file      file to remember handled schools in
+     */
+    public record Dedup(@DefaultValue("false") boolean enabled, @DefaultValue("false") boolean persist,
+            @DefaultValue("school-ids.bin") String file) {
+    }
+
+    /**
+     * Settings for only sending institutions that changed since the previous run.
+     *
+     * @param enabled       whether only new and changed institutions are sent
+     * @param directory     directory to keep fingerprints of sent institutions in, one file per country
+     * @param tombstones    whether to send tombstones for institutions that disappeared since the previous run
+     */
+    public record Delta(@DefaultValue("false") boolean enabled,
+            @DefaultValue("institution-fingerprints") String directory, @DefaultValue("false") boolean tombstones) {
+    }
+
+    /**
+     * Settings for combining states with few results into multi-state searches (USA only).
+     *
+     * @param enabled               whether states are combined, based on their result counts in previous runs
+     * @param file                  file to keep result counts per state in
+     * @param pageSize              results per College Navigator results page
+     * @param maxStatesPerSearch    most states to combine into one search
+     */
+    public record Planning(@DefaultValue("false") boolean enabled,
+            @DefaultValue("state-result-counts.json") String file, @DefaultValue("15") int pageSize,
+            @DefaultValue("20") int maxStatesPerSearch) {
+    }
+
+    /**
+     * Settings for finding USA institutions from IPEDS bulk data files in the
+     * directory given by {@code file}, instead of crawling College Navigator.
+     *
+     * @param enabled           whether IPEDS files are used
+     * @param directoryFile     glob for the institutional characteristics directory file (e.g. hd2022.csv)
+     * @param completionsFile   glob for the completions file (e.g. c2022_a.csv)
+     * @param charset           encoding of the files
+     */
+    public record Ipeds(@DefaultValue("false") boolean enabled,
+            @DefaultValue("[hH][dD][0-9]*.[cC][sS][vV]") String directoryFile,
+            @DefaultValue("[cC][0-9]*_[aA].[cC][sS][vV]") String completionsFile,
+            @DefaultValue("UTF-8") Charset charset) {
+    }
+
+    /**
+     * Settings for reading institutions from data files.
+     *
+     * @param format        format of data files, detected from the file extension if not set
+     * @param compression   compression of data files, detected from the file extension if not set
+     * @param mapped        whether uncompressed JSON and NDJSON files are memory-mapped and parsed
+     *                      in parallel chunks, rather than streamed on a single thread
+     * @param parallelism   number of threads parsing chunks, or 0 for one per available processor
+     * @param chunkSize     approximate size of the chunks a file is split into
+     * @param ordered       whether institutions are sent in file order when parsing in parallel
+     */
+    public record Json(Optional<DataFileFormat> format, Optional<DataFileCompression> compression,
+            @DefaultValue("false") boolean mapped, @DefaultValue("0") int parallelism,
+            @DefaultValue("16MB") DataSize chunkSize, @DefaultValue("true") boolean ordered) {
+    }
+
+    /**
+     * Settings for watching data files and sending only what changed whenever
+     * they are edited. Watching always uses the delta fingerprints, even if
+     * {@code delta.enabled} is not set.
+     *
+     * @param enabled   whether configured data files are watched
+     * @param debounce  how long a file must go unchanged after an edit before it is read
+     */
+    public record Watch(@DefaultValue("false") boolean enabled, @DefaultValue("2s") Duration debounce) {
+    }
+
+    /**
+     * Settings for the executor finder runs are started on, kept apart from the
+     * executor shared by the rest of the application. Crawl concurrency within a
+     * run is set by {@code crawl} instead.
+     *
+     * @param corePoolSize      threads kept for runs
+     * @param maxPoolSize       most threads for runs, only started once the queue is full
+     * @param queueCapacity     runs waiting for a thread, beyond which they are rejected
+     * @param keepAlive         how long threads above the core size are kept while idle
+     * @param rejection         what happens to a run started while the pool and queue are full
+     * @param virtualThreads    start each run on its own virtual thread, ignoring the pool settings.
+     *                          Needs JDK 21 or later, otherwise the pool is used.
+     */
+    public record RunExecutor(@DefaultValue("1") int corePoolSize, @DefaultValue("2") int maxPoolSize,
+            @DefaultValue("4") int queueCapacity, @DefaultValue("60s") Duration keepAlive,
+            @DefaultValue("ABORT") RejectionPolicy rejection, @DefaultValue("false") boolean virtualThreads) {
+    }
+
+    public enum RejectionPolicy {
+        /** Fail the run straight away */
+        ABORT,
+        /** Run on the thread that started it, such as a web request thread */
+        CALLER_RUNS
+    }
 }
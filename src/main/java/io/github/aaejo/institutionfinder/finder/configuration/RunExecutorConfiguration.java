@@ -0,0 +1,100 @@
+package io.github.aaejo.institutionfinder.finder.configuration;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.github.aaejo.institutionfinder.finder.InstitutionFinder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executor that InstitutionFinder runs are started on.
+ *
+ * Pool size, active threads and queue depth are published as the standard
+ * {@code executor.*} metrics tagged {@code name=institution-finder}, along
+ * with {@code jds.institution-finder.executor.utilization}, the share of the
+ * maximum pool size in use.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+@Configuration
+public class RunExecutorConfiguration {
+
+    private static final String METRICS_NAME = "institution-finder";
+
+    @Bean(name = InstitutionFinder.EXECUTOR)
+    public AsyncTaskExecutor institutionFinderExecutor(InstitutionFinderProperties properties,
+            MeterRegistry registry) {
+        InstitutionFinderProperties.RunExecutor runExecutor = properties.runExecutor();
+        if (runExecutor.virtualThreads()) {
+            ExecutorService virtualThreads = virtualThreadExecutor();
+            if (virtualThreads != null) {
+                log.info("Starting institution finder runs on virtual threads");
+                return new ConcurrentTaskExecutor(
+                        ExecutorServiceMetrics.monitor(registry, virtualThreads, METRICS_NAME));
+            }
+            log.warn("Virtual threads need JDK 21 or later, starting institution finder runs on a thread pool");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("institution-finder-run-");
+        executor.setCorePoolSize(runExecutor.corePoolSize());
+        executor.setMaxPoolSize(runExecutor.maxPoolSize());
+        executor.setQueueCapacity(runExecutor.queueCapacity());
+        executor.setKeepAliveSeconds((int) runExecutor.keepAlive().toSeconds());
+        executor.setRejectedExecutionHandler(switch (runExecutor.rejection()) {
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+        });
+        executor.initialize();
+
+        ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+        new ExecutorServiceMetrics(pool, METRICS_NAME, List.of()).bindTo(registry);
+        Gauge.builder("jds.institution-finder.executor.utilization", pool,
+                        p -> (double) p.getActiveCount() / p.getMaximumPoolSize())
+                .tags(List.of(Tag.of("name", METRICS_NAME)))
+                .register(registry);
+        return executor;
+    }
+
+    /**
+     * Defining an executor above stops Spring Boot from defining its own, so it
+     * is defined here as Boot would, to keep finder runs off the executor that
+     * everything else shares.
+     */
+    @Lazy
+    @Primary
+    @Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * @return  an executor starting a virtual thread per task, or null if this JDK has none
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
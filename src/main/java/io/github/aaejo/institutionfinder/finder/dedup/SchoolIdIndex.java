@@ -0,0 +1,200 @@
+package io.github.aaejo.institutionfinder.finder.dedup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Set of College Navigator school IDs that have already been handled, so that
+ * a school listed more than once is only fetched and sent once.
+ *
+ * College Navigator IDs are IPEDS unit IDs, 6 digit numbers, so they are kept
+ * as bits in a BitSet. It grows to fit the largest ID seen, so about 125KB for
+ * 6 digit IDs, and at most about 1.25MB for IDs up to 7 digits. Any other ID is
+ * kept in a plain set instead.
+ *
+ * The index is cleared at the start of every run. If a file is given, the index
+ * is instead loaded from it at the start of a run and saved to it as the run
+ * progresses, so schools sent by earlier runs are skipped too.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class SchoolIdIndex {
+
+    private static final int FILE_MAGIC = 0x4a445349; // "JDSI"
+    private static final int MAX_NUMERIC_ID = 9_999_999;
+
+    private final Path file;
+
+    private final BitSet numericIds = new BitSet();
+    private final Set<String> otherIds = new HashSet<>();
+    private int size = 0;
+
+    /**
+     * Create an index that only lasts for a single run.
+     */
+    public SchoolIdIndex() {
+        this(null);
+    }
+
+    /**
+     * @param file  file to persist the index to between runs, or null to keep it in memory only
+     */
+    public SchoolIdIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Prepare for a new run, loading the index file if there is one.
+     */
+    public synchronized void begin() {
+        numericIds.clear();
+        otherIds.clear();
+        size = 0;
+
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a school ID index file");
+            }
+            byte[] bits = new byte[in.readInt()];
+            in.readFully(bits);
+            numericIds.or(BitSet.valueOf(bits));
+            int otherCount = in.readInt();
+            for (int i = 0; i < otherCount; i++) {
+                otherIds.add(in.readUTF());
+            }
+            size = numericIds.cardinality() + otherIds.size();
+        } catch (IOException e) {
+            log.error("Failed to read school ID index at {}, starting empty", file, e);
+            numericIds.clear();
+            otherIds.clear();
+            size = 0;
+            return;
+        }
+
+        log.info("Loaded {} previously sent school IDs from {}", size, file);
+    }
+
+    /**
+     * Claim a school ID for this run, before its details are fetched.
+     *
+     * @param schoolId  College Navigator ID
+     * @return          true if the ID had not been claimed yet, false if it is a duplicate
+     */
+    public synchronized boolean claim(String schoolId) {
+        int numericId = numericId(schoolId);
+        boolean added;
+        if (numericId >= 0) {
+            added = !numericIds.get(numericId);
+            numericIds.set(numericId);
+        } else {
+            added = otherIds.add(schoolId);
+        }
+
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    /**
+     * Give up a claim on a school ID, such as when its details could not be
+     * loaded, so that a later listing of the school is tried again.
+     *
+     * @param schoolId  College Navigator ID
+     */
+    public synchronized void release(String schoolId) {
+        int numericId = numericId(schoolId);
+        boolean removed;
+        if (numericId >= 0) {
+            removed = numericIds.get(numericId);
+            numericIds.clear(numericId);
+        } else {
+            removed = otherIds.remove(schoolId);
+        }
+
+        if (removed) {
+            size--;
+        }
+    }
+
+    public synchronized boolean contains(String schoolId) {
+        int numericId = numericId(schoolId);
+        return numericId >= 0 ? numericIds.get(numericId) : otherIds.contains(schoolId);
+    }
+
+    /**
+     * @return whether IDs are carried over between runs
+     */
+    public boolean isPersistent() {
+        return file != null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Save the index to its file, if it has one.
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(tempFile);
+                    DataOutputStream out = new DataOutputStream(fileOut)) {
+                byte[] bits = numericIds.toByteArray();
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(bits.length);
+                out.write(bits);
+                out.writeInt(otherIds.size());
+                for (String id : otherIds) {
+                    out.writeUTF(id);
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Losing the index only costs re-sending schools in a later run
+            log.error("Failed to save school ID index to {}", file, e);
+        }
+    }
+
+    /**
+     * @return the ID as a bit index, or -1 if it must be kept as a string
+     */
+    private static int numericId(String schoolId) {
+        int length = schoolId.length();
+        if (length == 0 || length > 7 || (length > 1 && schoolId.charAt(0) == '0')) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = schoolId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= MAX_NUMERIC_ID ? value : -1;
+    }
+}
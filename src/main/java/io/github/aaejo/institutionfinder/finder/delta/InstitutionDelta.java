@@ -0,0 +1,186 @@
+package io.github.aaejo.institutionfinder.finder.delta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+import io.github.aaejo.messaging.records.Institution;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fingerprints of the institutions sent by the previous run, used to only send
+ * institutions that are new or have changed since then.
+ *
+ * Institutions are keyed by their ID in the source registry, or by name where
+ * the source has no IDs. A fingerprint covers the name, address and website.
+ *
+ * A changed institution's new fingerprint is only kept once its send has been
+ * acknowledged or spooled. Until then, and for good if the send fails, the
+ * previous fingerprint is kept, so the institution is sent again next run.
+ * Runs should wait for their sends before finishing.
+ *
+ * At the end of a complete run, the keys that were not seen again are the
+ * institutions that have disappeared from the source. At the end of an
+ * incomplete run nothing can be said to have disappeared, so fingerprints from
+ * the previous run are kept for anything not seen.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class InstitutionDelta {
+
+    private static final TypeReference<Map<String, Long>> FINGERPRINTS_TYPE = new TypeReference<>() {
+    };
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Long> previous = new HashMap<>();
+    private final Map<String, Long> current = new ConcurrentHashMap<>();
+
+    /**
+     * @param file          file to keep fingerprints in between runs
+     * @param objectMapper  mapper used to read and write the fingerprints file
+     */
+    public InstitutionDelta(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Prepare for a new run, loading the fingerprints from the previous one.
+     */
+    public synchronized void begin() {
+        previous.clear();
+        current.clear();
+
+        if (!Files.exists(file)) {
+            log.info("No previous institution fingerprints at {}, every institution will be sent", file);
+            return;
+        }
+
+        try {
+            previous.putAll(objectMapper.readValue(file.toFile(), FINGERPRINTS_TYPE));
+        } catch (IOException e) {
+            log.error("Failed to read institution fingerprints at {}, every institution will be sent", file, e);
+            previous.clear();
+            return;
+        }
+
+        log.info("Loaded {} institution fingerprints from previous run at {}", previous.size(), file);
+    }
+
+    /**
+     * Record an institution found in this run.
+     *
+     * @param key           ID of the institution in its source, or its name
+     * @param institution   the institution as found
+     * @return              true if it is new or has changed since the previous run, so should be sent
+     */
+    public boolean isChanged(String key, Institution institution) {
+        long fingerprint = fingerprint(institution);
+        Long previousFingerprint = previous.get(key);
+        if (previousFingerprint != null && previousFingerprint == fingerprint) {
+            current.put(key, fingerprint);
+            return false;
+        }
+
+        seen(key);
+        return true;
+    }
+
+    /**
+     * Keep the fingerprint of a changed institution once its send succeeds.
+     *
+     * @param key           ID of the institution in its source, or its name
+     * @param institution   the institution that was sent
+     * @param sendOutcome   outcome of the send, as returned by the producer
+     * @return              the same outcome, completing only once the fingerprint has been kept. Runs should
+     *                      track this rather than the producer's, so the fingerprint is in place before they
+     *                      finish.
+     */
+    public CompletableFuture<SendOutcome> track(String key, Institution institution,
+            CompletableFuture<SendOutcome> sendOutcome) {
+        return sendOutcome.thenApply(outcome -> {
+            if (outcome != SendOutcome.FAILED) {
+                current.put(key, fingerprint(institution));
+            }
+            return outcome;
+        });
+    }
+
+    /**
+     * Record that an institution still exists, without knowing its contents,
+     * such as when its details could not be loaded. It is not considered to
+     * have disappeared.
+     *
+     * @param key   ID of the institution in its source, or its name
+     */
+    public void seen(String key) {
+        Long previousFingerprint = previous.get(key);
+        if (previousFingerprint != null) {
+            current.putIfAbsent(key, previousFingerprint);
+        }
+    }
+
+    /**
+     * Finish a run, saving the fingerprints for the next one.
+     *
+     * @param complete  whether every institution in the source was seen by this run
+     * @return          keys of institutions that have disappeared since the previous run. Always empty for an
+     *                  incomplete run.
+     */
+    public synchronized List<String> finish(boolean complete) {
+        List<String> removed = List.of();
+        Map<String, Long> next = new HashMap<>(current);
+        if (complete) {
+            removed = previous.keySet().stream().filter(key -> !current.containsKey(key)).sorted().toList();
+        } else {
+            previous.forEach(next::putIfAbsent);
+        }
+
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), next);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The next run will send more than it needs to, but nothing is lost
+            log.error("Failed to save institution fingerprints to {}", file, e);
+        }
+
+        log.info("{} institutions in run, {} removed since previous run{}", current.size(), removed.size(),
+                complete ? "" : " (run incomplete, removals not checked)");
+        return removed;
+    }
+
+    static long fingerprint(Institution institution) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String field : new String[] { institution.name(), institution.address(), institution.website() }) {
+                // Null is distinguished from empty, and fields are separated so values can't shift between them
+                digest.update(field == null ? new byte[] { 1 } : field.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
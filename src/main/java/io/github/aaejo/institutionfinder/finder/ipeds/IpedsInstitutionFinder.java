@@ -0,0 +1,251 @@
+package io.github.aaejo.institutionfinder.finder.ipeds;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.scheduling.annotation.Async;
+
+import io.github.aaejo.institutionfinder.finder.InstitutionFinder;
+import io.github.aaejo.institutionfinder.finder.RunCancelledException;
+import io.github.aaejo.institutionfinder.finder.RunRecorder;
+import io.github.aaejo.institutionfinder.finder.RunSummary;
+import io.github.aaejo.institutionfinder.finder.USAInstitutionFinder;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionKeys;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * USA InstitutionFinder implementation reading IPEDS bulk data files instead
+ * of College Navigator.
+ *
+ * IPEDS publishes the data behind College Navigator as CSV files. The
+ * completions file (e.g. {@code c2022_a.csv}) lists the programs each
+ * institution awards, and is used to find the institutions with any of the
+ * programs in {@link USAInstitutionFinder#PROGRAMS}. The directory file (e.g.
+ * {@code hd2022.csv}) is then used for their names, addresses and websites,
+ * formatted the same way as College Navigator's.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class IpedsInstitutionFinder implements InstitutionFinder {
+
+    private static final Map<String, String> STATE_NAMES = Map.ofEntries(
+            Map.entry("AL", "Alabama"), Map.entry("AK", "Alaska"), Map.entry("AZ", "Arizona"),
+            Map.entry("AR", "Arkansas"), Map.entry("CA", "California"), Map.entry("CO", "Colorado"),
+            Map.entry("CT", "Connecticut"), Map.entry("DE", "Delaware"), Map.entry("DC", "District of Columbia"),
+            Map.entry("FL", "Florida"), Map.entry("GA", "Georgia"), Map.entry("HI", "Hawaii"),
+            Map.entry("ID", "Idaho"), Map.entry("IL", "Illinois"), Map.entry("IN", "Indiana"),
+            Map.entry("IA", "Iowa"), Map.entry("KS", "Kansas"), Map.entry("KY", "Kentucky"),
+            Map.entry("LA", "Louisiana"), Map.entry("ME", "Maine"), Map.entry("MD", "Maryland"),
+            Map.entry("MA", "Massachusetts"), Map.entry("MI", "Michigan"), Map.entry("MN", "Minnesota"),
+            Map.entry("MS", "Mississippi"), Map.entry("MO", "Missouri"), Map.entry("MT", "Montana"),
+            Map.entry("NE", "Nebraska"), Map.entry("NV", "Nevada"), Map.entry("NH", "New Hampshire"),
+            Map.entry("NJ", "New Jersey"), Map.entry("NM", "New Mexico"), Map.entry("NY", "New York"),
+            Map.entry("NC", "North Carolina"), Map.entry("ND", "North Dakota"), Map.entry("OH", "Ohio"),
+            Map.entry("OK", "Oklahoma"), Map.entry("OR", "Oregon"), Map.entry("PA", "Pennsylvania"),
+            Map.entry("RI", "Rhode Island"), Map.entry("SC", "South Carolina"), Map.entry("SD", "South Dakota"),
+            Map.entry("TN", "Tennessee"), Map.entry("TX", "Texas"), Map.entry("UT", "Utah"),
+            Map.entry("VT", "Vermont"), Map.entry("VA", "Virginia"), Map.entry("WA", "Washington"),
+            Map.entry("WV", "West Virginia"), Map.entry("WI", "Wisconsin"), Map.entry("WY", "Wyoming"),
+            Map.entry("AS", "American Samoa"), Map.entry("FM", "Federated States of Micronesia"),
+            Map.entry("GU", "Guam"), Map.entry("MH", "Marshall Islands"),
+            Map.entry("MP", "Northern Mariana Islands"), Map.entry("PW", "Palau"),
+            Map.entry("PR", "Puerto Rico"), Map.entry("VI", "Virgin Islands"));
+
+    private final InstitutionsProducer institutionsProducer;
+    private final Path dataDirectory;
+    private final String directoryFilePattern;
+    private final String completionsFilePattern;
+    private final Charset charset;
+    private final Set<String> programs = Set.of(USAInstitutionFinder.PROGRAMS.split("\\+"));
+
+    private Counter institutionCounter;
+    private RunRecorder run = new RunRecorder("usa");
+
+    /**
+     * @param institutionsProducer      producer to send institutions with
+     * @param dataDirectory             directory containing the IPEDS files
+     * @param directoryFilePattern      glob for the directory file. The last match by name is used.
+     * @param completionsFilePattern    glob for the completions file. The last match by name is used.
+     * @param charset                   encoding of the files
+     * @param registry                  registry for metrics
+     */
+    public IpedsInstitutionFinder(InstitutionsProducer institutionsProducer, Path dataDirectory,
+            String directoryFilePattern, String completionsFilePattern, Charset charset, MeterRegistry registry) {
+        this.institutionsProducer = institutionsProducer;
+        this.dataDirectory = dataDirectory;
+        this.directoryFilePattern = directoryFilePattern;
+        this.completionsFilePattern = completionsFilePattern;
+        this.charset = charset;
+
+        institutionCounter = Counter
+                .builder("jds.institution-finder.institutions")
+                .tag("country", "usa")
+                .register(registry);
+    }
+
+    /**
+     * Produce institutions offering any of the programs in
+     * {@code USAInstitutionFinder.PROGRAMS}, according to the IPEDS files.
+     *
+     * A cancelled run stops at the next row.
+     *
+     * @param parentRun recorder of the run this is part of, or null for a standalone run
+     * @return          summary of the run, once every institution sent has been acknowledged
+     */
+    @Async(EXECUTOR)
+    @Override
+    public CompletableFuture<RunSummary> produceInstitutions(RunRecorder parentRun) {
+        run = parentRun != null ? parentRun.child("usa") : new RunRecorder("usa");
+        boolean complete = false;
+        try {
+            Path completionsFile = latest(completionsFilePattern);
+            Path directoryFile = latest(directoryFilePattern);
+            log.info("Producing institutions from IPEDS files {} and {}", completionsFile, directoryFile);
+
+            BitSet unitIds = unitIdsWithPrograms(completionsFile);
+            run.bytesRead(Files.size(completionsFile));
+            run.phaseEnded("scan");
+            log.info("{} institutions award the selected programs", unitIds.cardinality());
+
+            int sent = produceInstitutions(directoryFile, unitIds);
+            run.bytesRead(Files.size(directoryFile));
+            log.info("Done reading, {} institutions sent", sent);
+            complete = true;
+        } catch (RunCancelledException e) {
+            log.warn("Run cancelled, IPEDS files not fully processed");
+        } catch (IOException e) {
+            log.error("An error occurred processing the IPEDS files in {}", dataDirectory, e);
+        }
+
+        return CompletableFuture.completedFuture(run.finish(complete, institutionsProducer));
+    }
+
+    /**
+     * @param completionsFile   IPEDS completions file
+     * @return                  UNITIDs of institutions awarding any of the selected programs
+     */
+    BitSet unitIdsWithPrograms(Path completionsFile) throws IOException {
+        BitSet unitIds = new BitSet();
+        new MappedCsvReader(completionsFile, charset).read(new MappedCsvReader.RowHandler() {
+            private int unitIdColumn;
+            private int cipColumn;
+
+            @Override
+            public void header(MappedCsvReader.Row header) throws IOException {
+                unitIdColumn = requireColumn(header, "UNITID", completionsFile);
+                cipColumn = requireColumn(header, "CIPCODE", completionsFile);
+            }
+
+            @Override
+            public void row(MappedCsvReader.Row row) {
+                run.checkCancelled();
+                int unitId = row.intField(unitIdColumn);
+                if (unitId >= 0 && !unitIds.get(unitId) && programs.contains(row.field(cipColumn).trim())) {
+                    unitIds.set(unitId);
+                }
+            }
+        });
+        return unitIds;
+    }
+
+    /**
+     * @param directoryFile IPEDS directory file
+     * @param unitIds       UNITIDs of the institutions to send
+     * @return              number of institutions sent
+     */
+    int produceInstitutions(Path directoryFile, BitSet unitIds) throws IOException {
+        int[] sent = { 0 };
+        new MappedCsvReader(directoryFile, charset).read(new MappedCsvReader.RowHandler() {
+            private int unitIdColumn;
+            private int nameColumn;
+            private int addressColumn;
+            private int cityColumn;
+            private int stateColumn;
+            private int zipColumn;
+            private int websiteColumn;
+
+            @Override
+            public void header(MappedCsvReader.Row header) throws IOException {
+                unitIdColumn = requireColumn(header, "UNITID", directoryFile);
+                nameColumn = requireColumn(header, "INSTNM", directoryFile);
+                addressColumn = requireColumn(header, "ADDR", directoryFile);
+                cityColumn = requireColumn(header, "CITY", directoryFile);
+                stateColumn = requireColumn(header, "STABBR", directoryFile);
+                zipColumn = requireColumn(header, "ZIP", directoryFile);
+                websiteColumn = requireColumn(header, "WEBADDR", directoryFile);
+            }
+
+            @Override
+            public void row(MappedCsvReader.Row row) {
+                run.checkCancelled();
+                int unitId = row.intField(unitIdColumn);
+                if (unitId < 0 || !unitIds.get(unitId)) {
+                    return;
+                }
+
+                String state = row.field(stateColumn).trim();
+                Institution institution = new Institution(
+                        row.field(nameColumn).trim(),
+                        "USA",
+                        row.field(addressColumn).trim() + ", "
+                                + row.field(cityColumn).trim() + ", "
+                                + STATE_NAMES.getOrDefault(state, state) + " "
+                                + row.field(zipColumn).trim(),
+                        website(row.field(websiteColumn)));
+                run.track(institutionsProducer.send(
+                        InstitutionKeys.bySourceId("USA", Integer.toString(unitId)), institution));
+                institutionCounter.increment();
+                sent[0]++;
+            }
+        });
+        return sent[0];
+    }
+
+    /**
+     * Websites are listed without a scheme. College Navigator links them as HTTPS.
+     */
+    private static String website(String webAddress) {
+        String trimmed = webAddress.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        return trimmed.regionMatches(true, 0, "http", 0, 4) ? trimmed : "https://" + trimmed;
+    }
+
+    private static int requireColumn(MappedCsvReader.Row header, String name, Path file) throws IOException {
+        int column = header.column(name);
+        if (column < 0) {
+            throw new IOException("IPEDS file " + file + " has no " + name + " column");
+        }
+        return column;
+    }
+
+    /**
+     * Find the most recent IPEDS file matching a pattern, relying on the year in IPEDS file names.
+     */
+    private Path latest(String pattern) throws IOException {
+        List<Path> matches = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDirectory, pattern)) {
+            files.forEach(matches::add);
+        }
+        return matches.stream()
+                .filter(Files::isRegularFile)
+                .max(Comparator.comparing(path -> path.getFileName().toString().toLowerCase()))
+                .orElseThrow(() -> new IOException("No file matching " + pattern + " in " + dataDirectory));
+    }
+}
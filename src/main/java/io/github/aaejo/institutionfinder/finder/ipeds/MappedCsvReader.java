@@ -0,0 +1,233 @@
+package io.github.aaejo.institutionfinder.finder.ipeds;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal streaming CSV reader over a memory-mapped file, for large bulk data
+ * files such as those published by IPEDS.
+ *
+ * The file is never copied onto the heap as a whole. Rows are scanned directly
+ * in the mapping and only field offsets are recorded, so a field is only
+ * decoded into a String when it is asked for. Supports RFC 4180 quoting,
+ * including quoted line breaks, and a leading byte order mark.
+ *
+ * @author Omri Harary
+ */
+public class MappedCsvReader {
+
+    /**
+     * Callback for the rows of a file. A row is only valid during the call.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+
+        /**
+         * Called once with the header row, before any data rows, to look up columns.
+         */
+        default void header(Row header) throws IOException {
+        }
+
+        void row(Row row) throws IOException;
+    }
+
+    private final Path file;
+    private final Charset charset;
+
+    public MappedCsvReader(Path file, Charset charset) {
+        this.file = file;
+        this.charset = charset;
+    }
+
+    /**
+     * Read the whole file, treating the first row as the header.
+     *
+     * @param handler       called for every row after the header
+     * @throws IOException  if the file can't be read or is too large to map
+     */
+    public void read(RowHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("CSV file too large to map: " + file + " (" + size + " bytes)");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            Row row = new Row(buffer, charset);
+            int position = skipByteOrderMark(buffer);
+
+            position = row.scan(position);
+            if (row.fieldCount == 0) {
+                return; // Empty file
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < row.fieldCount; i++) {
+                columns.put(row.field(i).trim().toUpperCase(Locale.ROOT), i);
+            }
+            row.columns = columns;
+            handler.header(row);
+
+            while (position < buffer.limit()) {
+                position = row.scan(position);
+                if (row.fieldCount == 1 && row.ends[0] == row.starts[0]) {
+                    continue; // Blank line
+                }
+                handler.row(row);
+            }
+        }
+    }
+
+    private static int skipByteOrderMark(MappedByteBuffer buffer) {
+        if (buffer.limit() >= 3
+                && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * A row of the file, as offsets of its fields into the mapping.
+     */
+    public static class Row {
+
+        private final MappedByteBuffer buffer;
+        private final Charset charset;
+
+        private Map<String, Integer> columns = Map.of();
+        private int[] starts = new int[32];
+        private int[] ends = new int[32];
+        private boolean[] quoted = new boolean[32];
+        private int fieldCount;
+
+        private Row(MappedByteBuffer buffer, Charset charset) {
+            this.buffer = buffer;
+            this.charset = charset;
+        }
+
+        /**
+         * @param name  column name from the header, case-insensitive
+         * @return      index of the column, or -1 if there is no such column
+         */
+        public int column(String name) {
+            return columns.getOrDefault(name.toUpperCase(Locale.ROOT), -1);
+        }
+
+        public int fieldCount() {
+            return fieldCount;
+        }
+
+        /**
+         * @param index column index
+         * @return      the field's value, or an empty string if the row has no such field
+         */
+        public String field(int index) {
+            if (index < 0 || index >= fieldCount) {
+                return "";
+            }
+
+            byte[] bytes = new byte[ends[index] - starts[index]];
+            buffer.get(starts[index], bytes);
+            String value = new String(bytes, charset);
+            return quoted[index] ? value.replace("\"\"", "\"") : value;
+        }
+
+        /**
+         * Parse a field as a non-negative integer without decoding it to a String.
+         *
+         * @param index column index
+         * @return      the field's value, or -1 if it is missing or not a non-negative integer
+         */
+        public int intField(int index) {
+            if (index < 0 || index >= fieldCount || starts[index] == ends[index]) {
+                return -1;
+            }
+
+            int value = 0;
+            for (int i = starts[index]; i < ends[index]; i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                    return -1;
+                }
+                value = value * 10 + (b - '0');
+            }
+            return value;
+        }
+
+        /**
+         * Record the fields of the row starting at a position.
+         *
+         * @return position of the next row
+         */
+        private int scan(int position) {
+            int limit = buffer.limit();
+            fieldCount = 0;
+
+            while (true) {
+                ensureCapacity();
+                if (position < limit && buffer.get(position) == '"') {
+                    // Quoted field, ends at a quote not followed by another quote
+                    int start = ++position;
+                    while (position < limit) {
+                        if (buffer.get(position) == '"') {
+                            if (position + 1 < limit && buffer.get(position + 1) == '"') {
+                                position += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        position++;
+                    }
+                    addField(start, position, true);
+                    position++; // Closing quote
+                    // Anything between the closing quote and the delimiter is ignored
+                    while (position < limit && buffer.get(position) != ',' && buffer.get(position) != '\n'
+                            && buffer.get(position) != '\r') {
+                        position++;
+                    }
+                } else {
+                    int start = position;
+                    while (position < limit && buffer.get(position) != ',' && buffer.get(position) != '\n'
+                            && buffer.get(position) != '\r') {
+                        position++;
+                    }
+                    addField(start, position, false);
+                }
+
+                if (position >= limit) {
+                    return limit;
+                }
+                byte delimiter = buffer.get(position++);
+                if (delimiter == ',') {
+                    continue;
+                }
+                if (delimiter == '\r' && position < limit && buffer.get(position) == '\n') {
+                    position++;
+                }
+                return position;
+            }
+        }
+
+        private void addField(int start, int end, boolean isQuoted) {
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            quoted[fieldCount] = isQuoted;
+            fieldCount++;
+        }
+
+        private void ensureCapacity() {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+                quoted = Arrays.copyOf(quoted, fieldCount * 2);
+            }
+        }
+    }
+}
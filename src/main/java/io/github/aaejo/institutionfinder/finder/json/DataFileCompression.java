@@ -0,0 +1,85 @@
+package io.github.aaejo.institutionfinder.finder.json;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Compression institution data files can be in.
+ *
+ * @author Omri Harary
+ */
+public enum DataFileCompression {
+
+    NONE(),
+    GZIP(".gz", ".gzip"),
+    ZSTD(".zst", ".zstd");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<String> extensions;
+
+    DataFileCompression(String... extensions) {
+        this.extensions = List.of(extensions);
+    }
+
+    /**
+     * @return  file extensions for the compression, most common first
+     */
+    public List<String> extensions() {
+        return extensions;
+    }
+
+    /**
+     * Wrap a stream of compressed data to read it decompressed.
+     *
+     * @param compressed    stream of data in this compression
+     * @return              stream of the decompressed data
+     * @throws IOException  if the stream's header is not valid for this compression
+     */
+    public InputStream decompress(InputStream compressed) throws IOException {
+        return switch (this) {
+            case NONE -> compressed;
+            case GZIP -> new GZIPInputStream(compressed, BUFFER_SIZE);
+            case ZSTD -> new BufferedInputStream(new ZstdInputStream(compressed), BUFFER_SIZE);
+        };
+    }
+
+    /**
+     * Detect the compression of a file from its extension.
+     *
+     * @param file  data file
+     * @return      the file's compression, NONE if it has no compression extension
+     */
+    public static DataFileCompression detect(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (DataFileCompression compression : values()) {
+            if (compression.extensions.stream().anyMatch(name::endsWith)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param fileName  data file name
+     * @return          the file name without its compression extension, if it has one
+     */
+    static String stripExtension(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        for (DataFileCompression compression : values()) {
+            for (String extension : compression.extensions) {
+                if (name.endsWith(extension)) {
+                    return fileName.substring(0, fileName.length() - extension.length());
+                }
+            }
+        }
+        return fileName;
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.aaejo.institutionfinder.finder.json;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats institution data files can be in.
+ *
+ * @author Omri Harary
+ */
+public enum DataFileFormat {
+
+    /** A single JSON array of institutions. */
+    JSON(".json"),
+    /** Newline-delimited JSON, one institution object per line. */
+    NDJSON(".ndjson", ".jsonl"),
+    /** CSV with a header row naming the institution fields. */
+    CSV(".csv");
+
+    private final List<String> extensions;
+
+    DataFileFormat(String... extensions) {
+        this.extensions = List.of(extensions);
+    }
+
+    /**
+     * @return  file extensions for the format, most common first
+     */
+    public List<String> extensions() {
+        return extensions;
+    }
+
+    /**
+     * Detect the format of a file from its extension, ignoring any compression
+     * extension. Files with unknown extensions are assumed to be JSON.
+     *
+     * @param file  data file
+     * @return      the file's format
+     */
+    public static DataFileFormat detect(Path file) {
+        String name = DataFileCompression.stripExtension(file.getFileName().toString()).toLowerCase(Locale.ROOT);
+        for (DataFileFormat format : values()) {
+            if (format.extensions.stream().anyMatch(name::endsWith)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+}
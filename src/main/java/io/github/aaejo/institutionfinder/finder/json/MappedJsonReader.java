@@ -0,0 +1,315 @@
+package io.github.aaejo.institutionfinder.finder.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the elements of a large JSON array or newline-delimited JSON file in
+ * parallel.
+ *
+ * The file is memory-mapped and scanned once for the commas between top-level
+ * array elements, or for line breaks, which splits it into chunks of roughly
+ * the configured size that always hold whole elements. Scanning only tracks
+ * nesting depth and strings, so it is much cheaper than parsing. Each chunk is then parsed on its own
+ * thread while scanning continues. Only a few chunks per thread are in flight
+ * at a time, so memory use does not grow with the file.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class MappedJsonReader {
+
+    /** Size of the windows the file is mapped in while scanning for chunk boundaries. */
+    private static final long SCAN_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+    private final long chunkSize;
+    private final boolean ordered;
+
+    /**
+     * @param objectMapper  mapper used to parse elements
+     * @param parallelism   number of threads parsing chunks, or 0 for one per available processor
+     * @param chunkSize     approximate size in bytes of the chunks the file is split into
+     * @param ordered       whether elements are passed on in file order, rather than as soon as
+     *                      they are parsed
+     */
+    public MappedJsonReader(ObjectMapper objectMapper, int parallelism, long chunkSize, boolean ordered) {
+        this.objectMapper = objectMapper;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = chunkSize;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Read every element of the JSON array in a file.
+     *
+     * When not ordered, the consumer is called from several threads at once and
+     * must be thread-safe.
+     *
+     * @param <T>                       element type
+     * @param file                      file containing a JSON array
+     * @param type                      class to map elements to
+     * @param consumer                  called with each element
+     * @throws IOException              if the file can't be read or an element can't be parsed
+     * @throws IllegalStateException    if the file's content is not an array
+     */
+    public <T> void readArray(Path file, Class<T> type, Consumer<? super T> consumer) throws IOException {
+        read(file, type, consumer, true);
+    }
+
+    /**
+     * Read every value of a newline-delimited JSON file, one per line.
+     *
+     * When not ordered, the consumer is called from several threads at once and
+     * must be thread-safe.
+     *
+     * @param <T>           value type
+     * @param file          file containing one JSON value per line
+     * @param type          class to map values to
+     * @param consumer      called with each value
+     * @throws IOException  if the file can't be read or a value can't be parsed
+     */
+    public <T> void readLines(Path file, Class<T> type, Consumer<? super T> consumer) throws IOException {
+        read(file, type, consumer, false);
+    }
+
+    private <T> void read(Path file, Class<T> type, Consumer<? super T> consumer, boolean array)
+            throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new CustomizableThreadFactory("json-ingest-"));
+        Deque<Future<List<T>>> inFlight = new ArrayDeque<>();
+        int chunks = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChunkScanner scanner = new ChunkScanner(channel);
+            long[] chunk;
+            while ((chunk = array ? scanner.nextArrayChunk() : scanner.nextLineChunk()) != null) {
+                long start = chunk[0];
+                long end = chunk[1];
+                inFlight.add(executor.submit(() -> parseChunk(channel, start, end, array, type, consumer)));
+                chunks++;
+
+                if (inFlight.size() >= parallelism * 2) {
+                    complete(inFlight.remove(), consumer);
+                }
+            }
+
+            while (!inFlight.isEmpty()) {
+                complete(inFlight.remove(), consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file, e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.debug("Read {} in {} chunks", file, chunks);
+    }
+
+    private <T> void complete(Future<List<T>> chunk, Consumer<? super T> consumer)
+            throws IOException, InterruptedException {
+        try {
+            chunk.get().forEach(consumer);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            } else if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Parse the elements between two offsets of the file.
+     *
+     * @return  the parsed elements if ordered, otherwise an empty list as they
+     *          have already been passed on
+     */
+    private <T> List<T> parseChunk(FileChannel channel, long start, long end, boolean array, Class<T> type,
+            Consumer<? super T> consumer) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("JSON element too large to map at offset " + start);
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        InputStream chunkStream = new ByteBufferBackedInputStream(buffer);
+        if (array) {
+            // A chunk is a comma-separated run of elements, so bracketing it makes it an array of its own
+            chunkStream = new SequenceInputStream(Collections.enumeration(List.of(
+                    new ByteArrayInputStream("[".getBytes(StandardCharsets.UTF_8)),
+                    chunkStream,
+                    new ByteArrayInputStream("]".getBytes(StandardCharsets.UTF_8)))));
+        }
+
+        List<T> elements = new ArrayList<>();
+        // Lines are a sequence of root-level values, which the parser reads until it runs out of tokens
+        JsonToken lastToken = array ? JsonToken.END_ARRAY : null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(chunkStream)) {
+            if (array) {
+                parser.nextToken();
+            }
+            while (parser.nextToken() != lastToken) {
+                T element = objectMapper.readValue(parser, type);
+                if (ordered) {
+                    elements.add(element);
+                } else {
+                    consumer.accept(element);
+                }
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Finds chunk boundaries by scanning the file for top-level commas or line breaks.
+     */
+    private class ChunkScanner {
+
+        private final FileChannel channel;
+        private final long size;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        private long chunkStart = -1;
+
+        ChunkScanner(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * @return  start and end offsets of the next chunk, or null at the end of the array
+         */
+        long[] nextArrayChunk() throws IOException {
+            if (chunkStart < 0) {
+                skipByteOrderMark();
+                findArrayStart();
+            }
+
+            while (position < size) {
+                byte b = byteAt(position++);
+
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+
+                switch (b) {
+                    case '"' -> inString = true;
+                    case '[', '{' -> depth++;
+                    case ']', '}' -> {
+                        if (--depth == 0) {
+                            long[] chunk = { chunkStart, position - 1 };
+                            position = size;
+                            return chunk;
+                        }
+                    }
+                    case ',' -> {
+                        if (depth == 1 && position - chunkStart > chunkSize) {
+                            long[] chunk = { chunkStart, position - 1 };
+                            chunkStart = position;
+                            return chunk;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+
+            if (depth > 0) {
+                throw new IOException("Unexpected end of JSON array after " + size + " bytes");
+            }
+            return null;
+        }
+
+        /**
+         * @return  start and end offsets of the next chunk, or null at the end of the file
+         */
+        long[] nextLineChunk() throws IOException {
+            if (chunkStart < 0) {
+                skipByteOrderMark();
+                chunkStart = position;
+            }
+            if (position >= size) {
+                return null;
+            }
+
+            // Line breaks can't appear inside a JSON value on a single line, so no need to track strings
+            long start = position;
+            position = Math.min(start + chunkSize, size);
+            while (position < size && byteAt(position) != '\n') {
+                position++;
+            }
+            long[] chunk = { start, position };
+            position = Math.min(position + 1, size);
+            return chunk;
+        }
+
+        private void skipByteOrderMark() throws IOException {
+            if (size >= 3 && (byteAt(0) & 0xFF) == 0xEF && (byteAt(1) & 0xFF) == 0xBB && (byteAt(2) & 0xFF) == 0xBF) {
+                position = 3;
+            }
+        }
+
+        private void findArrayStart() throws IOException {
+            // Skip whitespace before the array
+            while (position < size && Character.isWhitespace(byteAt(position))) {
+                position++;
+            }
+
+            if (position >= size || byteAt(position) != '[') {
+                throw new IllegalStateException("Content not in an array");
+            }
+            depth = 1;
+            chunkStart = ++position;
+        }
+
+        private byte byteAt(long offset) throws IOException {
+            if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SCAN_WINDOW_SIZE, size - offset));
+            }
+            return window.get((int) (offset - windowStart));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.aaejo.institutionfinder.finder.plan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Plans the College Navigator searches for a crawl, combining states with few
+ * results into multi-state searches ({@code s=AS+FM+MH}) so that they share
+ * results pages instead of costing at least one request each.
+ *
+ * Planning uses the number of results each state had in previous runs. States
+ * with more than a page of results, or with no known count, are searched on
+ * their own. The rest are packed first-fit-decreasing into searches that fit on
+ * a single results page. Searches are ordered by expected pages, largest
+ * first, so concurrent crawls finish together.
+ *
+ * College Navigator has a fixed page size, so results per page can't be raised.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class StateSearchPlanner {
+
+    public static final String STATE_SEPARATOR = "+";
+
+    private static final TypeReference<Map<String, Integer>> COUNTS_TYPE = new TypeReference<>() {
+    };
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+    private final int maxStatesPerSearch;
+
+    private final Map<String, Integer> resultCounts = new ConcurrentHashMap<>();
+
+    /**
+     * @param file                  file to keep result counts per state in between runs
+     * @param objectMapper          mapper used to read and write the counts file
+     * @param pageSize              results per College Navigator results page
+     * @param maxStatesPerSearch    most states to combine into one search
+     */
+    public StateSearchPlanner(Path file, ObjectMapper objectMapper, int pageSize, int maxStatesPerSearch) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+        this.maxStatesPerSearch = maxStatesPerSearch;
+    }
+
+    /**
+     * Load the result counts from previous runs.
+     */
+    public synchronized void begin() {
+        resultCounts.clear();
+        if (!Files.exists(file)) {
+            log.info("No state result counts at {}, every state will be searched on its own", file);
+            return;
+        }
+
+        try {
+            resultCounts.putAll(objectMapper.readValue(file.toFile(), COUNTS_TYPE));
+        } catch (IOException e) {
+            log.error("Failed to read state result counts at {}, every state will be searched on its own", file, e);
+            resultCounts.clear();
+        }
+    }
+
+    /**
+     * @param states    states (or territories) to cover
+     * @return          searches to make, each a single state or several joined with {@link #STATE_SEPARATOR}
+     */
+    public List<String> plan(List<String> states) {
+        List<Search> searches = new ArrayList<>();
+        List<String> small = new ArrayList<>();
+        for (String state : states) {
+            Integer count = resultCounts.get(state);
+            if (count == null || count > pageSize) {
+                searches.add(new Search(state, count == null ? pageSize : count));
+            } else {
+                small.add(state);
+            }
+        }
+
+        // First-fit-decreasing: each small state goes in the first search it fits in, largest states first
+        small.sort(Comparator.comparing((String state) -> resultCounts.get(state)).reversed());
+        List<List<String>> bins = new ArrayList<>();
+        List<Integer> binCounts = new ArrayList<>();
+        for (String state : small) {
+            int count = resultCounts.get(state);
+            int bin = 0;
+            while (bin < bins.size()
+                    && (binCounts.get(bin) + count > pageSize || bins.get(bin).size() >= maxStatesPerSearch)) {
+                bin++;
+            }
+            if (bin == bins.size()) {
+                bins.add(new ArrayList<>());
+                binCounts.add(0);
+            }
+            bins.get(bin).add(state);
+            binCounts.set(bin, binCounts.get(bin) + count);
+        }
+        for (int i = 0; i < bins.size(); i++) {
+            searches.add(new Search(String.join(STATE_SEPARATOR, bins.get(i)), binCounts.get(i)));
+        }
+
+        searches.sort(Comparator.comparing(Search::expectedResults).reversed());
+        List<String> plan = searches.stream().map(Search::states).toList();
+        log.info("Planned {} searches for {} states, combining {} states into {} searches", plan.size(),
+                states.size(), small.size(), bins.size());
+        return plan;
+    }
+
+    /**
+     * Record the total number of results a search had, for planning the next run.
+     *
+     * @param search    a planned search
+     * @param count     number of results, across all pages
+     */
+    public void recordCount(String search, int count) {
+        String[] states = states(search);
+        if (states.length == 1) {
+            resultCounts.put(search, count);
+        } else if (count > pageSize) {
+            // Can't tell which states grew, so they are searched on their own next time to find out
+            for (String state : states) {
+                resultCounts.remove(state);
+            }
+        }
+    }
+
+    /**
+     * Save the result counts for the next run.
+     */
+    public synchronized void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), resultCounts);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The next run just makes more requests
+            log.error("Failed to save state result counts to {}", file, e);
+        }
+    }
+
+    /**
+     * @param search    a planned search
+     * @return          the states it covers
+     */
+    public static String[] states(String search) {
+        return search.split("\\" + STATE_SEPARATOR);
+    }
+
+    private record Search(String states, int expectedResults) {
+    }
+}
@@ -0,0 +1,264 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * RegistryFetcher decorator that keeps responses in a directory on disk.
+ *
+ * Entries are keyed by the request parameters. An entry younger than the TTL is
+ * served without contacting the registry. An older entry is revalidated with a
+ * conditional request when the registry provided an ETag or Last-Modified
+ * header for it, otherwise it is fetched again. When the cache grows past its
+ * maximum size, the least recently fetched entries are removed.
+ *
+ * In offline mode the registry is never contacted. Cached entries are served
+ * regardless of age and anything else fails with a
+ * {@link RegistryCacheMissException}.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class CachingRegistryFetcher implements RegistryFetcher {
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+
+    private final RegistryFetcher delegate;
+    private final Path directory;
+    private final Duration ttl;
+    private final long maxSizeBytes;
+    private final boolean offline;
+    private final Clock clock;
+
+    private final AtomicLong sizeBytes;
+
+    public CachingRegistryFetcher(RegistryFetcher delegate, Path directory, Duration ttl, long maxSizeBytes,
+            boolean offline) {
+        this(delegate, directory, ttl, maxSizeBytes, offline, Clock.systemUTC());
+    }
+
+    CachingRegistryFetcher(RegistryFetcher delegate, Path directory, Duration ttl, long maxSizeBytes,
+            boolean offline, Clock clock) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.ttl = ttl;
+        this.maxSizeBytes = maxSizeBytes;
+        this.offline = offline;
+        this.clock = clock;
+
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                this.sizeBytes = new AtomicLong(files.mapToLong(CachingRegistryFetcher::sizeOf).sum());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open registry cache directory " + directory, e);
+        }
+
+        log.info("Using registry cache at {} ({} bytes, offline = {})", directory, sizeBytes.get(), offline);
+    }
+
+    @Override
+    public RegistryResponse fetch(Map<String, String> params, Map<String, String> headers) throws IOException {
+        String key = key(params);
+        CacheEntry cached = read(key);
+
+        if (cached != null && (offline || cached.fetchedAt().plus(ttl).isAfter(clock.instant()))) {
+            log.debug("Registry cache hit for {}", key);
+            return cached.response();
+        }
+
+        if (offline) {
+            throw new RegistryCacheMissException("Not in registry cache and running offline: " + key);
+        }
+
+        Map<String, String> requestHeaders = new HashMap<>(headers);
+        if (cached != null) {
+            String etag = cached.response().header("ETag");
+            String lastModified = cached.response().header("Last-Modified");
+            if (etag != null) {
+                requestHeaders.put("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                requestHeaders.put("If-Modified-Since", lastModified);
+            }
+        }
+
+        RegistryResponse response = delegate.fetch(params, requestHeaders);
+
+        if (response.notModified() && cached != null) {
+            log.debug("Registry cache entry for {} revalidated", key);
+            writeMeta(key, cached.response());
+            return cached.response();
+        }
+
+        write(key, response);
+        evictIfNeeded();
+        return response;
+    }
+
+    /**
+     * Build a stable cache key from request parameters, independent of their order.
+     */
+    static String key(Map<String, String> params) {
+        return new TreeMap<>(params).entrySet().stream()
+                .map(p -> p.getKey() + "=" + p.getValue())
+                .collect(Collectors.joining("&"));
+    }
+
+    private CacheEntry read(String key) throws IOException {
+        String fileName = fileName(key);
+        Path metaFile = directory.resolve(fileName + META_SUFFIX);
+        Path bodyFile = directory.resolve(fileName + BODY_SUFFIX);
+
+        Properties meta = new Properties();
+        byte[] body;
+        try (InputStream metaStream = Files.newInputStream(metaFile)) {
+            meta.load(metaStream);
+            body = Files.readAllBytes(bodyFile);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (!key.equals(meta.getProperty("key"))) {
+            log.warn("Registry cache entry {} does not match key {}, ignoring it", fileName, key);
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (String name : meta.stringPropertyNames()) {
+            if (name.startsWith("header.")) {
+                headers.put(name.substring("header.".length()), meta.getProperty(name));
+            }
+        }
+
+        RegistryResponse response = new RegistryResponse(
+                Integer.parseInt(meta.getProperty("status")),
+                meta.getProperty("url"),
+                headers,
+                body);
+        return new CacheEntry(response, Instant.parse(meta.getProperty("fetched-at")));
+    }
+
+    private void write(String key, RegistryResponse response) throws IOException {
+        String fileName = fileName(key);
+        Path bodyFile = directory.resolve(fileName + BODY_SUFFIX);
+        long previousSize = sizeOf(bodyFile);
+
+        // Write to a temporary file first so concurrent readers never see a partial body
+        Path tempFile = Files.createTempFile(directory, fileName, ".tmp");
+        Files.write(tempFile, response.body());
+        Files.move(tempFile, bodyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sizeBytes.addAndGet(response.body().length - previousSize);
+
+        writeMeta(key, response);
+    }
+
+    private void writeMeta(String key, RegistryResponse response) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("key", key);
+        meta.setProperty("status", Integer.toString(response.status()));
+        meta.setProperty("url", response.url());
+        meta.setProperty("fetched-at", clock.instant().toString());
+        for (String header : List.of("ETag", "Last-Modified", "Content-Type")) {
+            String value = response.header(header);
+            if (value != null) {
+                meta.setProperty("header." + header, value);
+            }
+        }
+
+        String fileName = fileName(key);
+        Path tempFile = Files.createTempFile(directory, fileName, ".tmp");
+        try (OutputStream metaStream = Files.newOutputStream(tempFile)) {
+            meta.store(metaStream, null);
+        }
+        Files.move(tempFile, directory.resolve(fileName + META_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remove the least recently fetched entries until the cache is back under its maximum size.
+     */
+    private synchronized void evictIfNeeded() throws IOException {
+        if (sizeBytes.get() <= maxSizeBytes) {
+            return;
+        }
+
+        // Metadata is rewritten on every fetch and revalidation, so its age is the entry's age
+        List<Path> metas;
+        try (Stream<Path> files = Files.list(directory)) {
+            metas = new ArrayList<>(files.filter(f -> f.getFileName().toString().endsWith(META_SUFFIX)).toList());
+        }
+        metas.sort(Comparator.comparing(CachingRegistryFetcher::lastModified));
+
+        for (Path meta : metas) {
+            if (sizeBytes.get() <= maxSizeBytes) {
+                break;
+            }
+            String fileName = meta.getFileName().toString();
+            Path body = directory.resolve(fileName.substring(0, fileName.length() - META_SUFFIX.length()) + BODY_SUFFIX);
+            long size = sizeOf(body);
+            Files.deleteIfExists(meta);
+            if (Files.deleteIfExists(body)) {
+                sizeBytes.addAndGet(-size);
+            }
+        }
+
+        log.debug("Evicted registry cache entries, size now {} bytes", sizeBytes.get());
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return file.getFileName().toString().endsWith(BODY_SUFFIX) ? Files.size(file) : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static Instant lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return Instant.MIN;
+        }
+    }
+
+    private record CacheEntry(RegistryResponse response, Instant fetchedAt) {
+    }
+}
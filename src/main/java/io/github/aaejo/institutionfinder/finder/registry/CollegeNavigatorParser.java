@@ -0,0 +1,28 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+
+/**
+ * Extracts crawl data from College Navigator pages.
+ *
+ * @author Omri Harary
+ */
+public interface CollegeNavigatorParser {
+
+    String RESULTS_TABLE_ID = "ctl00_cphCollegeNavBody_ucResultsMain_tblResults";
+    String PAGING_CONTROLS_ID = "ctl00_cphCollegeNavBody_ucResultsMain_divPagingControls";
+
+    /**
+     * @param response      a search results page
+     * @return              the results and paging information on the page
+     * @throws IOException  if the response could not be read
+     */
+    ResultsPage parseResults(RegistryResponse response) throws IOException;
+
+    /**
+     * @param response      an institution page
+     * @return              the institution's address and website
+     * @throws IOException  if the response could not be read
+     */
+    SchoolDetails parseDetails(RegistryResponse response) throws IOException;
+}
@@ -0,0 +1,145 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jsoup.helper.HttpConnection;
+
+/**
+ * RegistryFetcher using the JDK HttpClient.
+ *
+ * A single client is shared by all crawl threads, so connections to the registry
+ * are kept alive and reused, and multiplexed over HTTP/2 when the registry
+ * supports it. Compressed responses are requested and decompressed here, so the
+ * parsers always receive the plain body.
+ *
+ * @author Omri Harary
+ */
+public class HttpClientRegistryFetcher implements RegistryFetcher {
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final HttpClient httpClient;
+    private final URI registryUrl;
+    private final Duration readTimeout;
+    private final boolean compression;
+
+    /**
+     * @param registryUrl       registry URL that request parameters are appended to
+     * @param connectTimeout    how long to wait for a connection to the registry
+     * @param readTimeout       how long to wait for a response once a request has been sent
+     * @param compression       whether to request compressed responses
+     */
+    public HttpClientRegistryFetcher(URI registryUrl, Duration connectTimeout, Duration readTimeout,
+            boolean compression) {
+        this(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2) // Falls back to HTTP/1.1 if not supported
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .connectTimeout(connectTimeout)
+                    .build(),
+                registryUrl, readTimeout, compression);
+    }
+
+    HttpClientRegistryFetcher(HttpClient httpClient, URI registryUrl, Duration readTimeout, boolean compression) {
+        this.httpClient = httpClient;
+        this.registryUrl = registryUrl;
+        this.readTimeout = readTimeout;
+        this.compression = compression;
+    }
+
+    @Override
+    public RegistryResponse fetch(Map<String, String> params, Map<String, String> headers) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(requestUri(params))
+                .timeout(readTimeout)
+                .header("User-Agent", HttpConnection.DEFAULT_UA);
+        if (compression) {
+            request.header("Accept-Encoding", ACCEPT_ENCODING);
+        }
+        headers.forEach(request::header);
+
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(request.GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching " + registryUrl);
+        }
+
+        int status = response.statusCode();
+        String url = response.uri().toString();
+        if (status >= 400) {
+            throw new RegistryStatusException("HTTP error fetching URL", status, url,
+                    RegistryStatusException.parseRetryAfter(
+                            response.headers().firstValue("Retry-After").orElse(null), Clock.systemUTC()));
+        }
+
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        return new RegistryResponse(status, url, headers(response.headers()), decode(response.body(), encoding));
+    }
+
+    URI requestUri(Map<String, String> params) {
+        if (params.isEmpty()) {
+            return registryUrl;
+        }
+
+        String query = params.entrySet().stream()
+                .map(p -> encode(p.getKey()) + "=" + encode(p.getValue()))
+                .collect(Collectors.joining("&"));
+        String base = registryUrl.toString();
+        return URI.create(base + (registryUrl.getRawQuery() == null ? "?" : "&") + query);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Flatten response headers, leaving out Content-Encoding and Content-Length as
+     * they describe the body before it is decompressed.
+     */
+    private static Map<String, String> headers(HttpHeaders httpHeaders) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : httpHeaders.map().entrySet()) {
+            String name = header.getKey();
+            if (name.startsWith(":") // HTTP/2 pseudo-headers
+                    || name.equalsIgnoreCase("Content-Encoding")
+                    || name.equalsIgnoreCase("Content-Length")) {
+                continue;
+            }
+            headers.put(name, String.join(", ", header.getValue()));
+        }
+        return headers;
+    }
+
+    static byte[] decode(byte[] body, String encoding) throws IOException {
+        String normalised = encoding.trim().toLowerCase();
+        if (body.length == 0 || normalised.isEmpty() || normalised.equals("identity")) {
+            return body;
+        }
+
+        try (InputStream decoded = switch (normalised) {
+                case "gzip", "x-gzip" -> new GZIPInputStream(new ByteArrayInputStream(body));
+                case "deflate" -> new InflaterInputStream(new ByteArrayInputStream(body));
+                default -> throw new IOException("Unsupported Content-Encoding from registry: " + encoding);
+            }) {
+            return decoded.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hc.core5.net.URIBuilder;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+/**
+ * CollegeNavigatorParser that builds a Jsoup Document for each page and reads
+ * it with selectors.
+ *
+ * @author Omri Harary
+ */
+public class JsoupCollegeNavigatorParser implements CollegeNavigatorParser {
+
+    @Override
+    public ResultsPage parseResults(RegistryResponse response) throws IOException {
+        return parseResults(Jsoup.parse(new ByteArrayInputStream(response.body()), null, response.url()));
+    }
+
+    @Override
+    public SchoolDetails parseDetails(RegistryResponse response) throws IOException {
+        return parseDetails(Jsoup.parse(new ByteArrayInputStream(response.body()), null, response.url()));
+    }
+
+    /**
+     * @param resultsPage   a search results page
+     * @return              the results and paging information on the page
+     */
+    public ResultsPage parseResults(Document resultsPage) {
+        Element resultsTable = resultsPage.getElementById(RESULTS_TABLE_ID);
+        Element resultsTableBody = resultsTable != null ? resultsTable.firstElementChild() : null;
+        Element pagingControls = resultsPage.getElementById(PAGING_CONTROLS_ID);
+
+        if (resultsTableBody == null) {
+            return ResultsPage.NO_RESULTS;
+        }
+
+        String pagingText = pagingControls != null ? pagingControls.text() : "";
+        boolean hasNextPageLink = pagingControls != null
+                && pagingControls.selectFirst(":containsOwn(Next Page »)") != null;
+
+        Elements results = resultsTableBody.select(".resultsW, .resultsY");
+        List<SchoolLink> schools = new ArrayList<>(results.size());
+        for (Element result : results) {
+            Element schoolInfoLink = result
+                                    .child(1) // 0 = info button, 1 = school page link, 2 = add button
+                                    .getElementsByAttribute("href")
+                                    .first();
+            String schoolName = schoolInfoLink.text();
+            String schoolId = new URIBuilder(URI.create(schoolInfoLink.absUrl("href")))
+                    .getQueryParams().stream()
+                    .filter(p -> p.getName().equals("id"))
+                    .findFirst().get().getValue();
+
+            schools.add(new SchoolLink(schoolName, schoolId));
+        }
+
+        return new ResultsPage(true, pagingText, hasNextPageLink, schools);
+    }
+
+    /**
+     * @param infoPage  an institution page
+     * @return          the institution's address and website
+     */
+    public SchoolDetails parseDetails(Document infoPage) {
+        String address = infoPage.selectFirst(".headerlg").parent().textNodes().get(0).text();
+        String website = "https://" + infoPage.selectFirst(":containsOwn(Website:)").siblingElements().first().text();
+
+        return new SchoolDetails(address, website);
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Map;
+
+import org.jsoup.Connection;
+
+/**
+ * RegistryFetcher using a preconfigured Jsoup Connection for HTTP handling.
+ *
+ * @author Omri Harary
+ */
+public class JsoupRegistryFetcher implements RegistryFetcher {
+
+    private final Connection registryConnection;
+
+    public JsoupRegistryFetcher(Connection registryConnection) {
+        this.registryConnection = registryConnection;
+    }
+
+    @Override
+    public RegistryResponse fetch(Map<String, String> params, Map<String, String> headers) throws IOException {
+        Connection request = registryConnection
+                .newRequest()
+                .ignoreHttpErrors(true); // Statuses are checked below so 304 can be passed through
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            request = request.data(param.getKey(), param.getValue());
+        }
+        request = request.headers(headers);
+
+        Connection.Response response = request.execute();
+        int status = response.statusCode();
+        if (status >= 400) {
+            throw new RegistryStatusException("HTTP error fetching URL", status, response.url().toString(),
+                    RegistryStatusException.parseRetryAfter(response.header("Retry-After"), Clock.systemUTC()));
+        }
+
+        return new RegistryResponse(status, response.url().toString(), response.headers(), response.bodyAsBytes());
+    }
+}
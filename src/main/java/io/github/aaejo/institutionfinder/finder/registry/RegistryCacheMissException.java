@@ -0,0 +1,15 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+
+/**
+ * Thrown when running in offline mode and a requested page is not in the cache.
+ *
+ * @author Omri Harary
+ */
+public class RegistryCacheMissException extends IOException {
+
+    public RegistryCacheMissException(String message) {
+        super(message);
+    }
+}
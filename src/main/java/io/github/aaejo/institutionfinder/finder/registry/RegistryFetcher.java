@@ -0,0 +1,34 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Fetches raw pages from an institution registry.
+ *
+ * @author Omri Harary
+ */
+@FunctionalInterface
+public interface RegistryFetcher {
+
+    /**
+     * Fetch a page from the registry.
+     *
+     * @param params        query parameters, in the order they should be sent
+     * @param headers       additional request headers, eg. for conditional requests
+     * @return              the response. Only successful and 304 Not Modified responses are returned.
+     * @throws IOException  if the page could not be fetched or an error status was returned
+     */
+    RegistryResponse fetch(Map<String, String> params, Map<String, String> headers) throws IOException;
+
+    /**
+     * Fetch a page from the registry without any additional headers.
+     *
+     * @param params        query parameters, in the order they should be sent
+     * @return              the response
+     * @throws IOException  if the page could not be fetched or an error status was returned
+     */
+    default RegistryResponse fetch(Map<String, String> params) throws IOException {
+        return fetch(params, Map.of());
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.time.Duration;
+
+import io.github.aaejo.institutionfinder.finder.plan.StateSearchPlanner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters for crawling a registry, tagged by country, state and the kind of
+ * page: {@code results} or {@code details}. Searches over several states are
+ * all tagged {@code combined}, as how states are combined changes between runs
+ * and would otherwise add new series each time.
+ *
+ * Fetch and parse timers publish percentile histograms as well as the 50th,
+ * 95th and 99th percentiles, so slow runs can be put down to the network or to
+ * parsing.
+ *
+ * @author Omri Harary
+ */
+public class RegistryMetrics {
+
+    public static final String RESULTS_PAGE = "results";
+    public static final String DETAILS_PAGE = "details";
+
+    private final String country;
+    private final MeterRegistry registry;
+
+    public RegistryMetrics(String country, MeterRegistry registry) {
+        this.country = country;
+        this.registry = registry;
+    }
+
+    /**
+     * @return  timer for loading a page from the registry, including retries made by the fetcher itself
+     */
+    public Timer fetch(String state, String page) {
+        return timer("jds.institution-finder.registry.fetch", "Time to load a page from the registry", state, page);
+    }
+
+    /**
+     * @return  timer for extracting results or details from a loaded page
+     */
+    public Timer parse(String state, String page) {
+        return timer("jds.institution-finder.registry.parse", "Time to extract what is needed from a page",
+                state, page);
+    }
+
+    /**
+     * Record a page being requested again after a failure.
+     */
+    public void retried(String state, String page) {
+        counter("jds.institution-finder.registry.retries", "Page requests retried after a failure", state, page)
+                .increment();
+    }
+
+    /**
+     * Record a page being given up on after its retries ran out.
+     */
+    public void recovered(String state, String page) {
+        counter("jds.institution-finder.registry.recoveries", "Pages given up on after retries ran out",
+                state, page).increment();
+    }
+
+    private static String stateTag(String state) {
+        return state.contains(StateSearchPlanner.STATE_SEPARATOR) ? "combined" : state;
+    }
+
+    private Timer timer(String name, String description, String state, String page) {
+        // Registering an existing meter returns it, so these are only built once per tag combination
+        return Timer.builder(name)
+                .description(description)
+                .tag("country", country)
+                .tag("state", stateTag(state))
+                .tag("page", page)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry);
+    }
+
+    private Counter counter(String name, String description, String state, String page) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("country", country)
+                .tag("state", stateTag(state))
+                .tag("page", page)
+                .register(registry);
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A raw response from an institution registry.
+ *
+ * @param status    HTTP status code
+ * @param url       URL the response was loaded from, used as the base URI when parsing
+ * @param headers   response headers, with case-insensitive names
+ * @param body      undecoded response body
+ *
+ * @author Omri Harary
+ */
+public record RegistryResponse(int status, String url, Map<String, String> headers, byte[] body) {
+
+    public static final int NOT_MODIFIED = 304;
+
+    public RegistryResponse {
+        Map<String, String> caseInsensitiveHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitiveHeaders.putAll(headers);
+        headers = Collections.unmodifiableMap(caseInsensitiveHeaders);
+    }
+
+    /**
+     * @param name  header name, case-insensitive
+     * @return      the header value, or null if it is not present
+     */
+    public String header(String name) {
+        return headers.get(name);
+    }
+
+    public boolean notModified() {
+        return status == NOT_MODIFIED;
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import org.jsoup.HttpStatusException;
+
+/**
+ * An error status from the registry, along with how long the registry asked
+ * clients to wait before retrying, if it did.
+ *
+ * @author Omri Harary
+ */
+public class RegistryStatusException extends HttpStatusException {
+
+    private final Duration retryAfter;
+
+    public RegistryStatusException(String message, int statusCode, String url, Duration retryAfter) {
+        super(message, statusCode, url);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the delay requested by the registry's Retry-After header, or null if there was none
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Parse a Retry-After header value, which is either a number of seconds or an HTTP date.
+     *
+     * @param value Retry-After header value, may be null
+     * @param clock clock to measure an HTTP date against
+     * @return      the requested delay, or null if the value is missing or invalid
+     */
+    public static Duration parseRetryAfter(String value, Clock clock) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Duration.ofSeconds(Math.max(0L, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, try as a date
+        }
+
+        try {
+            Instant retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(clock.instant(), retryAt);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.util.List;
+
+/**
+ * The parts of a College Navigator search results page that are used for crawling.
+ *
+ * @param hasResults        whether the results table had any content. When false, the other fields are empty.
+ * @param pagingText        text of the paging controls, or an empty string if they were missing
+ * @param hasNextPageLink   whether the paging controls contain a "Next Page »" link
+ * @param schools           schools listed on the page, in page order
+ *
+ * @author Omri Harary
+ */
+public record ResultsPage(boolean hasResults, String pagingText, boolean hasNextPageLink, List<SchoolLink> schools) {
+
+    public static final ResultsPage NO_RESULTS = new ResultsPage(false, "", false, List.of());
+}
@@ -0,0 +1,12 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+/**
+ * The parts of a College Navigator institution page that are used to build an Institution.
+ *
+ * @param address   street address of the institution
+ * @param website   website of the institution, including the scheme
+ *
+ * @author Omri Harary
+ */
+public record SchoolDetails(String address, String website) {
+}
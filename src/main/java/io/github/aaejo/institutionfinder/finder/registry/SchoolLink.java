@@ -0,0 +1,12 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+/**
+ * A school as listed on a College Navigator results page.
+ *
+ * @param name  name of the institution
+ * @param id    College Navigator ID for the institution
+ *
+ * @author Omri Harary
+ */
+public record SchoolLink(String name, String id) {
+}
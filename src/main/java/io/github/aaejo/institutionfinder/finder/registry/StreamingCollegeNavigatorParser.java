@@ -0,0 +1,573 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.jsoup.parser.Parser;
+
+/**
+ * CollegeNavigatorParser that scans the raw HTML of a page for the few
+ * elements the crawl needs, without building a DOM.
+ *
+ * The response is decoded once and scanned once for what is needed: on a
+ * results page the results table and paging controls, on an institution page
+ * the address and the website row. The charset comes from the Content-Type
+ * header, or failing that a meta tag near the start of the page, as with
+ * Jsoup. Text is normalised the same way Jsoup does, so both parsers give the
+ * same results for College Navigator pages.
+ *
+ * This is not a general HTML parser. It relies on College Navigator's markup
+ * being well formed around the elements it looks for.
+ *
+ * @author Omri Harary
+ */
+public class StreamingCollegeNavigatorParser implements CollegeNavigatorParser {
+
+    /** How far into a page to look for a meta tag declaring its charset, as in the HTML spec */
+    private static final int CHARSET_SNIFF_LIMIT = 1024;
+
+    private static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "br", "col", "embed", "hr", "img",
+            "input", "link", "meta", "param", "source", "track", "wbr");
+    private static final Set<String> BLOCK_ELEMENTS = Set.of("address", "blockquote", "br", "dd", "div", "dl", "dt",
+            "h1", "h2", "h3", "h4", "h5", "h6", "hr", "li", "ol", "p", "pre", "table", "tbody", "td", "tfoot", "th",
+            "thead", "tr", "ul");
+
+    @Override
+    public ResultsPage parseResults(RegistryResponse response) throws IOException {
+        return parseResults(decode(response));
+    }
+
+    @Override
+    public SchoolDetails parseDetails(RegistryResponse response) throws IOException {
+        return parseDetails(decode(response));
+    }
+
+    private ResultsPage parseResults(String html) {
+        int table = indexOfId(html, RESULTS_TABLE_ID);
+        int paging = indexOfId(html, PAGING_CONTROLS_ID);
+
+        Tag tableTag = table != -1 ? Tag.enclosing(html, table) : null;
+        int tableEnd = tableTag != null ? findClose(html, tableTag.name(), tableTag.end()) : -1;
+        Tag pagingTag = paging != -1 ? Tag.enclosing(html, paging) : null;
+        int pagingEnd = pagingTag != null ? findClose(html, pagingTag.name(), pagingTag.end()) : -1;
+
+        if (tableTag == null || tableEnd == -1 || !containsElement(html, tableTag.end(), tableEnd)) {
+            return ResultsPage.NO_RESULTS;
+        }
+
+        String pagingText = "";
+        boolean hasNextPageLink = false;
+        if (pagingTag != null && pagingEnd != -1) {
+            pagingText = text(html, pagingTag.end(), pagingEnd, true);
+            hasNextPageLink = anyOwnTextContains(html, pagingTag.end(), pagingEnd, "next page »");
+        }
+
+        List<SchoolLink> schools = new ArrayList<>();
+        for (Tag tag = Tag.next(html, tableTag.end(), tableEnd); tag != null; tag = Tag.next(html, tag.end(), tableEnd)) {
+            if (tag.opening() && tag.name().equals("tr") && (tag.hasClass("resultsW") || tag.hasClass("resultsY"))) {
+                int rowEnd = findClose(html, "tr", tag.end());
+                SchoolLink school = parseResultRow(html, tag.end(), rowEnd == -1 ? tableEnd : rowEnd);
+                if (school != null) {
+                    schools.add(school);
+                }
+            }
+        }
+
+        return new ResultsPage(true, pagingText, hasNextPageLink, schools);
+    }
+
+    /**
+     * Read the school link from the second cell of a results row.
+     * (0 = info button, 1 = school page link, 2 = add button)
+     */
+    private SchoolLink parseResultRow(CharSequence html, int from, int to) {
+        Tag cell = childElement(html, from, to, 1);
+        if (cell == null) {
+            return null;
+        }
+        int cellEnd = cell.selfClosing() ? cell.end() : findClose(html, cell.name(), cell.end());
+
+        for (Tag tag = cell; tag != null; tag = Tag.next(html, tag.end(), cellEnd)) {
+            String href = tag.opening() ? tag.attribute("href") : null;
+            if (href != null) {
+                int linkEnd = findClose(html, tag.name(), tag.end());
+                String name = text(html, tag.end(), linkEnd == -1 ? cellEnd : linkEnd, true);
+                return new SchoolLink(name, queryParam(unescape(href, true), "id"));
+            }
+        }
+        return null;
+    }
+
+    private SchoolDetails parseDetails(String html) {
+        Tag header = findByClass(html, "headerlg");
+        int websiteLabel = header != null ? indexOfText(html, header.end(), "Website:") : -1;
+        if (header == null || websiteLabel == -1) {
+            throw new IllegalStateException("Institution page is missing its address or website");
+        }
+
+        // The website is in the element following the one labelled "Website:"
+        Tag label = Tag.enclosing(html, websiteLabel);
+        int labelEnd = label != null ? findClose(html, label.name(), label.end()) : -1;
+        Tag value = labelEnd != -1 ? Tag.next(html, labelEnd, html.length()) : null;
+        while (value != null && !value.opening()) {
+            value = Tag.next(html, value.end(), html.length());
+        }
+        int valueEnd = value != null ? findClose(html, value.name(), value.end()) : -1;
+        if (valueEnd == -1) {
+            throw new IllegalStateException("Institution page is missing its website");
+        }
+
+        String address = address(html, header);
+        String website = "https://" + text(html, value.end(), valueEnd, true);
+        return new SchoolDetails(address, website);
+    }
+
+    /**
+     * Address is the first text node directly inside the header's parent element.
+     */
+    private String address(CharSequence html, Tag header) {
+        int previousTagEnd = lastIndexOf(html, '>', header.start() - 1) + 1;
+        if (previousTagEnd < header.start()) {
+            return text(html, previousTagEnd, header.start(), false);
+        }
+
+        int position = header.selfClosing() ? header.end() : findClose(html, header.name(), header.end());
+        Tag closing = Tag.at(html, position);
+        position = closing != null ? closing.end() : position;
+        while (position < html.length()) {
+            Tag tag = Tag.next(html, position, html.length());
+            int textEnd = tag != null ? tag.start() : html.length();
+            if (textEnd > position) {
+                return text(html, position, textEnd, false);
+            }
+            if (tag == null || !tag.opening()) {
+                break; // Reached the end of the parent
+            }
+            if (tag.selfClosing() || VOID_ELEMENTS.contains(tag.name())) {
+                position = tag.end();
+            } else {
+                int close = findClose(html, tag.name(), tag.end());
+                Tag closeTag = close != -1 ? Tag.at(html, close) : null;
+                position = closeTag != null ? closeTag.end() : html.length();
+            }
+        }
+        throw new IllegalStateException("Institution page is missing its address");
+    }
+
+    /**
+     * @return the index of the start of the closing tag matching an element opened before {@code from},
+     *         or -1 if there is none
+     */
+    private static int findClose(CharSequence html, String name, int from) {
+        int depth = 0;
+        for (Tag tag = Tag.next(html, from, html.length()); tag != null; tag = Tag.next(html, tag.end(), html.length())) {
+            if (!tag.name().equals(name) || tag.selfClosing()) {
+                continue;
+            }
+            if (tag.opening()) {
+                depth++;
+            } else if (depth == 0) {
+                return tag.start();
+            } else {
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the {@code n}th (0-based) child element between two positions, or null if there is none
+     */
+    private static Tag childElement(CharSequence html, int from, int to, int n) {
+        int depth = 0;
+        int index = 0;
+        for (Tag tag = Tag.next(html, from, to); tag != null; tag = Tag.next(html, tag.end(), to)) {
+            if (!tag.opening()) {
+                depth--;
+                continue;
+            }
+            if (depth == 0 && index++ == n) {
+                return tag;
+            }
+            if (!tag.selfClosing() && !VOID_ELEMENTS.contains(tag.name())) {
+                depth++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsElement(CharSequence html, int from, int to) {
+        for (Tag tag = Tag.next(html, from, to); tag != null; tag = Tag.next(html, tag.end(), to)) {
+            if (tag.opening()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Tag findByClass(CharSequence html, String className) {
+        for (int found = indexOf(html, className, 0); found != -1; found = indexOf(html, className, found + 1)) {
+            Tag tag = Tag.at(html, lastIndexOf(html, '<', found));
+            if (tag != null && tag.opening() && tag.end() > found && tag.hasClass(className)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether any text run between two positions contains {@code search} (case-insensitive)
+     */
+    private static boolean anyOwnTextContains(CharSequence html, int from, int to, String search) {
+        int position = from;
+        while (position < to) {
+            Tag tag = Tag.next(html, position, to);
+            int textEnd = tag != null ? tag.start() : to;
+            if (textEnd > position && text(html, position, textEnd, false).toLowerCase(Locale.ROOT).contains(search)) {
+                return true;
+            }
+            if (tag == null) {
+                break;
+            }
+            position = tag.end();
+        }
+        return false;
+    }
+
+    /**
+     * @return the start of the text run containing the first occurrence of {@code search} in text (rather than
+     *         markup) after {@code from}, or -1 if there is none
+     */
+    private static int indexOfText(CharSequence html, int from, String search) {
+        for (int found = indexOf(html, search, from); found != -1; found = indexOf(html, search, found + 1)) {
+            int previousTagEnd = lastIndexOf(html, '>', found);
+            if (previousTagEnd > lastIndexOf(html, '<', found)) {
+                return previousTagEnd + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfId(CharSequence html, String id) {
+        return indexOf(html, "id=\"" + id + "\"", 0);
+    }
+
+    /**
+     * Text content between two positions, with tags removed and entities decoded.
+     * Whitespace is normalised, and block elements separate words, as in Jsoup.
+     */
+    private static String text(CharSequence html, int from, int to, boolean trim) {
+        StringBuilder text = new StringBuilder(Math.max(to - from, 0));
+        int position = from;
+        while (position < to) {
+            Tag tag = Tag.next(html, position, to);
+            int textEnd = tag != null ? tag.start() : to;
+            text.append(html, position, textEnd);
+            if (tag == null) {
+                break;
+            }
+            if (BLOCK_ELEMENTS.contains(tag.name()) && (tag.opening() || tag.name().equals("br"))) {
+                text.append(' ');
+            }
+            position = tag.end();
+        }
+
+        String normalised = normaliseWhitespace(unescape(text.toString(), false));
+        return trim ? normalised.trim() : normalised;
+    }
+
+    /**
+     * Decode HTML entities. Jsoup's decoder sets up a tokeniser on every call, so
+     * it is only used when there is something other than {@code &amp;} to decode.
+     */
+    private static String unescape(String text, boolean inAttribute) {
+        if (text.indexOf('&') == -1) {
+            return text;
+        }
+        String ampersandsDecoded = text.replace("&amp;", "&");
+        if (ampersandsDecoded.indexOf('&') == -1) {
+            return ampersandsDecoded;
+        }
+        return Parser.unescapeEntities(text, inAttribute);
+    }
+
+    private static String normaliseWhitespace(String text) {
+        StringBuilder normalised = new StringBuilder(text.length());
+        boolean lastWasWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == ' ') {
+                if (!lastWasWhite) {
+                    normalised.append(' ');
+                }
+                lastWasWhite = true;
+            } else {
+                normalised.append(c);
+                lastWasWhite = false;
+            }
+        }
+        return normalised.toString();
+    }
+
+    private static String queryParam(String url, String name) {
+        int query = url.indexOf('?');
+        if (query == -1) {
+            return null;
+        }
+        int fragment = url.indexOf('#', query);
+        for (String param : url.substring(query + 1, fragment == -1 ? url.length() : fragment).split("&")) {
+            int equals = param.indexOf('=');
+            String paramName = equals == -1 ? param : param.substring(0, equals);
+            if (paramName.equals(name)) {
+                return equals == -1 ? "" : URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static String decode(RegistryResponse response) {
+        return new String(response.body(), charset(response));
+    }
+
+    /**
+     * The charset from the Content-Type header, or else from a {@code <meta charset>} or
+     * {@code <meta http-equiv="Content-Type">} tag near the start of the page.
+     */
+    private static Charset charset(RegistryResponse response) {
+        Charset charset = charsetParameter(response.header("Content-Type"));
+        if (charset != null) {
+            return charset;
+        }
+
+        // Meta tags are ASCII in any charset College Navigator might use, so any single byte charset will read them
+        byte[] body = response.body();
+        String head = new String(body, 0, Math.min(body.length, CHARSET_SNIFF_LIMIT), StandardCharsets.ISO_8859_1)
+                .toLowerCase(Locale.ROOT);
+        for (int meta = head.indexOf("<meta"); meta != -1; meta = head.indexOf("<meta", meta + 1)) {
+            int metaEnd = head.indexOf('>', meta);
+            charset = charsetParameter(metaEnd == -1 ? head.substring(meta) : head.substring(meta, metaEnd));
+            if (charset != null) {
+                return charset;
+            }
+        }
+
+        // College Navigator's usual encoding
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * @return the charset named by the first {@code charset=} in some text, or null if there is none or it
+     *         is not supported
+     */
+    private static Charset charsetParameter(String text) {
+        int charsetIndex = text != null ? text.toLowerCase(Locale.ROOT).indexOf("charset=") : -1;
+        if (charsetIndex == -1) {
+            return null;
+        }
+
+        int nameStart = charsetIndex + "charset=".length();
+        while (nameStart < text.length() && (text.charAt(nameStart) == '"' || text.charAt(nameStart) == '\'')) {
+            nameStart++;
+        }
+        int nameEnd = nameStart;
+        while (nameEnd < text.length() && "\"'; /".indexOf(text.charAt(nameEnd)) == -1) {
+            nameEnd++;
+        }
+        try {
+            return Charset.forName(text.substring(nameStart, nameEnd).trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(CharSequence html, String search, int from) {
+        return html.toString().indexOf(search, from);
+    }
+
+    private static int lastIndexOf(CharSequence html, char c, int from) {
+        for (int i = Math.min(from, html.length() - 1); i >= 0; i--) {
+            if (html.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A start or end tag in raw HTML.
+     *
+     * @param start     index of the opening {@code <}
+     * @param end       index just past the closing {@code >}
+     * @param name      lower case tag name
+     * @param opening   whether this is a start tag
+     */
+    private record Tag(CharSequence html, int start, int end, String name, boolean opening, boolean selfClosing) {
+
+        /**
+         * @return the next complete tag starting at or after {@code from} and ending before {@code to}, or null.
+         *         Comments and script or style contents are skipped.
+         */
+        static Tag next(CharSequence html, int from, int to) {
+            int position = from;
+            while (position < to) {
+                int open = indexOf(html, "<", position);
+                if (open == -1 || open >= to) {
+                    return null;
+                }
+                if (startsWith(html, open, "<!--")) {
+                    int commentEnd = indexOf(html, "-->", open + 4);
+                    if (commentEnd == -1) {
+                        return null;
+                    }
+                    position = commentEnd + 3;
+                    continue;
+                }
+                Tag tag = at(html, open);
+                if (tag == null) {
+                    position = open + 1; // A lone '<' in text
+                    continue;
+                }
+                if (tag.end() > to) {
+                    return null;
+                }
+                if (tag.opening() && !tag.selfClosing() && (tag.name().equals("script") || tag.name().equals("style"))) {
+                    int close = indexOf(html, "</" + tag.name(), tag.end());
+                    if (close == -1) {
+                        return null;
+                    }
+                    position = close;
+                    continue;
+                }
+                return tag;
+            }
+            return null;
+        }
+
+        /**
+         * @return the tag starting at {@code start}, or null if there is no complete tag there
+         */
+        static Tag at(CharSequence html, int start) {
+            if (start < 0 || start + 1 >= html.length() || html.charAt(start) != '<') {
+                return null;
+            }
+            boolean opening = html.charAt(start + 1) != '/';
+            int nameStart = opening ? start + 1 : start + 2;
+            int nameEnd = nameStart;
+            while (nameEnd < html.length() && (Character.isLetterOrDigit(html.charAt(nameEnd)))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart || nameEnd >= html.length()) {
+                return null;
+            }
+
+            // Find the end of the tag, ignoring '>' inside quoted attribute values
+            char quote = 0;
+            for (int i = nameEnd; i < html.length(); i++) {
+                char c = html.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    boolean selfClosing = html.charAt(i - 1) == '/';
+                    String name = html.subSequence(nameStart, nameEnd).toString().toLowerCase(Locale.ROOT);
+                    return new Tag(html, start, i + 1, name, opening, selfClosing);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the start tag enclosing {@code position}, which must be inside a tag or directly within
+         *         an element's content
+         */
+        static Tag enclosing(CharSequence html, int position) {
+            Tag tag = at(html, lastIndexOf(html, '<', position));
+            return tag != null && tag.opening() ? tag : null;
+        }
+
+        String attribute(String attributeName) {
+            int valueStart = attributeValueStart(attributeName);
+            if (valueStart == -1) {
+                return null;
+            }
+            return html.subSequence(valueStart, attributeValueEnd(valueStart)).toString();
+        }
+
+        boolean hasClass(String className) {
+            int valueStart = attributeValueStart("class");
+            if (valueStart == -1) {
+                return false;
+            }
+            int valueEnd = attributeValueEnd(valueStart);
+
+            // Compare whitespace-separated tokens in place to avoid allocating for every tag
+            int tokenStart = valueStart;
+            while (tokenStart < valueEnd) {
+                while (tokenStart < valueEnd && Character.isWhitespace(html.charAt(tokenStart))) {
+                    tokenStart++;
+                }
+                int tokenEnd = tokenStart;
+                while (tokenEnd < valueEnd && !Character.isWhitespace(html.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+                if (tokenEnd - tokenStart == className.length() && startsWith(html, tokenStart, className)) {
+                    return true;
+                }
+                tokenStart = tokenEnd;
+            }
+            return false;
+        }
+
+        /**
+         * @return index of the first character of an attribute's value, or -1 if the tag does not have it
+         */
+        private int attributeValueStart(String attributeName) {
+            int limit = end - attributeName.length() - 2;
+            for (int i = start + 1; i < limit; i++) {
+                if (Character.isWhitespace(html.charAt(i)) && startsWith(html, i + 1, attributeName)
+                        && html.charAt(i + 1 + attributeName.length()) == '=') {
+                    int valueStart = i + attributeName.length() + 2;
+                    char quote = html.charAt(valueStart);
+                    return quote == '"' || quote == '\'' ? valueStart + 1 : valueStart;
+                }
+            }
+            return -1;
+        }
+
+        private int attributeValueEnd(int valueStart) {
+            char quote = html.charAt(valueStart - 1);
+            int valueEnd = valueStart;
+            if (quote == '"' || quote == '\'') {
+                while (valueEnd < end && html.charAt(valueEnd) != quote) {
+                    valueEnd++;
+                }
+            } else {
+                while (valueEnd < end && !Character.isWhitespace(html.charAt(valueEnd)) && html.charAt(valueEnd) != '>') {
+                    valueEnd++;
+                }
+            }
+            return valueEnd;
+        }
+
+        private static boolean startsWith(CharSequence html, int position, String prefix) {
+            if (position + prefix.length() > html.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (html.charAt(position + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.aaejo.institutionfinder.finder.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+import org.springframework.retry.backoff.Sleeper;
+import org.springframework.retry.backoff.ThreadWaitSleeper;
+
+/**
+ * Exponential backoff with jitter for registry requests.
+ *
+ * Each delay is drawn from the upper half of the current exponential interval,
+ * so delays keep growing while retries from concurrent workers are spread out.
+ * If the registry sent a Retry-After header with the failure, that delay is
+ * used instead, up to a maximum. After backing off, waits for the circuit
+ * breaker (if any) to allow requests, as the breaker only checks before a
+ * request's first attempt.
+ *
+ * @author Omri Harary
+ */
+public class RegistryBackOffPolicy implements BackOffPolicy {
+
+    private final Duration initialInterval;
+    private final double multiplier;
+    private final Duration maxInterval;
+    private final Duration maxRetryAfter;
+    private final RegistryCircuitBreaker circuitBreaker;
+
+    private Sleeper sleeper = new ThreadWaitSleeper();
+
+    /**
+     * @param initialInterval   upper bound of the first delay
+     * @param multiplier        factor the upper bound grows by after each retry
+     * @param maxInterval       largest upper bound for delays
+     * @param maxRetryAfter     longest Retry-After delay to honour
+     * @param circuitBreaker    circuit breaker to wait on after backing off, or null
+     */
+    public RegistryBackOffPolicy(Duration initialInterval, double multiplier, Duration maxInterval,
+            Duration maxRetryAfter, RegistryCircuitBreaker circuitBreaker) {
+        this.initialInterval = initialInterval;
+        this.multiplier = multiplier;
+        this.maxInterval = maxInterval;
+        this.maxRetryAfter = maxRetryAfter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public void setSleeper(Sleeper sleeper) {
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public BackOffContext start(RetryContext context) {
+        return new RegistryBackOffContext(context);
+    }
+
+    @Override
+    public void backOff(BackOffContext backOffContext) throws BackOffInterruptedException {
+        RegistryBackOffContext context = (RegistryBackOffContext) backOffContext;
+        try {
+            sleeper.sleep(nextDelay(context).toMillis());
+            if (circuitBreaker != null) {
+                circuitBreaker.awaitPermission();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackOffInterruptedException("Interrupted while backing off from registry request", e);
+        }
+    }
+
+    private Duration nextDelay(RegistryBackOffContext context) {
+        Duration retryAfter = RegistryRetryPolicy.retryAfter(context.retryContext.getLastThrowable());
+        if (retryAfter != null) {
+            return retryAfter.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : retryAfter;
+        }
+
+        double ceiling = Math.min(
+                maxInterval.toMillis(),
+                initialInterval.toMillis() * Math.pow(multiplier, context.backOffs++));
+        return Duration.ofMillis((long) (ceiling / 2 + ThreadLocalRandom.current().nextDouble() * ceiling / 2));
+    }
+
+    private static class RegistryBackOffContext implements BackOffContext {
+
+        private final RetryContext retryContext;
+        private int backOffs = 0;
+
+        RegistryBackOffContext(RetryContext retryContext) {
+            this.retryContext = retryContext;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.aaejo.institutionfinder.finder.retry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pauses all registry requests while the registry appears to be unhealthy.
+ *
+ * After a number of consecutive transient failures the breaker opens, and every
+ * request waits until the open period has passed. A single probe request is then
+ * let through. If it succeeds the breaker closes and the crawl carries on,
+ * otherwise it opens again for twice as long, up to a maximum. A Retry-After
+ * delay longer than the open period is also honoured. A probe that hasn't
+ * reported back within the first open period is given up on, and the next
+ * request becomes the probe instead.
+ *
+ * Registered as a listener on the RetryTemplate used for registry requests, so
+ * each failed attempt is recorded. The listener only opens once per request,
+ * so it waits for permission before the first attempt, and
+ * {@link RegistryBackOffPolicy} waits for it again before each retry.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class RegistryCircuitBreaker implements RetryListener {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Duration maxOpenDuration;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private Duration currentOpenDuration;
+    private Instant openUntil = Instant.MIN;
+    private Instant probeStartedAt = Instant.MIN;
+
+    /**
+     * @param failureThreshold  consecutive transient failures that open the breaker
+     * @param openDuration      how long requests are paused the first time the breaker opens
+     * @param maxOpenDuration   longest requests are paused for at once
+     */
+    public RegistryCircuitBreaker(int failureThreshold, Duration openDuration, Duration maxOpenDuration) {
+        this(failureThreshold, openDuration, maxOpenDuration, Clock.systemUTC());
+    }
+
+    RegistryCircuitBreaker(int failureThreshold, Duration openDuration, Duration maxOpenDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.maxOpenDuration = maxOpenDuration;
+        this.clock = clock;
+        this.currentOpenDuration = openDuration;
+    }
+
+    @Override
+    public <T, E extends Throwable> boolean open(RetryContext context, RetryCallback<T, E> callback) {
+        try {
+            awaitPermission();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false; // Aborts the request
+        }
+    }
+
+    @Override
+    public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback,
+            Throwable throwable) {
+        if (RegistryRetryPolicy.isTransient(throwable)) {
+            recordFailure(RegistryRetryPolicy.retryAfter(throwable));
+        } else {
+            // The registry responded, there was just something wrong with the request or page
+            recordSuccess();
+        }
+    }
+
+    @Override
+    public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback,
+            Throwable throwable) {
+        if (throwable == null) {
+            recordSuccess();
+        }
+    }
+
+    /**
+     * Block until requests to the registry are allowed. When the open period has
+     * passed, the first caller is let through as a probe, and the rest wait for its result.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitPermission() throws InterruptedException {
+        while (state != State.CLOSED) {
+            if (state == State.HALF_OPEN) {
+                // Until the probe has completed, or for so long it likely never will
+                Duration remaining = Duration.between(clock.instant(), probeStartedAt.plus(openDuration));
+                if (remaining.isNegative() || remaining.isZero()) {
+                    log.warn("Registry probe did not complete within {}, probing again", openDuration);
+                    state = State.OPEN;
+                    openUntil = clock.instant();
+                    continue;
+                }
+                wait(Math.max(1L, remaining.toMillis()));
+                continue;
+            }
+
+            Duration remaining = Duration.between(clock.instant(), openUntil);
+            if (remaining.isNegative() || remaining.isZero()) {
+                log.info("Probing registry after pausing requests");
+                state = State.HALF_OPEN;
+                probeStartedAt = clock.instant();
+                return;
+            }
+            wait(Math.max(1L, remaining.toMillis()));
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Registry is responding again, resuming requests");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        currentOpenDuration = openDuration;
+        notifyAll();
+    }
+
+    synchronized void recordFailure(Duration retryAfter) {
+        consecutiveFailures++;
+
+        if (state == State.HALF_OPEN) {
+            Duration doubled = currentOpenDuration.multipliedBy(2);
+            currentOpenDuration = doubled.compareTo(maxOpenDuration) > 0 ? maxOpenDuration : doubled;
+        } else if (state == State.OPEN || consecutiveFailures < failureThreshold) {
+            return;
+        }
+
+        Duration pause = currentOpenDuration;
+        if (retryAfter != null && retryAfter.compareTo(pause) > 0) {
+            pause = retryAfter.compareTo(maxOpenDuration) > 0 ? maxOpenDuration : retryAfter;
+        }
+
+        log.warn("Registry unhealthy after {} consecutive failures, pausing requests for {}",
+                consecutiveFailures, pause);
+        state = State.OPEN;
+        openUntil = clock.instant().plus(pause);
+        notifyAll();
+    }
+}
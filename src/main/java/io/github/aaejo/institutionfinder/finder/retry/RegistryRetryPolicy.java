@@ -0,0 +1,66 @@
+package io.github.aaejo.institutionfinder.finder.retry;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.jsoup.HttpStatusException;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+
+import io.github.aaejo.institutionfinder.finder.registry.RegistryCacheMissException;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryStatusException;
+
+/**
+ * Retry policy for registry requests that only retries failures which may be
+ * transient: I/O errors, request timeouts, rate limiting and server errors.
+ * Other client errors, offline cache misses and page parsing errors fail
+ * immediately.
+ *
+ * @author Omri Harary
+ */
+public class RegistryRetryPolicy extends SimpleRetryPolicy {
+
+    public RegistryRetryPolicy(int maxAttempts) {
+        super(maxAttempts);
+    }
+
+    @Override
+    public boolean canRetry(RetryContext context) {
+        Throwable lastThrowable = context.getLastThrowable();
+        return super.canRetry(context) && (lastThrowable == null || isTransient(lastThrowable));
+    }
+
+    /**
+     * @param t a failure from a registry request, possibly wrapped
+     * @return  whether the failure indicates the registry is unavailable or overloaded, rather than a problem
+     *          with the request or its response
+     */
+    public static boolean isTransient(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RegistryCacheMissException) {
+                return false;
+            }
+            if (cause instanceof HttpStatusException statusException) {
+                int status = statusException.getStatusCode();
+                return status == 408 || status == 429 || status >= 500;
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param t a failure from a registry request, possibly wrapped
+     * @return  the delay requested by the registry with the failure, or null if there was none
+     */
+    public static Duration retryAfter(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RegistryStatusException statusException) {
+                return statusException.getRetryAfter();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.aaejo.institutionfinder.finder.watch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.springframework.context.SmartLifecycle;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches institution data files for changes, so that curators' edits are
+ * picked up without a manual run.
+ *
+ * Editors often write a file in several steps, so changes are only acted on
+ * once a file has been quiet for the debounce period. Each watched file's
+ * callback is then run once on the watcher's thread, so runs for the same file
+ * never overlap.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class DataFileWatcher implements SmartLifecycle {
+
+    private final Duration debounce;
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    private volatile WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * @param debounce  how long files must go unchanged before their callbacks run
+     */
+    public DataFileWatcher(Duration debounce) {
+        this.debounce = debounce;
+    }
+
+    /**
+     * Run a callback whenever a data file changes. Must be called before the watcher starts.
+     *
+     * @param path      data file, or directory whose matching files are watched
+     * @param fileNames matches names of files in a watched directory, ignored if {@code path} is a file
+     * @param onChange  callback to run after changes
+     */
+    public void watch(Path path, Predicate<String> fileNames, Runnable onChange) {
+        Path absolutePath = path.toAbsolutePath();
+        if (Files.isDirectory(absolutePath)) {
+            registrations.add(new Registration(absolutePath, fileNames, onChange));
+        } else {
+            String fileName = absolutePath.getFileName().toString();
+            registrations.add(new Registration(absolutePath.getParent(), fileName::equals, onChange));
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path directory : registrations.stream().map(Registration::directory).distinct().toList()) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                log.info("Watching {} for institution data file changes", directory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to watch institution data files", e);
+        }
+
+        watchThread = new Thread(this::watchLoop, "data-file-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Failed to close data file watch service", e);
+        }
+        watchThread.interrupt();
+        watchService = null;
+        watchThread = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return watchService != null;
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Registration> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                // Keep collecting changes until the files have been quiet for the debounce period
+                while (key != null) {
+                    collectChanges(key, changed);
+                    key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+                }
+
+                for (Registration registration : changed) {
+                    log.info("Institution data changed in {}, producing changes", registration.directory());
+                    try {
+                        registration.onChange().run();
+                    } catch (RuntimeException e) {
+                        log.error("Failed to produce changed institutions from {}", registration.directory(), e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stopped watching institution data files");
+        }
+    }
+
+    private void collectChanges(WatchKey key, Set<Registration> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so anything in the directory may have changed
+                registrations.stream().filter(r -> r.directory().equals(directory)).forEach(changed::add);
+                continue;
+            }
+
+            String fileName = ((Path) event.context()).getFileName().toString();
+            registrations.stream()
+                    .filter(r -> r.directory().equals(directory) && r.fileNames().test(fileName))
+                    .forEach(changed::add);
+        }
+        key.reset();
+    }
+
+    private record Registration(Path directory, Predicate<String> fileNames, Runnable onChange) {
+    }
+}
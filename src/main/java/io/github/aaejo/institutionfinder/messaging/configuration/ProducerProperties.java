@@ -0,0 +1,56 @@
+package io.github.aaejo.institutionfinder.messaging.configuration;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param maxInFlight   maximum number of sent institutions still waiting for the broker to
+ *                      acknowledge them, after which sending blocks. 0 for no limit.
+ * @param topic         settings for creating the institutions topic
+ * @param spool         settings for spooling sends to disk while the broker is unavailable
+ *
+ * @author Omri Harary
+ */
+@ConfigurationProperties(prefix = "aaejo.jds.institution-finder.producer")
+public record ProducerProperties(@DefaultValue("1000") int maxInFlight, @DefaultValue Topic topic,
+        @DefaultValue Spool spool) {
+
+    /**
+     * Settings for creating the institutions topic. These only apply when the
+     * topic does not exist yet.
+     *
+     * @param partitions    number of partitions
+     * @param replicas      replication factor, the broker's default if not set
+     * @param compact       whether the topic is compacted, keeping only the latest message per institution
+     * @param retention     how long messages are kept. When compacted, setting this also deletes
+     *                      institutions not sent again within the period.
+     */
+    public record Topic(@DefaultValue("6") int partitions, Optional<Integer> replicas,
+            @DefaultValue("true") boolean compact, Optional<Duration> retention) {
+
+        public static final Topic DEFAULTS = new Topic(6, Optional.empty(), true, Optional.empty());
+    }
+
+    /**
+     * Settings for spooling sends to disk while the broker is unavailable.
+     * While spooling is enabled, failed sends and sends over the in-flight
+     * limit are written to the spool instead of being dropped or blocking, and
+     * replayed in order once the broker acknowledges sends again.
+     *
+     * @param enabled       whether sends are spooled
+     * @param file          spool file location
+     * @param batchSize     number of spooled sends replayed at a time
+     * @param drainInterval how often to try replaying spooled sends
+     * @param ackTimeout    how long to wait for the broker to acknowledge a replayed batch
+     */
+    public record Spool(@DefaultValue("false") boolean enabled, @DefaultValue("send-spool.ndjson") String file,
+            @DefaultValue("500") int batchSize, @DefaultValue("10s") Duration drainInterval,
+            @DefaultValue("30s") Duration ackTimeout) {
+
+        public static final Spool DEFAULTS = new Spool(false, "send-spool.ndjson", 500, Duration.ofSeconds(10),
+                Duration.ofSeconds(30));
+    }
+}
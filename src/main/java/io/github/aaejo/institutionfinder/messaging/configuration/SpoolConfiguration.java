@@ -0,0 +1,35 @@
+package io.github.aaejo.institutionfinder.messaging.configuration;
+
+import java.nio.file.Paths;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.spool.SendSpool;
+import io.github.aaejo.institutionfinder.messaging.spool.SpoolDrainer;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * @author Omri Harary
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "aaejo.jds.institution-finder.producer.spool", name = "enabled", havingValue = "true")
+public class SpoolConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public SendSpool sendSpool(ProducerProperties properties, ObjectMapper objectMapper, MeterRegistry registry) {
+        return new SendSpool(Paths.get(properties.spool().file()), objectMapper, registry);
+    }
+
+    @Bean
+    public SpoolDrainer spoolDrainer(SendSpool sendSpool, InstitutionsProducer institutionsProducer,
+            ProducerProperties properties) {
+        ProducerProperties.Spool spool = properties.spool();
+        return new SpoolDrainer(sendSpool, institutionsProducer, spool.batchSize(), spool.drainInterval(),
+                spool.ackTimeout());
+    }
+}
@@ -1,6 +1,8 @@
 package io.github.aaejo.institutionfinder.messaging.configuration;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -9,12 +11,27 @@ import org.springframework.kafka.config.TopicBuilder;
  * @author Omri Harary
  */
 @Configuration
+@EnableConfigurationProperties(ProducerProperties.class)
 public class TopicConfiguration {
 
     @Bean
-    public NewTopic institutionsTopic() {
-        return TopicBuilder
+    public NewTopic institutionsTopic(ProducerProperties properties) {
+        ProducerProperties.Topic topic = properties.topic();
+        TopicBuilder builder = TopicBuilder
                 .name("institutions")
-                .build();
+                .partitions(topic.partitions());
+        topic.replicas().ifPresent(builder::replicas);
+
+        if (topic.compact()) {
+            builder.config(TopicConfig.CLEANUP_POLICY_CONFIG, topic.retention().isPresent()
+                    ? TopicConfig.CLEANUP_POLICY_COMPACT + "," + TopicConfig.CLEANUP_POLICY_DELETE
+                    : TopicConfig.CLEANUP_POLICY_COMPACT);
+        } else {
+            builder.config(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_DELETE);
+        }
+        topic.retention().ifPresent(retention -> builder.config(TopicConfig.RETENTION_MS_CONFIG,
+                Long.toString(retention.toMillis())));
+
+        return builder.build();
     }
 }
@@ -0,0 +1,57 @@
+package io.github.aaejo.institutionfinder.messaging.producer;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Message keys for institutions, so that every version of an institution
+ * (and its tombstone) lands on the same partition and compacts together.
+ *
+ * Keys are the source country followed by either the institution's source ID,
+ * where the source has stable IDs, or its normalized name.
+ *
+ * @author Omri Harary
+ */
+public final class InstitutionKeys {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private InstitutionKeys() {
+    }
+
+    /**
+     * @param country   country the institution was found for
+     * @param name      the institution's name
+     * @return          key for the institution, the same for any spelling differing only in case,
+     *                  accents, punctuation or spacing
+     */
+    public static String byName(String country, String name) {
+        return normalize(country) + ":" + normalize(name);
+    }
+
+    /**
+     * @param country   country the institution was found for
+     * @param sourceId  the institution's ID in the source it was found in
+     * @return          key for the institution
+     */
+    public static String bySourceId(String country, String sourceId) {
+        return normalize(country) + ":" + sourceId.trim();
+    }
+
+    /**
+     * @param key   a key made by this class
+     * @return      the normalized country in the key, or "unknown" if it has none
+     */
+    public static String country(String key) {
+        int separator = key.indexOf(':');
+        return separator > 0 ? key.substring(0, separator) : "unknown";
+    }
+
+    private static String normalize(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD);
+        String unaccented = MARKS.matcher(decomposed).replaceAll("");
+        return SEPARATORS.matcher(unaccented.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+}
@@ -1,15 +1,44 @@
 package io.github.aaejo.institutionfinder.messaging.producer;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.kafka.common.errors.InterruptException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
+import io.github.aaejo.institutionfinder.messaging.configuration.ProducerProperties;
+import io.github.aaejo.institutionfinder.messaging.spool.SendSpool;
 import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
+ * Sends institutions to the institutions topic.
+ *
+ * The number of sends waiting for the broker to acknowledge them is limited,
+ * so that a slow or unavailable broker blocks the finders instead of letting
+ * unsent institutions pile up in memory.
+ *
+ * With a {@link SendSpool}, failed sends and sends over the limit are written
+ * to the spool instead. Once anything is spooled, every later send is spooled
+ * too until the spool has been replayed, so that sends for the same
+ * institution stay in order. A send spooled while an earlier send with the
+ * same key is still in flight is only written once that one completes, so the
+ * earlier send stays ahead of it if it fails and is spooled too.
+ *
  * @author Omri Harary
  */
 @Slf4j
@@ -19,20 +48,216 @@ public class InstitutionsProducer {
     private static final String TOPIC = "institutions";
 
     private final KafkaTemplate<String, Institution> template;
+    private final Semaphore inFlightPermits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer waitTimer;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> ackTimers = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<SendOutcome>> unfinishedByKey = new ConcurrentHashMap<>();
 
-    public InstitutionsProducer(KafkaTemplate<String, Institution> template) {
+    private SendSpool spool;
+
+    public InstitutionsProducer(KafkaTemplate<String, Institution> template, ProducerProperties properties,
+            MeterRegistry registry) {
         this.template = template;
+        this.inFlightPermits = properties.maxInFlight() > 0 ? new Semaphore(properties.maxInFlight()) : null;
+
+        Gauge.builder("jds.institution-finder.producer.in-flight", inFlight, AtomicInteger::get)
+                .description("Sends waiting for the broker to acknowledge them")
+                .register(registry);
+        this.waitTimer = Timer.builder("jds.institution-finder.producer.wait")
+                .description("Time spent waiting for the number of sends in flight to drop below the limit")
+                .register(registry);
+        this.registry = registry;
     }
 
-    public void send(final Institution institution) {
-        CompletableFuture<SendResult<String, Institution>> sendResultFuture = this.template.send(TOPIC, institution);
-        sendResultFuture.whenComplete((result, ex) -> {
-            if (ex == null) {
-                log.debug("Sent: {}", institution.toString());
+    /**
+     * Spool sends that fail or are over the in-flight limit, instead of
+     * dropping or blocking them.
+     *
+     * @param spool spool to write to, or null to not spool sends
+     */
+    @Autowired(required = false)
+    public void setSpool(SendSpool spool) {
+        this.spool = spool;
+    }
+
+    /**
+     * Send an institution.
+     *
+     * @param key           message key identifying the institution, from {@link InstitutionKeys}
+     * @param institution   institution to send
+     * @return              outcome of the send, once the broker has acknowledged or failed it
+     */
+    public CompletableFuture<SendOutcome> send(final String key, final Institution institution) {
+        return produce(key, institution);
+    }
+
+    /**
+     * Send a tombstone for an institution that no longer exists in its source.
+     *
+     * @param key   message key the institution was sent with
+     * @return      outcome of the send, once the broker has acknowledged or failed it
+     */
+    public CompletableFuture<SendOutcome> sendTombstone(final String key) {
+        return produce(key, null);
+    }
+
+    /**
+     * Send any sends the producer is holding back for batching right away.
+     */
+    public void flush() {
+        this.template.flush();
+    }
+
+    /**
+     * Replay the oldest spooled sends, removing them from the spool once the
+     * broker has acknowledged all of them.
+     *
+     * @param batchSize     maximum number of sends to replay
+     * @param ackTimeout    how long to wait for the broker to acknowledge them
+     * @return              whether the sends were acknowledged
+     */
+    public boolean replaySpooled(int batchSize, Duration ackTimeout) {
+        SendSpool.Batch batch = spool.peek(batchSize);
+        List<CompletableFuture<SendResult<String, Institution>>> sendResultFutures = batch.sends().stream()
+                .map(spooled -> this.template.send(TOPIC, spooled.key(), spooled.institution()))
+                .toList();
+
+        try {
+            CompletableFuture.allOf(sendResultFutures.toArray(CompletableFuture[]::new))
+                    .get(ackTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Broker did not acknowledge {} spooled sends, will retry later", batch.sends().size(), e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        spool.remove(batch);
+        log.debug("Replayed {} spooled sends, {} remaining", batch.sends().size(), spool.pending());
+        return true;
+    }
+
+    private CompletableFuture<SendOutcome> produce(final String key, final Institution institution) {
+        String description = institution != null ? institution.toString() : "tombstone " + key;
+
+        if (spool != null && (spool.hasPending() || !tryAcquirePermit())) {
+            CompletableFuture<SendOutcome> unfinished = unfinishedByKey.get(key);
+            if (unfinished != null) {
+                log.debug("Spooling once the send before it completes: {}", description);
+                return latestUntilDone(key,
+                        unfinished.handle((outcome, ex) -> spoolFromCallback(key, institution, description)));
             }
-            else {
-                log.error("Failed to send: {}", institution.toString(), ex);
+            log.debug("Spooling: {}", description);
+            spool.append(key, institution);
+            return CompletableFuture.completedFuture(SendOutcome.SPOOLED);
+        }
+        if (spool == null) {
+            acquirePermit();
+        }
+        inFlight.incrementAndGet();
+
+        CompletableFuture<SendResult<String, Institution>> sendResultFuture;
+        long start = System.nanoTime();
+        try {
+            sendResultFuture = this.template.send(TOPIC, key, institution);
+        } catch (RuntimeException e) {
+            releasePermit();
+            throw e;
+        }
+        CompletableFuture<SendOutcome> sendOutcome = sendResultFuture.handle((result, ex) -> {
+            ackTimer(key).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            releasePermit();
+            if (ex == null) {
+                log.debug("Sent: {} ({})", description, key);
+                return SendOutcome.ACKNOWLEDGED;
+            } else if (spool != null) {
+                log.warn("Failed to send, spooling: {}", description, ex);
+                return spoolFromCallback(key, institution, description);
+            } else {
+                log.error("Failed to send: {}", description, ex);
+                return SendOutcome.FAILED;
             }
         });
+        return spool != null ? latestUntilDone(key, sendOutcome) : sendOutcome;
+    }
+
+    /**
+     * Keep a send as the latest one for its key until it completes, so sends
+     * spooled after it wait for it.
+     */
+    private CompletableFuture<SendOutcome> latestUntilDone(String key,
+            CompletableFuture<SendOutcome> sendOutcome) {
+        unfinishedByKey.put(key, sendOutcome);
+        sendOutcome.whenComplete((outcome, ex) -> unfinishedByKey.remove(key, sendOutcome));
+        return sendOutcome;
+    }
+
+    /**
+     * Spool a send from a completion callback, where there is no caller to throw to.
+     */
+    private SendOutcome spoolFromCallback(String key, Institution institution, String description) {
+        try {
+            spool.append(key, institution);
+            return SendOutcome.SPOOLED;
+        } catch (RuntimeException spoolEx) {
+            log.error("Failed to spool: {}", description, spoolEx);
+            return SendOutcome.FAILED;
+        }
+    }
+
+    /**
+     * Only the country can be told from a message key, so unlike the registry
+     * meters send-to-ack latency is not tagged by state.
+     *
+     * @param key   message key of a send
+     * @return      timer for the time from a send to its acknowledgement or failure
+     */
+    private Timer ackTimer(String key) {
+        return ackTimers.computeIfAbsent(InstitutionKeys.country(key), country -> Timer
+                .builder("jds.institution-finder.producer.ack")
+                .description("Time from sending to the broker acknowledging or failing the send")
+                .tag("country", country)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry));
+    }
+
+    private boolean tryAcquirePermit() {
+        return inFlightPermits == null || inFlightPermits.tryAcquire();
+    }
+
+    /**
+     * Wait for room for another send in flight.
+     *
+     * @throws InterruptException   if interrupted while waiting, with the thread's interrupt status set
+     */
+    private void acquirePermit() {
+        if (inFlightPermits == null) {
+            return;
+        }
+        if (inFlightPermits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        log.debug("Maximum sends in flight reached, waiting for the broker");
+        long start = System.nanoTime();
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptException(e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void releasePermit() {
+        inFlight.decrementAndGet();
+        if (inFlightPermits != null) {
+            inFlightPermits.release();
+        }
     }
 }
@@ -0,0 +1,16 @@
+package io.github.aaejo.institutionfinder.messaging.producer;
+
+/**
+ * What became of a send.
+ *
+ * @author Omri Harary
+ */
+public enum SendOutcome {
+
+    /** The broker acknowledged the send. */
+    ACKNOWLEDGED,
+    /** The send was written to the spool, to be replayed later. */
+    SPOOLED,
+    /** The send failed and was not spooled. */
+    FAILED
+}
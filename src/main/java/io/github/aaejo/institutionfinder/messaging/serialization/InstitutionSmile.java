@@ -0,0 +1,46 @@
+package io.github.aaejo.institutionfinder.messaging.serialization;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import io.github.aaejo.messaging.records.Institution;
+
+/**
+ * Compact binary encoding of institutions, shared by the serializer and
+ * deserializer.
+ *
+ * Institutions are written as Smile (binary JSON) arrays of their fields, in
+ * the order name, country, address, website, so no field names are sent at
+ * all. New fields may only be added at the end.
+ *
+ * @author Omri Harary
+ */
+final class InstitutionSmile {
+
+    static final ObjectMapper MAPPER = new ObjectMapper(SmileFactory.builder()
+            // Institutions rarely repeat a value, so back-references would only cost lookups
+            .disable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build())
+            .addMixIn(Institution.class, PositionalInstitution.class);
+
+    private InstitutionSmile() {
+    }
+
+    /**
+     * @param data  serialized message value
+     * @return      whether the value starts with the Smile header
+     */
+    static boolean isSmile(byte[] data) {
+        return data.length >= 3 && data[0] == SmileConstants.HEADER_BYTE_1 && data[1] == SmileConstants.HEADER_BYTE_2
+                && data[2] == SmileConstants.HEADER_BYTE_3;
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    @JsonPropertyOrder({ "name", "country", "address", "website" })
+    private interface PositionalInstitution {
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.aaejo.institutionfinder.messaging.serialization;
+
+import java.io.IOException;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import io.github.aaejo.messaging.records.Institution;
+
+/**
+ * Kafka deserializer for institutions written by
+ * {@link SmileInstitutionSerializer}. Values that are not Smile are read as
+ * JSON, so consumers can switch to it before producers change encoding.
+ *
+ * @author Omri Harary
+ */
+public class SmileInstitutionDeserializer implements Deserializer<Institution> {
+
+    private static final ObjectReader SMILE_READER = InstitutionSmile.MAPPER.readerFor(Institution.class);
+    private static final ObjectReader JSON_READER = new ObjectMapper()
+            .readerFor(Institution.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @Override
+    public Institution deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            return InstitutionSmile.isSmile(data) ? SMILE_READER.readValue(data) : JSON_READER.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Can't deserialize institution from topic " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package io.github.aaejo.institutionfinder.messaging.spool;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only file of sends that could not be made to the broker, to be
+ * replayed once it is available again.
+ *
+ * Each send is one line of JSON. Replayed sends are not removed from the file
+ * one by one. Instead, the offset of the first send not yet replayed is saved
+ * next to it, and the file is emptied once everything in it has been replayed.
+ * Appends are not forced to disk, so sends survive the process stopping but
+ * not the machine failing.
+ *
+ * A line cut short by the process stopping mid-append is dropped when the
+ * spool is opened. A line that can't be read is moved to a {@code .rejected}
+ * file next to the spool and skipped, so it doesn't hold up the sends after it.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class SendSpool implements AutoCloseable {
+
+    private final Path file;
+    private final Path offsetFile;
+    private final Path rejectedFile;
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+
+    private final AtomicLong pending = new AtomicLong();
+    private long offset;
+
+    /**
+     * @param file          spool file location
+     * @param objectMapper  mapper used to write and read spooled sends
+     * @param registry      registry for the spooled sends gauge
+     */
+    public SendSpool(Path file, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.file = file;
+        this.offsetFile = file.resolveSibling(file.getFileName() + ".offset");
+        this.rejectedFile = file.resolveSibling(file.getFileName() + ".rejected");
+        this.objectMapper = objectMapper;
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            truncatePartialLine();
+            if (Files.exists(offsetFile)) {
+                offset = Long.parseLong(Files.readString(offsetFile).trim());
+            }
+            if (offset > channel.size()) {
+                log.warn("Send spool offset {} is past the end of {}, replaying it from the start", offset, file);
+                offset = 0;
+            }
+            pending.set(countLines(offset));
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Unable to open send spool at " + file, e);
+        }
+
+        Gauge.builder("jds.institution-finder.producer.spooled", pending, AtomicLong::get)
+                .description("Sends waiting in the spool to be replayed")
+                .register(registry);
+
+        if (pending.get() > 0) {
+            log.info("Send spool at {} has {} sends from a previous run to replay", file, pending.get());
+        }
+    }
+
+    /**
+     * @return  whether there are spooled sends not yet replayed
+     */
+    public boolean hasPending() {
+        return pending.get() > 0;
+    }
+
+    /**
+     * @return  number of spooled sends not yet replayed
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    /**
+     * Add a send to the end of the spool.
+     *
+     * @param key           message key
+     * @param institution   institution to send, or null for a tombstone
+     */
+    public synchronized void append(String key, Institution institution) {
+        try {
+            byte[] line = objectMapper.writeValueAsBytes(new SpooledSend(key, institution));
+            ByteBuffer buffer = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n').flip();
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            pending.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to send spool at " + file, e);
+        }
+    }
+
+    /**
+     * Read the oldest spooled sends without removing them. Lines that can't be
+     * read are moved to the rejected file and skipped.
+     *
+     * @param max   maximum number of sends to read
+     * @return      the sends, in the order they were spooled
+     */
+    public synchronized Batch peek(int max) {
+        List<SpooledSend> sends = new ArrayList<>();
+        int rejected = 0;
+        long end = offset;
+        try (InputStream in = openAt(offset)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while (sends.size() < max && (b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                end += line.size() + 1;
+                try {
+                    sends.add(objectMapper.readValue(line.toByteArray(), SpooledSend.class));
+                } catch (JsonProcessingException e) {
+                    log.error("Unreadable send at offset {} of spool {}, moving it to {}",
+                            end - line.size() - 1, file, rejectedFile, e);
+                    reject(line.toByteArray());
+                    rejected++;
+                }
+                line.reset();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read send spool at " + file, e);
+        }
+        return new Batch(sends, rejected, end);
+    }
+
+    /**
+     * Remove sends that have been replayed, emptying the spool once all have been.
+     *
+     * @param batch sends returned by {@link #peek(int)} that the broker has acknowledged
+     */
+    public synchronized void remove(Batch batch) {
+        try {
+            offset = batch.end();
+            pending.addAndGet(-(batch.sends().size() + batch.rejected()));
+            if (offset >= channel.size()) {
+                channel.truncate(0);
+                offset = 0;
+                Files.deleteIfExists(offsetFile);
+                log.info("Send spool at {} fully replayed", file);
+                return;
+            }
+
+            Path tempFile = Files.createTempFile(offsetFile.toAbsolutePath().getParent(),
+                    offsetFile.getFileName().toString(), ".tmp");
+            Files.writeString(tempFile, Long.toString(offset), StandardCharsets.UTF_8);
+            Files.move(tempFile, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Losing the offset only means replaying some sends again
+            log.error("Failed to save send spool offset to {}", offsetFile, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Drop the last line if it was cut short, as it has no line break.
+     */
+    private void truncatePartialLine() throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) != -1) {
+                // Read until the buffer is full
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    end = start + i + 1;
+                    if (end < size) {
+                        log.warn("Dropping {} bytes of a send cut short at the end of spool {}", size - end, file);
+                        channel.truncate(end);
+                    }
+                    return;
+                }
+            }
+            end = start;
+        }
+
+        if (size > 0) {
+            log.warn("Dropping {} bytes of a send cut short at the end of spool {}", size, file);
+            channel.truncate(0);
+        }
+    }
+
+    private void reject(byte[] line) {
+        try {
+            byte[] withBreak = Arrays.copyOf(line, line.length + 1);
+            withBreak[line.length] = '\n';
+            Files.write(rejectedFile, withBreak, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Failed to save unreadable send to {}, dropping it", rejectedFile, e);
+        }
+    }
+
+    private InputStream openAt(long position) throws IOException {
+        // A separate channel, as closing a stream over a channel closes the channel
+        return new BufferedInputStream(Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ)
+                .position(position)));
+    }
+
+    private long countLines(long from) throws IOException {
+        long lines = 0;
+        try (InputStream in = openAt(from)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * A spooled send.
+     *
+     * @param key           message key
+     * @param institution   institution to send, or null for a tombstone
+     */
+    public record SpooledSend(String key, Institution institution) {
+    }
+
+    /**
+     * Sends read from the spool.
+     *
+     * @param sends     sends, in the order they were spooled
+     * @param rejected  number of unreadable lines skipped among them
+     * @param end       offset just past the last send
+     */
+    public record Batch(List<SpooledSend> sends, int rejected, long end) {
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.aaejo.institutionfinder.messaging.spool;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Periodically replays spooled sends in batches, for as long as the broker
+ * keeps acknowledging them.
+ *
+ * @author Omri Harary
+ */
+@Slf4j
+public class SpoolDrainer implements SmartLifecycle {
+
+    private final SendSpool spool;
+    private final InstitutionsProducer producer;
+    private final int batchSize;
+    private final Duration interval;
+    private final Duration ackTimeout;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param spool         spool to drain
+     * @param producer      producer replaying spooled sends
+     * @param batchSize     number of sends replayed at a time
+     * @param interval      time between attempts while the broker is unavailable
+     * @param ackTimeout    how long to wait for the broker to acknowledge a batch
+     */
+    public SpoolDrainer(SendSpool spool, InstitutionsProducer producer, int batchSize, Duration interval,
+            Duration ackTimeout) {
+        this.spool = spool;
+        this.producer = producer;
+        this.batchSize = batchSize;
+        this.interval = interval;
+        this.ackTimeout = ackTimeout;
+    }
+
+    /**
+     * Replay spooled sends until the spool is empty or the broker stops acknowledging them.
+     */
+    public void drain() {
+        if (!spool.hasPending()) {
+            return;
+        }
+
+        log.info("Replaying {} spooled sends", spool.pending());
+        while (spool.hasPending() && !Thread.currentThread().isInterrupted()) {
+            if (!producer.replaySpooled(batchSize, ackTimeout)) {
+                log.info("Broker unavailable, {} sends still spooled", spool.pending());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("spool-drainer-"));
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                log.error("Unexpected failure replaying spooled sends", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+}
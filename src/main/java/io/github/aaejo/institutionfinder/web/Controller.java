@@ -1,10 +1,19 @@
 package io.github.aaejo.institutionfinder.web;
 
+import java.net.URI;
+
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import io.github.aaejo.institutionfinder.finder.InstitutionFinder;
+import io.github.aaejo.institutionfinder.finder.RunManager;
+import io.github.aaejo.institutionfinder.finder.RunManager.RunStatus;
+import io.github.aaejo.institutionfinder.finder.RunManager.State;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -15,15 +24,43 @@ import lombok.extern.slf4j.Slf4j;
 @Profile("default")
 public class Controller {
 
-    private final InstitutionFinder institutionFinder;
+    private final RunManager runManager;
 
-    public Controller(InstitutionFinder institutionFinder) {
-        this.institutionFinder = institutionFinder;
+    public Controller(RunManager runManager) {
+        this.runManager = runManager;
     }
 
+    /**
+     * Start producing institutions, unless a run is already in progress.
+     *
+     * @return  202 with the new run, 200 with the run already in progress, or 503 if the run could
+     *          not be started, such as when the finder executor is full
+     */
     @PostMapping("/start")
-    public void startFinding() {
+    public ResponseEntity<RunStatus> startFinding() {
         log.info("Received request to begin producing institutions.");
-        institutionFinder.produceInstitutions();
+        RunManager.Start start = runManager.start();
+        if (!start.started()) {
+            return ResponseEntity.ok(start.run());
+        }
+        if (start.run().state() == State.FAILED) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(start.run());
+        }
+        return ResponseEntity.accepted().location(URI.create("/runs/" + start.run().id())).body(start.run());
+    }
+
+    @GetMapping("/runs/{id}")
+    public ResponseEntity<RunStatus> getRun(@PathVariable String id) {
+        return ResponseEntity.of(runManager.status(id));
+    }
+
+    /**
+     * Cancel a run. It stops at the next results page or record, once sends
+     * already made have been acknowledged.
+     */
+    @DeleteMapping("/runs/{id}")
+    public ResponseEntity<RunStatus> cancelRun(@PathVariable String id) {
+        log.info("Received request to cancel run {}.", id);
+        return ResponseEntity.of(runManager.cancel(id));
     }
 }
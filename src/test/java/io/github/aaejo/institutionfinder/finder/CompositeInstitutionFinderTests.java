@@ -0,0 +1,74 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class CompositeInstitutionFinderTests {
+
+    @Test
+    void produceInstitutions_multipleCountries_runConcurrently() {
+        // Each finder waits for the other to start, so this only completes if they run at the same time
+        CountDownLatch started = new CountDownLatch(2);
+        InstitutionFinder waitingFinder = run -> {
+            started.countDown();
+            try {
+                assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return CompletableFuture.completedFuture(summary("TEST", true, 1));
+        };
+        CompositeInstitutionFinder finder = new CompositeInstitutionFinder(Map.of(
+                "CANADA", waitingFinder,
+                "USA", waitingFinder));
+
+        finder.produceInstitutions().join();
+
+        assertThat(started.getCount()).isZero();
+    }
+
+    @Test
+    void produceInstitutions_multipleCountries_summariesCombined() {
+        CompositeInstitutionFinder finder = new CompositeInstitutionFinder(Map.of(
+                "CANADA", run -> CompletableFuture.completedFuture(summary("CANADA", true, 3)),
+                "USA", run -> CompletableFuture.completedFuture(summary("USA", true, 4))));
+
+        RunSummary summary = finder.produceInstitutions().join();
+
+        assertThat(summary.complete()).isTrue();
+        assertThat(summary.emitted()).isEqualTo(7);
+        assertThat(summary.phases()).containsEntry("produce", Duration.ofSeconds(4));
+    }
+
+    @Test
+    void produceInstitutions_oneCountryFails_otherCountriesStillProduced() {
+        AtomicBoolean otherProduced = new AtomicBoolean();
+        CompositeInstitutionFinder finder = new CompositeInstitutionFinder(Map.of(
+                "CANADA", run -> {
+                    throw new IllegalStateException("Bad data file");
+                },
+                "USA", run -> {
+                    otherProduced.set(true);
+                    return CompletableFuture.completedFuture(summary("USA", true, 1));
+                }));
+
+        RunSummary summary = finder.produceInstitutions().join();
+
+        assertThat(otherProduced).isTrue();
+        assertThat(summary.complete()).isFalse();
+        assertThat(summary.emitted()).isEqualTo(1);
+    }
+
+    private static RunSummary summary(String country, boolean complete, long emitted) {
+        return new RunSummary(country, complete, emitted, 0, 0, 0, 0, 0,
+                Map.of("produce", Duration.ofSeconds(emitted)));
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.LoggerFactory;
+import org.springframework.retry.support.RetryTemplate;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.Crawl;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.HtmlParser;
+import io.github.aaejo.institutionfinder.finder.registry.CollegeNavigatorStandIn;
+import io.github.aaejo.institutionfinder.finder.registry.HttpClientRegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.JsoupRegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryBackOffPolicy;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryRetryPolicy;
+import io.github.aaejo.institutionfinder.messaging.configuration.ProducerProperties;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs a full USA crawl against a local College Navigator stand-in and reports
+ * throughput and fetch latency.
+ *
+ * Not part of the regular test run. Run with
+ * {@code ./mvnw test -Dtest=CrawlBenchmark -Dbenchmark=true}, optionally adding
+ * any of the following to change the registry or crawl settings:
+ * <ul>
+ * <li>{@code -Dbenchmark.pages=3} results pages per state</li>
+ * <li>{@code -Dbenchmark.schools=15} schools per results page</li>
+ * <li>{@code -Dbenchmark.latency-ms=20} delay before every response</li>
+ * <li>{@code -Dbenchmark.error-rate=0.0} share of requests failing with a 503</li>
+ * <li>{@code -Dbenchmark.client=HTTP_CLIENT} JSOUP or HTTP_CLIENT</li>
+ * <li>{@code -Dbenchmark.parser=STREAMING} JSOUP or STREAMING</li>
+ * <li>{@code -Dbenchmark.state-concurrency=4}</li>
+ * <li>{@code -Dbenchmark.detail-concurrency=4}</li>
+ * <li>{@code -Dbenchmark.prefetch=true}</li>
+ * </ul>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class CrawlBenchmark {
+
+    @BeforeAll
+    static void quietLogging() {
+        // Per-request debug logging would otherwise dominate the measurements
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    @Test
+    void produceInstitutions() throws IOException {
+        CollegeNavigatorStandIn.Settings registrySettings = new CollegeNavigatorStandIn.Settings(
+                Integer.getInteger("benchmark.pages", 3),
+                Integer.getInteger("benchmark.schools", 15),
+                Duration.ofMillis(Long.getLong("benchmark.latency-ms", 20L)),
+                Double.parseDouble(System.getProperty("benchmark.error-rate", "0.0")));
+        Crawl crawl = new Crawl(
+                Integer.getInteger("benchmark.state-concurrency", 4),
+                Integer.getInteger("benchmark.detail-concurrency", 4),
+                HtmlParser.valueOf(System.getProperty("benchmark.parser", "STREAMING")),
+                Boolean.parseBoolean(System.getProperty("benchmark.prefetch", "true")));
+        String client = System.getProperty("benchmark.client", "HTTP_CLIENT");
+
+        try (CollegeNavigatorStandIn standIn = new CollegeNavigatorStandIn(registrySettings)) {
+            RegistryFetcher fetcher = client.equals("JSOUP")
+                    ? new JsoupRegistryFetcher(Jsoup.connect(standIn.url().toString()))
+                    : new HttpClientRegistryFetcher(standIn.url(), Duration.ofSeconds(10), Duration.ofSeconds(30), true);
+            ConcurrentLinkedQueue<Long> fetchNanos = new ConcurrentLinkedQueue<>();
+            RegistryFetcher timedFetcher = (params, headers) -> {
+                long start = System.nanoTime();
+                try {
+                    return fetcher.fetch(params, headers);
+                } finally {
+                    fetchNanos.add(System.nanoTime() - start);
+                }
+            };
+
+            LongAdder sent = new LongAdder();
+            ProducerProperties producerProperties = new ProducerProperties(0, ProducerProperties.Topic.DEFAULTS,
+                    ProducerProperties.Spool.DEFAULTS);
+            InstitutionsProducer countingProducer = new InstitutionsProducer(null, producerProperties,
+                    new SimpleMeterRegistry()) {
+                @Override
+                public CompletableFuture<SendOutcome> send(String key, Institution institution) {
+                    sent.increment();
+                    return CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED);
+                }
+
+                @Override
+                public void flush() {
+                }
+            };
+
+            RetryTemplate retryTemplate = RetryTemplate.builder()
+                    .customPolicy(new RegistryRetryPolicy(3))
+                    .customBackoff(new RegistryBackOffPolicy(Duration.ofMillis(10), 2.0, Duration.ofMillis(100),
+                            Duration.ofSeconds(1), null))
+                    .build();
+            USAInstitutionFinder finder = new USAInstitutionFinder(countingProducer, timedFetcher, retryTemplate,
+                    new SimpleMeterRegistry(), crawl);
+
+            long start = System.nanoTime();
+            finder.produceInstitutions();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long pages = standIn.resultsRequests() + standIn.detailRequests();
+            long[] latencies = fetchNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%s, %s, %s%n", registrySettings, crawl, client);
+            System.out.printf("%d institutions of %d in %.2f s%n", sent.sum(), standIn.institutionCount(), seconds);
+            System.out.printf("%10.1f pages/sec (%d results, %d details, %d errors)%n",
+                    pages / seconds, standIn.resultsRequests(), standIn.detailRequests(), standIn.errors());
+            System.out.printf("%10.1f institutions/sec%n", sent.sum() / seconds);
+            System.out.printf("%10.1f ms p50 fetch latency%n", percentile(latencies, 0.50) / 1e6);
+            System.out.printf("%10.1f ms p99 fetch latency%n", percentile(latencies, 0.99) / 1e6);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+}
@@ -1,19 +1,37 @@
 package io.github.aaejo.institutionfinder.finder;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdOutputStream;
 
+import io.github.aaejo.institutionfinder.finder.delta.InstitutionDelta;
 import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
 import io.github.aaejo.messaging.records.Institution;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
@@ -25,6 +43,14 @@ public class JsonInstitutionFinderTests {
     private final JsonInstitutionFinder jsonInstitutionFinder = new JsonInstitutionFinder("Canada",
             institutionsProducer, objectMapper, Optional.empty(), registry);
 
+    @BeforeEach
+    void acknowledgeSends() {
+        when(institutionsProducer.send(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED));
+        when(institutionsProducer.sendTombstone(anyString()))
+                .thenReturn(CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED));
+    }
+
     @Test
     void produceInstitutionsJson_notJsonList_illegalStateException() {
         String json = """
@@ -58,7 +84,7 @@ public class JsonInstitutionFinderTests {
 
         jsonInstitutionFinder.produceInstitutionsJson(jsonStream);
 
-        verify(institutionsProducer).send(expected);
+        verify(institutionsProducer).send("canada:acadia university", expected);
     }
 
     @Test
@@ -103,8 +129,123 @@ public class JsonInstitutionFinderTests {
 
         jsonInstitutionFinder.produceInstitutionsJson(jsonStream);
 
-        verify(institutionsProducer).send(expected1);
-        verify(institutionsProducer).send(expected2);
-        verify(institutionsProducer).send(expected3);
+        verify(institutionsProducer).send("canada:acadia university", expected1);
+        verify(institutionsProducer).send("canada:university of ottawa", expected2);
+        verify(institutionsProducer).send("canada:brandon university", expected3);
+        assertThat(registry.get("jds.institution-finder.data-file.parse").tag("format", "json").timer().count())
+                .isEqualTo(3);
+    }
+
+    /**
+     * In delta mode, a later run only sends changed institutions and tombstones removed ones.
+     */
+    @Test
+    void produceInstitutions_deltaMode_onlyChangesSent(@TempDir Path tempDir) throws IOException {
+        Path dataFile = tempDir.resolve("canada.json");
+        JsonInstitutionFinder deltaFinder = new JsonInstitutionFinder("Canada", institutionsProducer, objectMapper,
+                Optional.of(dataFile.toString()), registry);
+        deltaFinder.setDelta(new InstitutionDelta(tempDir.resolve("fingerprints.json"), objectMapper), true);
+        Institution acadia = new Institution(
+                "Acadia University",
+                "Canada",
+                "15 University Ave, Wolfville, NS, B4P 2R6",
+                "https://philosophy.acadiau.ca/facstaff.html");
+        Institution ottawa = new Institution(
+                "University of Ottawa",
+                "Canada",
+                "75 Laurier Ave E, Ottawa, ON, K1N 6N5",
+                "https://www.uottawa.ca/faculty-arts/philosophy");
+        Institution brandon = new Institution(
+                "Brandon University",
+                "Canada",
+                "270 18th St, Brandon, MB, R7A 6A9",
+                "https://www.brandonu.ca/philosophy/faculty/");
+        Institution movedOttawa = new Institution(
+                "University of Ottawa",
+                "Canada",
+                "55 Laurier Ave E, Ottawa, ON, K1N 6N5",
+                "https://www.uottawa.ca/faculty-arts/philosophy");
+
+        objectMapper.writeValue(dataFile.toFile(), List.of(acadia, ottawa, brandon));
+        deltaFinder.produceInstitutions();
+        objectMapper.writeValue(dataFile.toFile(), List.of(acadia, movedOttawa));
+        RunSummary summary = deltaFinder.produceInstitutions().join();
+
+        verify(institutionsProducer, times(1)).send("canada:acadia university", acadia);
+        verify(institutionsProducer, times(1)).send("canada:university of ottawa", ottawa);
+        verify(institutionsProducer, times(1)).send("canada:university of ottawa", movedOttawa);
+        verify(institutionsProducer).sendTombstone("canada:brandon university");
+        assertThat(summary.complete()).isTrue();
+        assertThat(summary.emitted()).isEqualTo(2);
+        assertThat(summary.skipped()).isEqualTo(1);
+        assertThat(summary.bytesRead()).isEqualTo(Files.size(dataFile));
+    }
+
+    @Test
+    void produceInstitutions_runCancelled_nothingSentAndIncomplete(@TempDir Path tempDir) throws IOException {
+        Path dataFile = tempDir.resolve("canada.json");
+        JsonInstitutionFinder cancelledFinder = new JsonInstitutionFinder("Canada", institutionsProducer,
+                objectMapper, Optional.of(dataFile.toString()), registry);
+        Institution acadia = new Institution(
+                "Acadia University",
+                "Canada",
+                "15 University Ave, Wolfville, NS, B4P 2R6",
+                "https://philosophy.acadiau.ca/facstaff.html");
+        objectMapper.writeValue(dataFile.toFile(), List.of(acadia));
+        RunRecorder run = new RunRecorder("all");
+        run.cancel();
+
+        RunSummary summary = cancelledFinder.produceInstitutions(run).join();
+
+        verify(institutionsProducer, never()).send(anyString(), any(Institution.class));
+        assertThat(summary.complete()).isFalse();
+    }
+
+    @Test
+    void produceInstitutions_gzipNdjsonInDirectory_institutionsSent(@TempDir Path tempDir) throws IOException {
+        JsonInstitutionFinder ndjsonFinder = new JsonInstitutionFinder("Canada", institutionsProducer, objectMapper,
+                Optional.of(tempDir.toString()), registry);
+        Institution acadia = new Institution(
+                "Acadia University",
+                "Canada",
+                "15 University Ave, Wolfville, NS, B4P 2R6",
+                "https://philosophy.acadiau.ca/facstaff.html");
+        Institution ottawa = new Institution(
+                "University of Ottawa",
+                "Canada",
+                "75 Laurier Ave E, Ottawa, ON, K1N 6N5",
+                "https://www.uottawa.ca/faculty-arts/philosophy");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tempDir.resolve("canada.ndjson.gz")))) {
+            out.write((objectMapper.writeValueAsString(acadia) + "\n" + objectMapper.writeValueAsString(ottawa) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        ndjsonFinder.produceInstitutions();
+
+        verify(institutionsProducer).send("canada:acadia university", acadia);
+        verify(institutionsProducer).send("canada:university of ottawa", ottawa);
+    }
+
+    @Test
+    void produceInstitutions_zstdCsv_institutionsSent(@TempDir Path tempDir) throws IOException {
+        Path dataFile = tempDir.resolve("export.csv.zst");
+        JsonInstitutionFinder csvFinder = new JsonInstitutionFinder("Canada", institutionsProducer, objectMapper,
+                Optional.of(dataFile.toString()), registry);
+        String csv = """
+                name,country,address,website,province
+                Acadia University,Canada,"15 University Ave, Wolfville, NS, B4P 2R6",https://philosophy.acadiau.ca/facstaff.html,NS
+                """;
+        try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(dataFile))) {
+            out.write(csv.getBytes(StandardCharsets.UTF_8));
+        }
+        Institution expected = new Institution(
+                "Acadia University",
+                "Canada",
+                "15 University Ave, Wolfville, NS, B4P 2R6",
+                "https://philosophy.acadiau.ca/facstaff.html");
+
+        csvFinder.produceInstitutions();
+
+        verify(institutionsProducer).send("canada:acadia university", expected);
     }
 }
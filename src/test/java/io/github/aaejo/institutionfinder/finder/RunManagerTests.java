@@ -0,0 +1,167 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.institutionfinder.finder.RunManager.RunStatus;
+import io.github.aaejo.institutionfinder.finder.RunManager.State;
+import io.github.aaejo.institutionfinder.finder.delta.InstitutionDelta;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RunManagerTests {
+
+    @Test
+    void start_runInProgress_existingRunReturned() {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runsStarted = new AtomicInteger();
+        RunManager runManager = new RunManager(run -> {
+            runsStarted.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> {
+                await(release);
+                return summary(true);
+            });
+        }, Runnable::run);
+
+        RunManager.Start first = runManager.start();
+        RunManager.Start second = runManager.start();
+        release.countDown();
+
+        assertThat(first.started()).isTrue();
+        assertThat(second.started()).isFalse();
+        assertThat(second.run().id()).isEqualTo(first.run().id());
+        assertThat(runsStarted).hasValue(1);
+    }
+
+    @Test
+    void start_previousRunFinished_newRunStarted() {
+        RunManager runManager = new RunManager(run -> CompletableFuture.completedFuture(summary(true)), Runnable::run);
+
+        RunManager.Start first = runManager.start();
+        RunManager.Start second = runManager.start();
+
+        assertThat(second.started()).isTrue();
+        assertThat(second.run().id()).isNotEqualTo(first.run().id());
+        assertThat(runManager.status(first.run().id())).get()
+                .extracting(RunStatus::state).isEqualTo(State.COMPLETE);
+    }
+
+    @Test
+    void cancel_runInProgress_finderStopsAndRunCancelled() throws InterruptedException {
+        RunManager runManager = new RunManager(run -> CompletableFuture.supplyAsync(() -> {
+            RunRecorder countryRun = run.child("canada");
+            while (!countryRun.isCancelled()) {
+                countryRun.skipped();
+                Thread.onSpinWait();
+            }
+            return summary(false);
+        }), Runnable::run);
+
+        String id = runManager.start().run().id();
+        RunStatus progress = runManager.status(id).orElseThrow();
+        RunStatus cancelling = runManager.cancel(id).orElseThrow();
+
+        assertThat(progress.state()).isEqualTo(State.RUNNING);
+        assertThat(cancelling.state()).isIn(State.CANCELLING, State.CANCELLED);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (runManager.status(id).orElseThrow().finishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(runManager.status(id)).get().extracting(RunStatus::state).isEqualTo(State.CANCELLED);
+    }
+
+    /**
+     * A watched file changing mid-run queues a second run rather than overlapping
+     * the first, which would otherwise tombstone institutions the first run has
+     * not reached yet. Like every run, the queued one is started on the executor
+     * rather than the thread that finished the first.
+     */
+    @Test
+    void startOrQueue_runInProgress_queuedUntilFinishedAndNoTombstones(@TempDir Path tempDir) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        InstitutionsProducer institutionsProducer = mock(InstitutionsProducer.class);
+        Path dataFile = tempDir.resolve("canada.json");
+        JsonInstitutionFinder jsonFinder = new JsonInstitutionFinder("Canada", institutionsProducer, objectMapper,
+                Optional.of(dataFile.toString()), new SimpleMeterRegistry());
+        jsonFinder.setDelta(new InstitutionDelta(tempDir.resolve("fingerprints.json"), objectMapper), true);
+        Institution acadia = new Institution("Acadia University", "Canada", "Wolfville, NS", "https://acadiau.ca");
+        Institution ottawa = new Institution("University of Ottawa", "Canada", "Ottawa, ON", "https://uottawa.ca");
+        objectMapper.writeValue(dataFile.toFile(), List.of(acadia, ottawa));
+
+        CountDownLatch firstSend = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sendThreads = new CopyOnWriteArrayList<>();
+        when(institutionsProducer.send(anyString(), any())).thenAnswer(invocation -> {
+            sendThreads.add(Thread.currentThread().getName());
+            firstSend.countDown();
+            await(release);
+            return CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED);
+        });
+        ExecutorService executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("run-"));
+        try {
+            RunManager runManager = new RunManager(jsonFinder, executor);
+
+            runManager.start();
+            assertThat(firstSend.await(5, TimeUnit.SECONDS)).isTrue();
+            boolean watcherStarted = runManager.startOrQueue(jsonFinder);
+            boolean queuedAgain = runManager.startOrQueue(jsonFinder);
+            release.countDown();
+
+            assertThat(watcherStarted).isFalse();
+            assertThat(queuedAgain).isFalse();
+            verify(institutionsProducer, timeout(5000).times(2)).send(anyString(), any());
+            verify(institutionsProducer, never()).sendTombstone(anyString());
+            assertThat(sendThreads).allMatch(name -> name.startsWith("run-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void status_unknownRun_empty() {
+        RunManager runManager = new RunManager(run -> CompletableFuture.completedFuture(summary(true)), Runnable::run);
+
+        assertThat(runManager.status("unknown")).isEmpty();
+        assertThat(runManager.cancel("unknown")).isEmpty();
+    }
+
+    private static RunSummary summary(boolean complete) {
+        return new RunSummary("canada", complete, 1, 0, 0, 0, 0, 0, Map.of("produce", Duration.ofMillis(1)));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
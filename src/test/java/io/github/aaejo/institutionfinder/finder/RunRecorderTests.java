@@ -0,0 +1,98 @@
+package io.github.aaejo.institutionfinder.finder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+
+public class RunRecorderTests {
+
+    private final InstitutionsProducer institutionsProducer = mock(InstitutionsProducer.class);
+
+    /**
+     * Finishing waits for sends the broker hasn't acknowledged yet, and counts
+     * each send by how it turned out.
+     */
+    @Test
+    void finish_pendingSends_waitsAndCountsOutcomes() {
+        RunRecorder run = new RunRecorder("canada");
+        CompletableFuture<SendOutcome> delayed = new CompletableFuture<>();
+        run.track(CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED));
+        run.track(CompletableFuture.completedFuture(SendOutcome.SPOOLED));
+        run.track(CompletableFuture.completedFuture(SendOutcome.FAILED));
+        run.track(CompletableFuture.failedFuture(new IllegalStateException("Broker unavailable")));
+        run.track(delayed);
+        delayed.completeAsync(() -> SendOutcome.ACKNOWLEDGED, CompletableFuture.delayedExecutor(200,
+                TimeUnit.MILLISECONDS));
+
+        RunSummary summary = run.finish(true, institutionsProducer);
+
+        verify(institutionsProducer).flush();
+        assertThat(delayed).isDone();
+        assertThat(summary.complete()).isTrue();
+        assertThat(summary.emitted()).isEqualTo(2);
+        assertThat(summary.spooled()).isEqualTo(1);
+        assertThat(summary.failed()).isEqualTo(2);
+        assertThat(summary.phases()).containsKeys("produce", "acknowledge");
+    }
+
+    /**
+     * Sends made after the rest were already awaited, such as tombstones, are
+     * waited for as their own phase, without adding to the earlier ones.
+     */
+    @Test
+    void finish_afterAwaitSends_laterSendsRecordedAsOwnPhase() {
+        RunRecorder run = new RunRecorder("canada");
+        run.track(CompletableFuture.supplyAsync(() -> SendOutcome.ACKNOWLEDGED,
+                CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)));
+        run.awaitSends(institutionsProducer);
+        Map<String, Duration> awaited = run.progress().phases();
+        run.track(CompletableFuture.supplyAsync(() -> SendOutcome.ACKNOWLEDGED,
+                CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)));
+
+        RunSummary summary = run.finish(true, institutionsProducer, "delta");
+
+        assertThat(summary.phases().get("produce")).isEqualTo(awaited.get("produce"));
+        assertThat(summary.phases().get("acknowledge")).isEqualTo(awaited.get("acknowledge"));
+        assertThat(summary.phases().get("delta")).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+        assertThat(summary.emitted()).isEqualTo(2);
+        assertThat(summary.complete()).isTrue();
+    }
+
+    /**
+     * Work recorded alongside the back to back phases adds up across pieces.
+     */
+    @Test
+    void recordPhase_severalPieces_summed() {
+        RunRecorder run = new RunRecorder("usa");
+
+        run.recordPhase("fetch", TimeUnit.MILLISECONDS.toNanos(30));
+        run.recordPhase("fetch", TimeUnit.MILLISECONDS.toNanos(20));
+        RunSummary summary = run.finish(true, institutionsProducer);
+
+        assertThat(summary.phases().get("fetch")).hasMillis(50);
+    }
+
+    /**
+     * A cancelled run is never complete, even if everything it read was sent.
+     */
+    @Test
+    void finish_cancelled_incomplete() {
+        RunRecorder run = new RunRecorder("usa");
+        RunRecorder child = run.child("canada");
+
+        run.cancel();
+
+        assertThat(child.isCancelled()).isTrue();
+        assertThat(child.finish(true, institutionsProducer).complete()).isFalse();
+    }
+}
@@ -1,25 +1,62 @@
 package io.github.aaejo.institutionfinder.finder;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.retry.support.RetryTemplate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.aaejo.institutionfinder.finder.checkpoint.CrawlCheckpoint;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.Crawl;
+import io.github.aaejo.institutionfinder.finder.configuration.InstitutionFinderProperties.HtmlParser;
+import io.github.aaejo.institutionfinder.finder.dedup.SchoolIdIndex;
+import io.github.aaejo.institutionfinder.finder.delta.InstitutionDelta;
+import io.github.aaejo.institutionfinder.finder.registry.CollegeNavigatorStandIn;
+import io.github.aaejo.institutionfinder.finder.registry.HttpClientRegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryFetcher;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryResponse;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryBackOffPolicy;
+import io.github.aaejo.institutionfinder.finder.retry.RegistryRetryPolicy;
 import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
 import io.github.aaejo.messaging.records.Institution;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
@@ -35,6 +72,23 @@ public class USAInstitutionFinderTests {
     private final USAInstitutionFinder usaFinder = new USAInstitutionFinder(institutionsProducer, connection,
             retryTemplate, registry);
 
+    @BeforeEach
+    void acknowledgeSends() {
+        when(institutionsProducer.send(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED));
+        when(institutionsProducer.sendTombstone(anyString()))
+                .thenReturn(CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED));
+    }
+
+    /**
+     * Stubs whose return value fetches the live page are left unfinished when
+     * the fetch fails, which would otherwise carry over to the next test class.
+     */
+    @AfterEach
+    void finishStubbing() {
+        validateMockitoUsage();
+    }
+
     /**
      * Successful case of fetching institution details.
      */
@@ -76,10 +130,11 @@ public class USAInstitutionFinderTests {
     void getInstitutionDetails_failToGetPageFirstTime_succeedsAfterRetry() throws IOException {
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data(eq("id"), anyString())
-                .get())
+                .execute())
             .thenThrow(new IOException()) // Throw first time
-            .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?id=110635").get()); // Succeed second time
+            .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?id=110635").get())); // Succeed second time
         String schoolName = "University of California-Berkeley";
         String schoolId = "110635";
         Institution expected = new Institution(
@@ -106,7 +161,7 @@ public class USAInstitutionFinderTests {
 
         usaFinder.produceStateInstitutions("AS");
 
-        verify(institutionsProducer, never()).send(any(Institution.class));
+        verify(institutionsProducer, never()).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -119,7 +174,7 @@ public class USAInstitutionFinderTests {
 
         usaFinder.produceStateInstitutions("AL");
 
-        verify(institutionsProducer, times(9)).send(any(Institution.class));
+        verify(institutionsProducer, times(9)).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -133,23 +188,25 @@ public class USAInstitutionFinderTests {
         setupSchoolInfoMock();
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "AL")
                 .data("pg", "1")
-                .get())
+                .execute())
             .thenThrow(new IOException());
         // When the next page is probed (because limit is unknown), sucessfully load a page with no results
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "AL")
                 .data("pg", "2")
-                .get())
-            .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=AL&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=2").get());
+                .execute())
+            .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=AL&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=2").get()));
 
         usaFinder.produceStateInstitutions("AL");
 
-        verify(institutionsProducer, never()).send(any(Institution.class));
+        verify(institutionsProducer, never()).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -162,15 +219,16 @@ public class USAInstitutionFinderTests {
         setupSchoolInfoMock();
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data(eq("p"), eq(USAInstitutionFinder.PROGRAMS))
                 .data(eq("s"), eq("AL"))
                 .data(eq("pg"), anyString())
-                .get())
+                .execute())
             .thenThrow(new IOException());
 
         usaFinder.produceStateInstitutions("AL");
 
-        verify(institutionsProducer, never()).send(any(Institution.class));
+        verify(institutionsProducer, never()).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -184,13 +242,14 @@ public class USAInstitutionFinderTests {
         // One of the IDs will throw, rest will still work
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data(eq("id"), eq("100751"))
-                .get())
+                .execute())
             .thenThrow(new IOException());
 
         usaFinder.produceStateInstitutions("AL");
 
-        verify(institutionsProducer, times(8)).send(any(Institution.class));
+        verify(institutionsProducer, times(8)).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -203,7 +262,7 @@ public class USAInstitutionFinderTests {
 
         usaFinder.produceStateInstitutions("NY");
 
-        verify(institutionsProducer, times(77)).send(any(Institution.class));
+        verify(institutionsProducer, times(77)).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -218,15 +277,16 @@ public class USAInstitutionFinderTests {
         // 1st page of 6 will fail to load, representing 15 results
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "1")
-                .get())
+                .execute())
             .thenThrow(new IOException());
 
         usaFinder.produceStateInstitutions("NY");
 
-        verify(institutionsProducer, times(62)).send(any(Institution.class));
+        verify(institutionsProducer, times(62)).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -241,15 +301,16 @@ public class USAInstitutionFinderTests {
         // 2nd page of 6 will fail to load, representing 15 results
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "2")
-                .get())
+                .execute())
             .thenThrow(new IOException());
 
         usaFinder.produceStateInstitutions("NY");
 
-        verify(institutionsProducer, times(62)).send(any(Institution.class));
+        verify(institutionsProducer, times(62)).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -263,22 +324,24 @@ public class USAInstitutionFinderTests {
         setupNYMock();
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "3")
-                .get())
+                .execute())
             .thenThrow(new IOException());
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "4")
-                .get())
+                .execute())
             .thenThrow(new IOException());
 
         usaFinder.produceStateInstitutions("NY");
 
-        verify(institutionsProducer, times(30)).send(any(Institution.class));
+        verify(institutionsProducer, times(30)).send(anyString(), any(Institution.class));
     }
 
     /**
@@ -292,23 +355,25 @@ public class USAInstitutionFinderTests {
         setupNYMock();
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "6")
-                .get())
+                .execute())
             .thenThrow(new IOException());
 
         usaFinder.produceStateInstitutions("NY");
 
-        verify(institutionsProducer, times(75)).send(any(Institution.class));
+        verify(institutionsProducer, times(75)).send(anyString(), any(Institution.class));
         // Page 7 was never probed because it's known not to exist (weird formatting because of how deep stubbing works)
         verify(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "7"),
             never())
-                .get();
+                .execute();
     }
 
     /**
@@ -321,16 +386,358 @@ public class USAInstitutionFinderTests {
         setupNYMock();
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "NY")
                 .data("pg", "5")
-                .get())
+                .execute())
             .thenThrow(new IOException())
-            .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=NY&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=5").get());
+            .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=NY&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=5").get()));
 
         usaFinder.produceStateInstitutions("NY");
 
-        verify(institutionsProducer, times(77)).send(any(Institution.class));
+        verify(institutionsProducer, times(77)).send(anyString(), any(Institution.class));
+    }
+
+    /**
+     * Pages loaded through a RegistryFetcher and read by the streaming parser are processed
+     * the same way as Jsoup Documents.
+     */
+    @Test
+    void produceStateInstitutions_registryFetcherWithStreamingParser_sucessfulProcessing() throws IOException {
+        Map<String, String> fixtures = Map.of(
+                "AL", "results-single-page.html",
+                "AS", "results-empty.html");
+        RegistryFetcher fixtureFetcher = (params, headers) -> fixture(
+                params.containsKey("id") ? "details.html" : fixtures.get(params.get("s")));
+        USAInstitutionFinder streamingFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 1, HtmlParser.STREAMING, false));
+        Institution expected = new Institution(
+                "The University of Alabama",
+                "USA",
+                "200 California Hall, Berkeley, California 94720",
+                "https://www.berkeley.edu/");
+
+        streamingFinder.produceStateInstitutions("AS");
+        streamingFinder.produceStateInstitutions("AL");
+
+        verify(institutionsProducer, times(9)).send(anyString(), any(Institution.class));
+        verify(institutionsProducer).send(anyString(), eq(expected));
+    }
+
+    /**
+     * A crawl resumed part way through a state doesn't list the schools on the
+     * pages it skips, so it must not take them as removed and tombstone them.
+     */
+    @Test
+    void produceInstitutions_resumedPastFirstPageWithDelta_noTombstones(@TempDir Path tempDir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path checkpointFile = tempDir.resolve("checkpoint.json");
+        RegistryFetcher fixtureFetcher = (params, headers) -> fixture(params.containsKey("id") ? "details.html"
+                : params.get("s").equals("AL") && params.get("pg").equals("1") ? "results-single-page.html"
+                : "results-empty.html");
+        USAInstitutionFinder deltaFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 1, HtmlParser.STREAMING, false));
+        deltaFinder.setDelta(new InstitutionDelta(tempDir.resolve("fingerprints.json"), objectMapper), true);
+        deltaFinder.setCheckpoint(new CrawlCheckpoint(checkpointFile, objectMapper, true));
+
+        deltaFinder.produceInstitutions();
+        Files.writeString(checkpointFile, """
+                {"completedStates": [], "nextPages": {"AL": 2}, "emittedIds": []}
+                """);
+        RunSummary resumed = deltaFinder.produceInstitutions().join();
+
+        verify(institutionsProducer, times(9)).send(anyString(), any(Institution.class));
+        verify(institutionsProducer, never()).sendTombstone(anyString());
+        assertThat(resumed.complete()).isFalse();
+    }
+
+    /**
+     * A school is only checkpointed as sent once its send succeeds, so one that
+     * failed is sent again by a resumed crawl.
+     */
+    @Test
+    void produceStateInstitutions_checkpointWithFailedSend_onlySentSchoolsCheckpointed(@TempDir Path tempDir)
+            throws IOException {
+        when(institutionsProducer.send(eq("usa:100751"), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendOutcome.FAILED));
+        RegistryFetcher fixtureFetcher = (params, headers) -> fixture(
+                params.containsKey("id") ? "details.html" : "results-single-page.html");
+        USAInstitutionFinder checkpointFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 1, HtmlParser.STREAMING, false));
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(tempDir.resolve("checkpoint.json"), new ObjectMapper(), true);
+        checkpointFinder.setCheckpoint(checkpoint);
+        checkpoint.begin();
+
+        checkpointFinder.produceStateInstitutions("AL");
+
+        assertThat(checkpoint.isStateComplete("AL")).isTrue();
+        assertThat(checkpoint.isEmitted("100751")).isFalse();
+        assertThat(checkpoint.isEmitted("100663")).isTrue();
+    }
+
+    /**
+     * Pages are only checkpointed once their sends are done, so a crawl
+     * interrupted while the broker has yet to acknowledge them resumes from
+     * the first page with a send outstanding.
+     */
+    @Test
+    void produceStateInstitutions_checkpointWithUnacknowledgedSend_pageNotCheckpointed(@TempDir Path tempDir)
+            throws Exception {
+        CompletableFuture<SendOutcome> unacknowledged = new CompletableFuture<>();
+        when(institutionsProducer.send(eq("usa:190000"), any())).thenReturn(unacknowledged);
+        List<String> requestedPages = Collections.synchronizedList(new ArrayList<>());
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                return fixture("details.html");
+            }
+            requestedPages.add(params.get("pg"));
+            // Page 1 reports 6 pages in total, the last page is shorter
+            return fixture(params.get("pg").equals("6") ? "results-single-page.html" : "results-multi-page.html");
+        };
+        USAInstitutionFinder checkpointFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 1, HtmlParser.STREAMING, false));
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(tempDir.resolve("checkpoint.json"), new ObjectMapper(), true);
+        checkpointFinder.setCheckpoint(checkpoint);
+        checkpoint.begin();
+
+        CompletableFuture<Void> crawl = CompletableFuture.runAsync(
+                () -> checkpointFinder.produceStateInstitutions("NY"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!requestedPages.contains("6") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(requestedPages).contains("6");
+        assertThat(checkpoint.startPage("NY")).isEqualTo(1);
+        assertThat(checkpoint.isEmitted("190000")).isFalse();
+        assertThat(checkpoint.isEmitted("190037")).isTrue();
+        assertThat(crawl).isNotDone();
+
+        unacknowledged.complete(SendOutcome.ACKNOWLEDGED);
+        crawl.get(5, TimeUnit.SECONDS);
+
+        assertThat(checkpoint.isStateComplete("NY")).isTrue();
+        assertThat(checkpoint.isEmitted("190000")).isTrue();
+    }
+
+    /**
+     * With prefetching, every results page is still loaded exactly once and all
+     * institutions across the pages are produced.
+     */
+    @Test
+    void produceStateInstitutions_prefetchResults_eachPageLoadedOnce() throws IOException {
+        List<String> requestedPages = Collections.synchronizedList(new ArrayList<>());
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                return fixture("details.html");
+            }
+            requestedPages.add(params.get("pg"));
+            // Page 1 reports 6 pages in total, the last page is shorter
+            return fixture(params.get("pg").equals("6") ? "results-single-page.html" : "results-multi-page.html");
+        };
+        USAInstitutionFinder prefetchingFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 1, HtmlParser.STREAMING, true));
+
+        prefetchingFinder.produceStateInstitutions("NY");
+
+        verify(institutionsProducer, times(5 * 15 + 9)).send(anyString(), any(Institution.class));
+        assertThat(requestedPages).containsExactly("1", "2", "3", "4", "5", "6");
+    }
+
+    /**
+     * A school listed again, here by crawling the same state twice, is not fetched or sent again.
+     */
+    @Test
+    void produceStateInstitutions_duplicateSchools_fetchedAndSentOnce() throws IOException {
+        List<String> requestedIds = Collections.synchronizedList(new ArrayList<>());
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                requestedIds.add(params.get("id"));
+                return fixture("details.html");
+            }
+            return fixture("results-single-page.html");
+        };
+        USAInstitutionFinder dedupFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 1, HtmlParser.STREAMING, false));
+        dedupFinder.setSchoolIdIndex(new SchoolIdIndex());
+
+        dedupFinder.produceStateInstitutions("AL");
+        dedupFinder.produceStateInstitutions("AL");
+
+        verify(institutionsProducer, times(9)).send(anyString(), any(Institution.class));
+        assertThat(requestedIds).hasSize(9).doesNotHaveDuplicates();
+    }
+
+    /**
+     * With several states crawled at once, every state is still crawled and
+     * every school in it sent.
+     */
+    @Test
+    void produceInstitutions_concurrentStates_everyStateCrawled() throws IOException {
+        Set<String> requestedStates = ConcurrentHashMap.newKeySet();
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                return fixture("details.html");
+            }
+            requestedStates.add(params.get("s"));
+            return fixture("results-single-page.html");
+        };
+        USAInstitutionFinder concurrentFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(4, 1, HtmlParser.STREAMING, false));
+
+        RunSummary summary = concurrentFinder.produceInstitutions().join();
+
+        assertThat(requestedStates).containsExactlyInAnyOrder(USAInstitutionFinder.STATES);
+        verify(institutionsProducer, times(USAInstitutionFinder.STATES.length * 9))
+                .send(anyString(), any(Institution.class));
+        assertThat(summary.complete()).isTrue();
+    }
+
+    /**
+     * A state whose results never load stops on its own, while the states
+     * crawled alongside it carry on.
+     */
+    @Test
+    void produceInstitutions_concurrentStatesOneFailing_othersStillCrawled() throws IOException {
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                return fixture("details.html");
+            }
+            if (params.get("s").equals("CA")) {
+                throw new IOException("Registry unavailable");
+            }
+            return fixture("results-single-page.html");
+        };
+        USAInstitutionFinder concurrentFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(4, 1, HtmlParser.STREAMING, false));
+
+        RunSummary summary = concurrentFinder.produceInstitutions().join();
+
+        verify(institutionsProducer, times((USAInstitutionFinder.STATES.length - 1) * 9))
+                .send(anyString(), any(Institution.class));
+        assertThat(summary.complete()).isFalse();
+    }
+
+    /**
+     * With detail pages fetched several at a time, every school on a page is
+     * sent exactly once.
+     */
+    @Test
+    void produceInstitutions_concurrentDetails_eachSchoolSentOnce() throws IOException {
+        List<String> requestedIds = Collections.synchronizedList(new ArrayList<>());
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                requestedIds.add(params.get("id"));
+                return fixture("details.html");
+            }
+            return fixture(params.get("s").equals("AL") ? "results-single-page.html" : "results-empty.html");
+        };
+        USAInstitutionFinder concurrentFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 4, HtmlParser.STREAMING, false));
+
+        RunSummary summary = concurrentFinder.produceInstitutions().join();
+
+        assertThat(requestedIds).hasSize(9).doesNotHaveDuplicates();
+        for (String id : requestedIds) {
+            verify(institutionsProducer).send(eq("usa:" + id), any(Institution.class));
+        }
+        verify(institutionsProducer, times(9)).send(anyString(), any(Institution.class));
+        assertThat(summary.emitted()).isEqualTo(9);
+        assertThat(summary.complete()).isTrue();
+    }
+
+    /**
+     * A detail page that never loads only fails its own school, while the rest
+     * of the page, fetched alongside it, is still sent.
+     */
+    @Test
+    void produceInstitutions_concurrentDetailsOneFailing_onlyThatSchoolFailed() throws IOException {
+        RegistryFetcher fixtureFetcher = (params, headers) -> {
+            if (params.containsKey("id")) {
+                if (params.get("id").equals("100751")) {
+                    throw new IOException("Registry unavailable");
+                }
+                return fixture("details.html");
+            }
+            return fixture(params.get("s").equals("AL") ? "results-single-page.html" : "results-empty.html");
+        };
+        USAInstitutionFinder concurrentFinder = new USAInstitutionFinder(institutionsProducer, fixtureFetcher,
+                retryTemplate, registry, new Crawl(1, 4, HtmlParser.STREAMING, false));
+
+        RunSummary summary = concurrentFinder.produceInstitutions().join();
+
+        verify(institutionsProducer, times(8)).send(anyString(), any(Institution.class));
+        verify(institutionsProducer, never()).send(eq("usa:100751"), any(Institution.class));
+        assertThat(summary.emitted()).isEqualTo(8);
+        assertThat(summary.failed()).isEqualTo(1);
+    }
+
+    /**
+     * A full crawl against a local stand-in registry, with a share of failing requests,
+     * sends every institution once.
+     */
+    @Test
+    void produceInstitutions_standInRegistry_everyInstitutionSent() throws IOException {
+        CollegeNavigatorStandIn.Settings settings = new CollegeNavigatorStandIn.Settings(2, 3, Duration.ZERO, 0.05);
+        try (CollegeNavigatorStandIn standIn = new CollegeNavigatorStandIn(settings)) {
+            RetryTemplate tolerantRetryTemplate = RetryTemplate.builder()
+                    .maxAttempts(10) // Enough that no page is given up on
+                    .fixedBackoff(1L)
+                    .build();
+            USAInstitutionFinder standInFinder = new USAInstitutionFinder(institutionsProducer,
+                    new HttpClientRegistryFetcher(standIn.url(), Duration.ofSeconds(5), Duration.ofSeconds(5), true),
+                    tolerantRetryTemplate, registry, new Crawl(4, 4, HtmlParser.STREAMING, true));
+
+            standInFinder.produceInstitutions();
+
+            verify(institutionsProducer, times(standIn.institutionCount())).send(anyString(), any(Institution.class));
+        }
+    }
+
+    /**
+     * Without a RegistryFetcher, a Retry-After sent with a 429 by the registry
+     * is still waited out before retrying.
+     */
+    @Test
+    void getInstitutionDetails_jsoupRetryAfter_honoured() throws IOException {
+        byte[] details = fixture("details.html").body();
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/collegenavigator", exchange -> {
+            try (exchange) {
+                if (requests.incrementAndGet() == 1) {
+                    exchange.getResponseHeaders().add("Retry-After", "7");
+                    exchange.sendResponseHeaders(429, -1);
+                } else {
+                    exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+                    exchange.sendResponseHeaders(200, details.length);
+                    exchange.getResponseBody().write(details);
+                }
+            }
+        });
+        server.start();
+        try {
+            List<Long> sleeps = new ArrayList<>();
+            RegistryBackOffPolicy backOffPolicy = new RegistryBackOffPolicy(Duration.ofMillis(1), 2.0,
+                    Duration.ofMillis(1), Duration.ofMinutes(1), null);
+            backOffPolicy.setSleeper(sleeps::add);
+            RetryTemplate registryRetryTemplate = RetryTemplate.builder()
+                    .customPolicy(new RegistryRetryPolicy(2))
+                    .customBackoff(backOffPolicy)
+                    .build();
+            USAInstitutionFinder jsoupFinder = new USAInstitutionFinder(institutionsProducer,
+                    Jsoup.connect("http://127.0.0.1:" + server.getAddress().getPort() + "/collegenavigator/"),
+                    registryRetryTemplate, registry);
+
+            Institution institution = jsoupFinder.getInstitutionDetails("University of California-Berkeley", "110635");
+
+            assertThat(institution).isNotNull();
+            assertThat(requests).hasValue(2);
+            assertThat(sleeps).containsExactly(7_000L);
+        } finally {
+            server.stop(0);
+        }
     }
 
     /**
@@ -339,9 +746,10 @@ public class USAInstitutionFinderTests {
     private void setupSchoolInfoMock() throws IOException {
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data(eq("id"), anyString())
-                .get())
-            .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?id=110635").get());
+                .execute())
+            .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?id=110635").get()));
     }
 
     /**
@@ -350,8 +758,9 @@ public class USAInstitutionFinderTests {
     private void setupSchoolInfoExceptionMock() throws IOException {
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data(eq("id"), anyString())
-                .get())
+                .execute())
             .thenThrow(new IOException());
     }
 
@@ -361,11 +770,12 @@ public class USAInstitutionFinderTests {
     private void setupASMock() throws IOException {
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "AS")
                 .data("pg", "1")
-                .get())
-            .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=AS&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=1").get());
+                .execute())
+            .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=AS&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=1").get()));
     }
 
     /**
@@ -374,11 +784,12 @@ public class USAInstitutionFinderTests {
     private void setupALMock() throws IOException {
         when(connection
                 .newRequest()
+                .ignoreHttpErrors(true)
                 .data("p", USAInstitutionFinder.PROGRAMS)
                 .data("s", "AL")
                 .data("pg", "1")
-                .get())
-            .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=AL&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=1").get());
+                .execute())
+            .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=AL&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=1").get()));
     }
 
     /**
@@ -388,11 +799,34 @@ public class USAInstitutionFinderTests {
         for (int i = 1; i <= 6; i++) {
             when(connection
                     .newRequest()
+                    .ignoreHttpErrors(true)
                     .data("p", USAInstitutionFinder.PROGRAMS)
                     .data("s", "NY")
                     .data("pg", Integer.toString(i))
-                    .get())
-                .thenReturn(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=NY&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=" + i).get());
+                    .execute())
+                .thenReturn(page(Jsoup.connect("https://nces.ed.gov/collegenavigator/?s=NY&p=38.0104+38.0103+38.0102+38.0101+38.0199&pg=" + i).get()));
+        }
+    }
+
+    /**
+     * Wrap a page in a successful response, as returned by a Jsoup request. Not
+     * stubbed with when(), as this is called while stubbing the request.
+     */
+    private static Connection.Response page(Document document) {
+        byte[] body = document.outerHtml().getBytes(StandardCharsets.UTF_8);
+        return mock(Connection.Response.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "parse" -> document;
+            case "bodyAsBytes" -> body;
+            default -> RETURNS_DEFAULTS.answer(invocation);
+        });
+    }
+
+    /**
+     * Load a recorded College Navigator page from the test resources.
+     */
+    private static RegistryResponse fixture(String name) throws IOException {
+        try (InputStream fixture = USAInstitutionFinderTests.class.getResourceAsStream("/collegenavigator/" + name)) {
+            return new RegistryResponse(200, "https://nces.ed.gov/collegenavigator/", Map.of(), fixture.readAllBytes());
         }
     }
 }
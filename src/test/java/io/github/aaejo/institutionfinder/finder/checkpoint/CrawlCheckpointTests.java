@@ -0,0 +1,184 @@
+package io.github.aaejo.institutionfinder.finder.checkpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CrawlCheckpointTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Progress saved by an interrupted crawl is picked up by a resumed one.
+     */
+    @Test
+    void begin_resumeAfterInterruptedCrawl_progressRestored() {
+        Path file = tempDir.resolve("checkpoint.json");
+        CrawlCheckpoint interrupted = new CrawlCheckpoint(file, objectMapper, false);
+        interrupted.begin();
+        interrupted.institutionEmitted("100751");
+        interrupted.stateCompleted("AL");
+        interrupted.institutionEmitted("196079");
+        interrupted.pageCompleted("NY", 3);
+
+        CrawlCheckpoint resumed = new CrawlCheckpoint(file, objectMapper, true);
+        resumed.begin();
+
+        assertThat(resumed.isStateComplete("AL")).isTrue();
+        assertThat(resumed.isStateComplete("NY")).isFalse();
+        assertThat(resumed.startPage("NY")).isEqualTo(3);
+        assertThat(resumed.startPage("CA")).isEqualTo(1);
+        assertThat(resumed.isEmitted("100751")).isTrue();
+        assertThat(resumed.isEmitted("196079")).isTrue();
+        assertThat(resumed.isEmitted("110635")).isFalse();
+    }
+
+    /**
+     * A resumed crawl gets back the searches the interrupted one planned, so its
+     * saved pages are for the same combined searches.
+     */
+    @Test
+    void plan_resumeAfterInterruptedCrawl_samePlanRestored() {
+        Path file = tempDir.resolve("checkpoint.json");
+        CrawlCheckpoint interrupted = new CrawlCheckpoint(file, objectMapper, false);
+        interrupted.begin();
+        interrupted.planned(List.of("CA", "AS+FM+GU", "NY"));
+        interrupted.pageCompleted("AS+FM+GU", 2);
+
+        CrawlCheckpoint resumed = new CrawlCheckpoint(file, objectMapper, true);
+        resumed.begin();
+
+        assertThat(resumed.plan()).containsExactly("CA", "AS+FM+GU", "NY");
+        assertThat(resumed.startPage("AS+FM+GU")).isEqualTo(2);
+    }
+
+    /**
+     * A checkpoint saved before plans were has none, but its progress is still restored.
+     */
+    @Test
+    void plan_checkpointWithoutPlan_null() throws IOException {
+        Path file = tempDir.resolve("checkpoint.json");
+        Files.writeString(file, """
+                {"completedStates": ["AL"], "nextPages": {"NY": 3}, "emittedIds": ["100751"]}
+                """);
+
+        CrawlCheckpoint resumed = new CrawlCheckpoint(file, objectMapper, true);
+        resumed.begin();
+
+        assertThat(resumed.plan()).isNull();
+        assertThat(resumed.isStateComplete("AL")).isTrue();
+        assertThat(resumed.startPage("NY")).isEqualTo(3);
+    }
+
+    /**
+     * Sent IDs are appended alongside the checkpoint file rather than rewritten
+     * with it on every page.
+     */
+    @Test
+    void pageCompleted_emittedIds_appendedToOwnFile() throws IOException {
+        Path file = tempDir.resolve("checkpoint.json");
+        Path emittedFile = tempDir.resolve("checkpoint.json.emitted");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, objectMapper, false);
+        checkpoint.begin();
+
+        checkpoint.institutionEmitted("100751");
+        checkpoint.pageCompleted("AL", 2);
+        checkpoint.institutionEmitted("100663");
+        checkpoint.institutionEmitted("100751");
+        checkpoint.pageCompleted("AL", 3);
+
+        assertThat(Files.readAllLines(emittedFile)).containsExactly("100751", "100663");
+        assertThat(Files.readString(file)).doesNotContain("100751").doesNotContain("emittedIds");
+    }
+
+    /**
+     * An ID cut short by an interrupted save is dropped on resume, and IDs sent
+     * after resuming start on a line of their own.
+     */
+    @Test
+    void begin_partlyWrittenEmittedId_dropped() throws IOException {
+        Path file = tempDir.resolve("checkpoint.json");
+        Path emittedFile = tempDir.resolve("checkpoint.json.emitted");
+        Files.writeString(file, """
+                {"completedStates": [], "nextPages": {"AL": 2}}
+                """);
+        Files.writeString(emittedFile, "100751\n1006");
+
+        CrawlCheckpoint resumed = new CrawlCheckpoint(file, objectMapper, true);
+        resumed.begin();
+        resumed.institutionEmitted("100663");
+        resumed.pageCompleted("AL", 3);
+
+        assertThat(resumed.isEmitted("100751")).isTrue();
+        assertThat(resumed.isEmitted("1006")).isFalse();
+        assertThat(Files.readAllLines(emittedFile)).containsExactly("100751", "100663");
+    }
+
+    /**
+     * IDs from a checkpoint saved before they had their own file are kept when
+     * it is next saved.
+     */
+    @Test
+    void begin_emittedIdsInCheckpointFile_movedToOwnFile() throws IOException {
+        Path file = tempDir.resolve("checkpoint.json");
+        Files.writeString(file, """
+                {"completedStates": ["AL"], "nextPages": {"NY": 3}, "emittedIds": ["100751"]}
+                """);
+
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, objectMapper, true);
+        checkpoint.begin();
+        checkpoint.pageCompleted("NY", 4);
+        CrawlCheckpoint resumed = new CrawlCheckpoint(file, objectMapper, true);
+        resumed.begin();
+
+        assertThat(resumed.isEmitted("100751")).isTrue();
+        assertThat(resumed.startPage("NY")).isEqualTo(4);
+    }
+
+    /**
+     * Without resume, an existing checkpoint file is ignored.
+     */
+    @Test
+    void begin_noResume_startsFromBeginning() {
+        Path file = tempDir.resolve("checkpoint.json");
+        CrawlCheckpoint previous = new CrawlCheckpoint(file, objectMapper, false);
+        previous.begin();
+        previous.stateCompleted("AL");
+
+        CrawlCheckpoint fresh = new CrawlCheckpoint(file, objectMapper, false);
+        fresh.begin();
+
+        assertThat(fresh.isStateComplete("AL")).isFalse();
+    }
+
+    /**
+     * The checkpoint file is only removed when every state completed.
+     */
+    @Test
+    void finish_allStatesComplete_fileRemovedOtherwiseKept() {
+        Path file = tempDir.resolve("checkpoint.json");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, objectMapper, true);
+        checkpoint.begin();
+        checkpoint.stateCompleted("AL");
+
+        checkpoint.finish(List.of("AL", "AK"));
+        assertThat(file).exists();
+
+        checkpoint.institutionEmitted("100751");
+        checkpoint.stateCompleted("AK");
+        checkpoint.finish(List.of("AL", "AK"));
+        assertThat(file).doesNotExist();
+        assertThat(tempDir.resolve("checkpoint.json.emitted")).doesNotExist();
+    }
+}
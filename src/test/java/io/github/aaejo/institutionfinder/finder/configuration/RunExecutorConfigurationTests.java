@@ -0,0 +1,93 @@
+package io.github.aaejo.institutionfinder.finder.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RunExecutorConfigurationTests {
+
+    private final RunExecutorConfiguration configuration = new RunExecutorConfiguration();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void institutionFinderExecutor_poolAndQueueFull_runRejected() throws InterruptedException {
+        AsyncTaskExecutor executor = configuration.institutionFinderExecutor(properties(Map.of(
+                "run-executor.core-pool-size", "1",
+                "run-executor.max-pool-size", "1",
+                "run-executor.queue-capacity", "1")), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            executor.execute(() -> await(release));
+
+            assertThat(registry.get("executor.queued").tag("name", "institution-finder").gauge().value())
+                    .isEqualTo(1.0);
+            assertThat(registry.get("jds.institution-finder.executor.utilization").gauge().value())
+                    .isEqualTo(1.0);
+            assertThatExceptionOfType(TaskRejectedException.class)
+                    .isThrownBy(() -> executor.execute(() -> {}));
+        } finally {
+            release.countDown();
+            ((ThreadPoolTaskExecutor) executor).shutdown();
+        }
+    }
+
+    @Test
+    void institutionFinderExecutor_callerRuns_runOnCallingThreadWhenFull() throws InterruptedException {
+        AsyncTaskExecutor executor = configuration.institutionFinderExecutor(properties(Map.of(
+                "run-executor.core-pool-size", "1",
+                "run-executor.max-pool-size", "1",
+                "run-executor.queue-capacity", "0",
+                "run-executor.rejection", "CALLER_RUNS")), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread[] ranOn = new Thread[1];
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            executor.execute(() -> ranOn[0] = Thread.currentThread());
+
+            assertThat(ranOn[0]).isSameAs(Thread.currentThread());
+        } finally {
+            release.countDown();
+            ((ThreadPoolTaskExecutor) executor).shutdown();
+        }
+    }
+
+    private static InstitutionFinderProperties properties(Map<String, String> runExecutor) {
+        Map<String, String> source = new HashMap<>();
+        source.put("aaejo.jds.institution-finder.country", "CANADA");
+        runExecutor.forEach((name, value) -> source.put("aaejo.jds.institution-finder." + name, value));
+        return new Binder(new MapConfigurationPropertySource(source))
+                .bindOrCreate("aaejo.jds.institution-finder", InstitutionFinderProperties.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
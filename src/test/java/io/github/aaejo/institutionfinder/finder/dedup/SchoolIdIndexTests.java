@@ -0,0 +1,72 @@
+package io.github.aaejo.institutionfinder.finder.dedup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SchoolIdIndexTests {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Each ID can only be claimed once until it is released, whether numeric or not.
+     */
+    @Test
+    void claim_duplicateIds_onlyFirstClaimSucceeds() {
+        SchoolIdIndex index = new SchoolIdIndex();
+        index.begin();
+
+        assertThat(index.claim("100751")).isTrue();
+        assertThat(index.claim("100751")).isFalse();
+        assertThat(index.claim("0100751")).isTrue(); // Not the same ID as a string
+        assertThat(index.claim("A1B2")).isTrue();
+        assertThat(index.claim("A1B2")).isFalse();
+        assertThat(index.size()).isEqualTo(3);
+
+        index.release("100751");
+        assertThat(index.contains("100751")).isFalse();
+        assertThat(index.claim("100751")).isTrue();
+    }
+
+    /**
+     * An in-memory index starts empty on every run.
+     */
+    @Test
+    void begin_inMemory_clearedBetweenRuns() {
+        SchoolIdIndex index = new SchoolIdIndex();
+        index.begin();
+        index.claim("100751");
+        index.save();
+
+        index.begin();
+
+        assertThat(index.claim("100751")).isTrue();
+    }
+
+    /**
+     * A persisted index carries IDs over to later runs.
+     */
+    @Test
+    void begin_persisted_idsFromEarlierRunLoaded() {
+        Path file = tempDir.resolve("school-ids.bin");
+        SchoolIdIndex earlier = new SchoolIdIndex(file);
+        earlier.begin();
+        earlier.claim("100751");
+        earlier.claim("999999");
+        earlier.claim("not-numeric");
+        earlier.save();
+
+        SchoolIdIndex later = new SchoolIdIndex(file);
+        later.begin();
+
+        assertThat(later.size()).isEqualTo(3);
+        assertThat(later.claim("100751")).isFalse();
+        assertThat(later.claim("999999")).isFalse();
+        assertThat(later.claim("not-numeric")).isFalse();
+        assertThat(later.claim("110635")).isTrue();
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.aaejo.institutionfinder.finder.delta;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+import io.github.aaejo.messaging.records.Institution;
+
+public class InstitutionDeltaTests {
+
+    private static final Institution ALABAMA = new Institution("The University of Alabama", "USA",
+            "739 University Blvd, Tuscaloosa, Alabama 35487", "www.ua.edu/");
+    private static final Institution BERKELEY = new Institution("University of California-Berkeley", "USA",
+            "200 California Hall, Berkeley, California 94720", "www.berkeley.edu/");
+    private static final Institution COLUMBIA = new Institution("Columbia University in the City of New York", "USA",
+            "West 116 St and Broadway, New York, New York 10027", "www.columbia.edu/");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Only new and changed institutions are reported as changed by the following run,
+     * and ones not seen again are reported as removed.
+     */
+    @Test
+    void isChanged_secondRun_onlyNewAndChanged() {
+        Path file = tempDir.resolve("usa.json");
+        InstitutionDelta first = new InstitutionDelta(file, objectMapper);
+        first.begin();
+        assertThat(send(first, "100751", ALABAMA, SendOutcome.ACKNOWLEDGED)).isTrue();
+        assertThat(send(first, "110635", BERKELEY, SendOutcome.ACKNOWLEDGED)).isTrue();
+        assertThat(first.finish(true)).isEmpty();
+
+        InstitutionDelta second = new InstitutionDelta(file, objectMapper);
+        second.begin();
+        Institution movedBerkeley = new Institution(BERKELEY.name(), "USA", "101 Sproul Hall, Berkeley, CA 94720",
+                BERKELEY.website());
+
+        assertThat(send(second, "110635", movedBerkeley, SendOutcome.ACKNOWLEDGED)).isTrue();
+        assertThat(send(second, "190150", COLUMBIA, SendOutcome.ACKNOWLEDGED)).isTrue();
+        assertThat(second.finish(true)).containsExactly("100751");
+    }
+
+    /**
+     * An unchanged institution is not reported as changed.
+     */
+    @Test
+    void isChanged_unchanged_notChanged() {
+        Path file = tempDir.resolve("usa.json");
+        InstitutionDelta first = new InstitutionDelta(file, objectMapper);
+        first.begin();
+        send(first, "100751", ALABAMA, SendOutcome.ACKNOWLEDGED);
+        first.finish(true);
+
+        InstitutionDelta second = new InstitutionDelta(file, objectMapper);
+        second.begin();
+
+        assertThat(second.isChanged("100751", ALABAMA)).isFalse();
+    }
+
+    /**
+     * An incomplete run reports nothing as removed and keeps earlier fingerprints,
+     * so unchanged institutions it missed are still not resent later.
+     */
+    @Test
+    void finish_incompleteRun_previousFingerprintsKept() {
+        Path file = tempDir.resolve("usa.json");
+        InstitutionDelta first = new InstitutionDelta(file, objectMapper);
+        first.begin();
+        send(first, "100751", ALABAMA, SendOutcome.ACKNOWLEDGED);
+        send(first, "110635", BERKELEY, SendOutcome.ACKNOWLEDGED);
+        first.finish(true);
+
+        InstitutionDelta incomplete = new InstitutionDelta(file, objectMapper);
+        incomplete.begin();
+        send(incomplete, "100751", ALABAMA, SendOutcome.ACKNOWLEDGED);
+        assertThat(incomplete.finish(false)).isEmpty();
+
+        InstitutionDelta third = new InstitutionDelta(file, objectMapper);
+        third.begin();
+        assertThat(third.isChanged("110635", BERKELEY)).isFalse();
+    }
+
+    /**
+     * A change whose send failed keeps the previous fingerprint, so it is neither
+     * removed nor forgotten, and is sent again by the next run.
+     */
+    @Test
+    void track_sendFailed_changeResentNextRun() {
+        Path file = tempDir.resolve("usa.json");
+        InstitutionDelta first = new InstitutionDelta(file, objectMapper);
+        first.begin();
+        send(first, "110635", BERKELEY, SendOutcome.ACKNOWLEDGED);
+        first.finish(true);
+
+        Institution movedBerkeley = new Institution(BERKELEY.name(), "USA", "101 Sproul Hall, Berkeley, CA 94720",
+                BERKELEY.website());
+        InstitutionDelta failed = new InstitutionDelta(file, objectMapper);
+        failed.begin();
+        assertThat(send(failed, "110635", movedBerkeley, SendOutcome.FAILED)).isTrue();
+        assertThat(send(failed, "100751", ALABAMA, SendOutcome.FAILED)).isTrue();
+        assertThat(failed.finish(true)).isEmpty();
+
+        InstitutionDelta third = new InstitutionDelta(file, objectMapper);
+        third.begin();
+        assertThat(third.isChanged("110635", movedBerkeley)).isTrue();
+        assertThat(third.isChanged("100751", ALABAMA)).isTrue();
+    }
+
+    /**
+     * The tracked outcome only completes once the fingerprint is kept, so a run
+     * waiting on it never saves the fingerprints too early.
+     */
+    @Test
+    void track_pendingSend_completesAfterFingerprintKept() {
+        Path file = tempDir.resolve("usa.json");
+        InstitutionDelta first = new InstitutionDelta(file, objectMapper);
+        first.begin();
+        CompletableFuture<SendOutcome> sendOutcome = new CompletableFuture<>();
+        assertThat(first.isChanged("100751", ALABAMA)).isTrue();
+        CompletableFuture<SendOutcome> tracked = first.track("100751", ALABAMA, sendOutcome);
+
+        assertThat(tracked).isNotDone();
+        sendOutcome.complete(SendOutcome.ACKNOWLEDGED);
+        assertThat(tracked).isCompletedWithValue(SendOutcome.ACKNOWLEDGED);
+        first.finish(true);
+
+        InstitutionDelta second = new InstitutionDelta(file, objectMapper);
+        second.begin();
+        assertThat(second.isChanged("100751", ALABAMA)).isFalse();
+    }
+
+    private static boolean send(InstitutionDelta delta, String key, Institution institution, SendOutcome outcome) {
+        boolean changed = delta.isChanged(key, institution);
+        if (changed) {
+            delta.track(key, institution, CompletableFuture.completedFuture(outcome));
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.aaejo.institutionfinder.finder.ipeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.aaejo.institutionfinder.finder.RunRecorder;
+import io.github.aaejo.institutionfinder.finder.RunSummary;
+import io.github.aaejo.institutionfinder.messaging.producer.InstitutionsProducer;
+import io.github.aaejo.institutionfinder.messaging.producer.SendOutcome;
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class IpedsInstitutionFinderTests {
+
+    private final InstitutionsProducer institutionsProducer = mock(InstitutionsProducer.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path dataDirectory;
+
+    @BeforeEach
+    void acknowledgeSends() {
+        when(institutionsProducer.send(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED));
+    }
+
+    /**
+     * Only institutions awarding one of the selected programs are sent, from the
+     * most recent files, with College Navigator style addresses and websites.
+     */
+    @Test
+    void produceInstitutions_ipedsFiles_institutionsWithProgramsSent() throws IOException {
+        write("HD2021.csv", "UNITID,INSTNM,ADDR,CITY,STABBR,ZIP,WEBADDR\n");
+        write("hd2022.csv", """
+                "UNITID","INSTNM","IALIAS","ADDR","CITY","STABBR","ZIP","WEBADDR"
+                100751,"The University of Alabama","","739 University Blvd","Tuscaloosa","AL","35487-0100","www.ua.edu/"
+                110635,"University of California-Berkeley","UC Berkeley","200 California Hall","Berkeley","CA","94720","www.berkeley.edu/"
+                190150,"Columbia University in the City of New York","","West 116 St and Broadway","New York","NY","10027","https://www.columbia.edu/"
+                """);
+        write("c2022_a.csv", """
+                "UNITID","CIPCODE","MAJORNUM","AWLEVEL","CTOTALT"
+                100751,"38.0101",1,5,12
+                100751,"38.0102",1,5,1
+                110635,"52.0201",1,5,300
+                190150,"38.0199",2,7,4
+                """);
+        IpedsInstitutionFinder finder = new IpedsInstitutionFinder(institutionsProducer, dataDirectory,
+                "[hH][dD][0-9]*.[cC][sS][vV]", "[cC][0-9]*_[aA].[cC][sS][vV]", StandardCharsets.UTF_8, registry);
+
+        finder.produceInstitutions();
+
+        verify(institutionsProducer, times(2)).send(anyString(), any(Institution.class));
+        verify(institutionsProducer).send("usa:100751", new Institution(
+                "The University of Alabama",
+                "USA",
+                "739 University Blvd, Tuscaloosa, Alabama 35487-0100",
+                "https://www.ua.edu/"));
+        verify(institutionsProducer).send("usa:190150", new Institution(
+                "Columbia University in the City of New York",
+                "USA",
+                "West 116 St and Broadway, New York, New York 10027",
+                "https://www.columbia.edu/"));
+    }
+
+    /**
+     * A run cancelled while sending from the directory file stops at the next row.
+     */
+    @Test
+    void produceInstitutions_cancelledWhileSending_stopsAtNextRow() throws IOException {
+        write("hd2022.csv", """
+                "UNITID","INSTNM","ADDR","CITY","STABBR","ZIP","WEBADDR"
+                100751,"The University of Alabama","739 University Blvd","Tuscaloosa","AL","35487-0100","www.ua.edu/"
+                190150,"Columbia University in the City of New York","West 116 St and Broadway","New York","NY","10027","www.columbia.edu/"
+                """);
+        write("c2022_a.csv", """
+                "UNITID","CIPCODE"
+                100751,"38.0101"
+                190150,"38.0199"
+                """);
+        RunRecorder run = new RunRecorder("all");
+        when(institutionsProducer.send(anyString(), any())).thenAnswer(invocation -> {
+            run.cancel();
+            return CompletableFuture.completedFuture(SendOutcome.ACKNOWLEDGED);
+        });
+        IpedsInstitutionFinder finder = new IpedsInstitutionFinder(institutionsProducer, dataDirectory,
+                "[hH][dD][0-9]*.[cC][sS][vV]", "[cC][0-9]*_[aA].[cC][sS][vV]", StandardCharsets.UTF_8, registry);
+
+        RunSummary summary = finder.produceInstitutions(run).join();
+
+        verify(institutionsProducer, times(1)).send(anyString(), any(Institution.class));
+        assertThat(summary.complete()).isFalse();
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.writeString(dataDirectory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+}
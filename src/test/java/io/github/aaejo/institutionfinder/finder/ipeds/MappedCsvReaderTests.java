@@ -0,0 +1,52 @@
+package io.github.aaejo.institutionfinder.finder.ipeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedCsvReaderTests {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Quoted fields may contain delimiters, escaped quotes and line breaks, and
+     * CRLF line endings and a byte order mark are handled.
+     */
+    @Test
+    void read_quotedFieldsAndCrlf_fieldsParsed() throws IOException {
+        Path file = tempDir.resolve("test.csv");
+        Files.write(file, ("\uFEFFUNITID,INSTNM,CITY\r\n"
+                + "100751,The University of Alabama,Tuscaloosa\r\n"
+                + "110635,\"University of California, Berkeley\",Berkeley\r\n"
+                + "190150,\"The \"\"City\"\" College\nof New York\",New York\r\n"
+                + "\r\n"
+                + "x,Not a number,").getBytes(StandardCharsets.UTF_8));
+        List<List<String>> rows = new ArrayList<>();
+        List<Integer> unitIds = new ArrayList<>();
+
+        new MappedCsvReader(file, StandardCharsets.UTF_8).read(row -> {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < row.fieldCount(); i++) {
+                fields.add(row.field(i));
+            }
+            rows.add(fields);
+            unitIds.add(row.intField(row.column("unitid")));
+        });
+
+        assertThat(rows).containsExactly(
+                List.of("100751", "The University of Alabama", "Tuscaloosa"),
+                List.of("110635", "University of California, Berkeley", "Berkeley"),
+                List.of("190150", "The \"City\" College\nof New York", "New York"),
+                List.of("x", "Not a number", ""));
+        assertThat(unitIds).containsExactly(100751, 110635, 190150, -1);
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.aaejo.institutionfinder.finder.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.messaging.records.Institution;
+
+public class MappedJsonReaderTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Names and addresses containing commas, brackets and escaped quotes must not split an element.
+     */
+    private final List<Institution> institutions = IntStream.range(0, 200)
+            .mapToObj(i -> new Institution(
+                    "University \"" + i + "\", [Main] {Campus}",
+                    "Canada",
+                    i + " University Ave, Wolfville, NS\\",
+                    "https://example.edu/" + i))
+            .toList();
+
+    @Test
+    void read_ordered_allElementsInOrder(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("institutions.json");
+        Files.writeString(file, "\uFEFF\n  " + objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(institutions));
+        MappedJsonReader reader = new MappedJsonReader(objectMapper, 4, 256, true);
+        List<Institution> read = new ArrayList<>();
+
+        reader.readArray(file, Institution.class, read::add);
+
+        assertThat(read).containsExactlyElementsOf(institutions);
+    }
+
+    @Test
+    void read_unordered_allElements(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("institutions.json");
+        objectMapper.writeValue(file.toFile(), institutions);
+        MappedJsonReader reader = new MappedJsonReader(objectMapper, 4, 256, false);
+        List<Institution> read = Collections.synchronizedList(new ArrayList<>());
+
+        reader.readArray(file, Institution.class, read::add);
+
+        assertThat(read).containsExactlyInAnyOrderElementsOf(institutions);
+    }
+
+    @Test
+    void read_notJsonList_illegalStateException(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("institutions.json");
+        objectMapper.writeValue(file.toFile(), institutions.get(0));
+        MappedJsonReader reader = new MappedJsonReader(objectMapper, 2, 256, true);
+
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> reader.readArray(file, Institution.class, institution -> {
+                }));
+    }
+
+    @Test
+    void read_truncatedFile_ioException(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("institutions.json");
+        String json = objectMapper.writeValueAsString(institutions);
+        Files.writeString(file, json.substring(0, json.length() / 2));
+        MappedJsonReader reader = new MappedJsonReader(objectMapper, 2, 256, true);
+
+        assertThatExceptionOfType(IOException.class)
+                .isThrownBy(() -> reader.readArray(file, Institution.class, institution -> {
+                }));
+    }
+
+    @Test
+    void readLines_ordered_allLinesInOrder(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("institutions.ndjson");
+        StringBuilder ndjson = new StringBuilder();
+        for (Institution institution : institutions) {
+            ndjson.append(objectMapper.writeValueAsString(institution)).append("\r\n");
+        }
+        Files.writeString(file, ndjson);
+        MappedJsonReader reader = new MappedJsonReader(objectMapper, 4, 256, true);
+        List<Institution> read = new ArrayList<>();
+
+        reader.readLines(file, Institution.class, read::add);
+
+        assertThat(read).containsExactlyElementsOf(institutions);
+    }
+}
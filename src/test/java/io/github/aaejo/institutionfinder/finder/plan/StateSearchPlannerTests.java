@@ -0,0 +1,81 @@
+package io.github.aaejo.institutionfinder.finder.plan;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class StateSearchPlannerTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Without counts from a previous run, every state is searched on its own.
+     */
+    @Test
+    void plan_noPreviousCounts_oneSearchPerState() {
+        StateSearchPlanner planner = planner(Map.of());
+
+        assertThat(planner.plan(List.of("AL", "AS", "NY"))).containsExactly("AL", "AS", "NY");
+    }
+
+    /**
+     * Small states are packed into searches that fit on one page, large states are
+     * searched alone, and searches are ordered by expected results.
+     */
+    @Test
+    void plan_previousCounts_smallStatesCombined() {
+        StateSearchPlanner planner = planner(Map.of(
+                "NY", 77,
+                "AL", 9,
+                "AS", 0,
+                "FM", 1,
+                "GU", 2,
+                "MH", 0,
+                "VT", 6,
+                "RI", 8));
+
+        List<String> plan = planner.plan(List.of("AL", "AS", "FM", "GU", "MH", "NY", "RI", "VT"));
+
+        // 3 searches instead of 8: AL (9) + VT (6) + AS (0) + MH (0) = 15, RI (8) + GU (2) + FM (1) = 11
+        assertThat(plan).containsExactly("NY", "AL+VT+AS+MH", "RI+GU+FM");
+    }
+
+    /**
+     * A combined search that outgrew a page is split up again in the next run.
+     */
+    @Test
+    void recordCount_combinedSearchOverflowed_statesSearchedAloneNextRun() {
+        StateSearchPlanner planner = planner(Map.of("AL", 9, "VT", 6));
+        planner.plan(List.of("AL", "VT"));
+
+        planner.recordCount("AL+VT", 17);
+        planner.save();
+
+        StateSearchPlanner nextRun = new StateSearchPlanner(tempDir.resolve("counts.json"), objectMapper, 15, 20);
+        nextRun.begin();
+        assertThat(nextRun.plan(List.of("AL", "VT"))).containsExactly("AL", "VT");
+    }
+
+    private StateSearchPlanner planner(Map<String, Integer> previousCounts) {
+        Path file = tempDir.resolve("counts.json");
+        try {
+            objectMapper.writeValue(file.toFile(), previousCounts);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        StateSearchPlanner planner = new StateSearchPlanner(file, objectMapper, 15, 20);
+        planner.begin();
+        return planner;
+    }
+}
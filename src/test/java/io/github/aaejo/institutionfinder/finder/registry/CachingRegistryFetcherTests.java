@@ -0,0 +1,161 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CachingRegistryFetcherTests {
+
+    private static final Instant NOW = Instant.parse("2023-04-01T00:00:00Z");
+    private static final Duration TTL = Duration.ofDays(7);
+
+    @TempDir
+    Path cacheDir;
+
+    private final List<Map<String, String>> delegateRequestHeaders = new ArrayList<>();
+
+    /**
+     * A fresh entry is served from disk, including by a new cache instance as in a later run.
+     */
+    @Test
+    void fetch_freshEntry_servedWithoutRegistry() throws IOException {
+        RegistryFetcher delegate = recording(new RegistryResponse(200, "https://example.org/?id=1", Map.of(), body("page")));
+
+        cache(delegate, NOW, false).fetch(Map.of("id", "1"));
+        RegistryResponse actual = cache(delegate, NOW.plus(Duration.ofDays(1)), false).fetch(Map.of("id", "1"));
+
+        assertThat(delegateRequestHeaders).hasSize(1);
+        assertThat(actual.body()).isEqualTo(body("page"));
+        assertThat(actual.url()).isEqualTo("https://example.org/?id=1");
+    }
+
+    /**
+     * Parameter order does not affect which entry is used.
+     */
+    @Test
+    void fetch_sameParamsDifferentOrder_sameEntry() throws IOException {
+        RegistryFetcher delegate = recording(new RegistryResponse(200, "https://example.org/", Map.of(), body("page")));
+        CachingRegistryFetcher cache = cache(delegate, NOW, false);
+
+        cache.fetch(orderedParams("s", "AL", "pg", "1"));
+        cache.fetch(orderedParams("pg", "1", "s", "AL"));
+
+        assertThat(delegateRequestHeaders).hasSize(1);
+    }
+
+    /**
+     * A stale entry with an ETag is revalidated with a conditional request, and a
+     * 304 response reuses the cached body.
+     */
+    @Test
+    void fetch_staleEntryNotModified_cachedBodyReused() throws IOException {
+        RegistryFetcher delegate = recording(
+                new RegistryResponse(200, "https://example.org/?id=1", Map.of("ETag", "\"abc\""), body("page")),
+                new RegistryResponse(304, "https://example.org/?id=1", Map.of(), new byte[0]));
+
+        cache(delegate, NOW, false).fetch(Map.of("id", "1"));
+        RegistryResponse actual = cache(delegate, NOW.plus(TTL).plusSeconds(1), false).fetch(Map.of("id", "1"));
+
+        assertThat(delegateRequestHeaders).hasSize(2);
+        assertThat(delegateRequestHeaders.get(1)).containsEntry("If-None-Match", "\"abc\"");
+        assertThat(actual.status()).isEqualTo(200);
+        assertThat(actual.body()).isEqualTo(body("page"));
+    }
+
+    /**
+     * A stale entry that has changed upstream is replaced.
+     */
+    @Test
+    void fetch_staleEntryModified_replaced() throws IOException {
+        RegistryFetcher delegate = recording(
+                new RegistryResponse(200, "https://example.org/?id=1", Map.of("Last-Modified", "yesterday"), body("old")),
+                new RegistryResponse(200, "https://example.org/?id=1", Map.of(), body("new")));
+
+        cache(delegate, NOW, false).fetch(Map.of("id", "1"));
+        cache(delegate, NOW.plus(TTL).plusSeconds(1), false).fetch(Map.of("id", "1"));
+        RegistryResponse actual = cache(delegate, NOW.plus(TTL).plusSeconds(2), false).fetch(Map.of("id", "1"));
+
+        assertThat(delegateRequestHeaders).hasSize(2);
+        assertThat(delegateRequestHeaders.get(1)).containsEntry("If-Modified-Since", "yesterday");
+        assertThat(actual.body()).isEqualTo(body("new"));
+    }
+
+    /**
+     * Offline mode serves stale entries and never contacts the registry.
+     */
+    @Test
+    void fetch_offline_servesStaleAndFailsOnMiss() throws IOException {
+        RegistryFetcher delegate = recording(new RegistryResponse(200, "https://example.org/?id=1", Map.of(), body("page")));
+        cache(delegate, NOW, false).fetch(Map.of("id", "1"));
+
+        CachingRegistryFetcher offlineCache = cache(delegate, NOW.plus(TTL).plus(TTL), true);
+
+        assertThat(offlineCache.fetch(Map.of("id", "1")).body()).isEqualTo(body("page"));
+        assertThatExceptionOfType(RegistryCacheMissException.class)
+                .isThrownBy(() -> offlineCache.fetch(Map.of("id", "2")));
+        assertThat(delegateRequestHeaders).hasSize(1);
+    }
+
+    /**
+     * When the cache grows past its maximum size, the oldest entries are evicted.
+     */
+    @Test
+    void fetch_overMaxSize_oldestEvicted() throws IOException, InterruptedException {
+        RegistryFetcher delegate = (params, headers) -> {
+            delegateRequestHeaders.add(headers);
+            return new RegistryResponse(200, "https://example.org/", Map.of(), body("123456"));
+        };
+        CachingRegistryFetcher cache = new CachingRegistryFetcher(delegate, cacheDir, TTL, 10L, false,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+
+        cache.fetch(Map.of("id", "1"));
+        Thread.sleep(20L); // Entries are aged by file modification time
+        cache.fetch(Map.of("id", "2"));
+        cache.fetch(Map.of("id", "2"));
+        cache.fetch(Map.of("id", "1"));
+
+        // 1, 2, then 1 again after it was evicted
+        assertThat(delegateRequestHeaders).hasSize(3);
+    }
+
+    private CachingRegistryFetcher cache(RegistryFetcher delegate, Instant now, boolean offline) {
+        return new CachingRegistryFetcher(delegate, cacheDir, TTL, 1024L * 1024L, offline,
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    /**
+     * Delegate returning the given responses in turn, recording the headers of each request.
+     */
+    private RegistryFetcher recording(RegistryResponse... responses) {
+        return (params, headers) -> {
+            delegateRequestHeaders.add(headers);
+            return responses[Math.min(delegateRequestHeaders.size(), responses.length) - 1];
+        };
+    }
+
+    private static Map<String, String> orderedParams(String... keysAndValues) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            params.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return params;
+    }
+
+    private static byte[] body(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
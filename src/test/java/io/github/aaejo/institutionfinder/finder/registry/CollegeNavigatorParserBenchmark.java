@@ -0,0 +1,62 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the Jsoup and streaming College Navigator parsers on recorded pages.
+ *
+ * Not part of the regular test run. Run with
+ * {@code ./mvnw test -Dtest=CollegeNavigatorParserBenchmark -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class CollegeNavigatorParserBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void parseResults() throws IOException {
+        RegistryResponse page = CollegeNavigatorParserTests.fixture("results-multi-page.html");
+
+        run("results, jsoup", () -> new JsoupCollegeNavigatorParser().parseResults(page));
+        run("results, streaming", () -> new StreamingCollegeNavigatorParser().parseResults(page));
+    }
+
+    @Test
+    void parseDetails() throws IOException {
+        RegistryResponse page = CollegeNavigatorParserTests.fixture("details.html");
+
+        run("details, jsoup", () -> new JsoupCollegeNavigatorParser().parseDetails(page));
+        run("details, streaming", () -> new StreamingCollegeNavigatorParser().parseDetails(page));
+    }
+
+    private void run(String name, ParseCall call) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            call.parse();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            call.parse();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-20s %10.1f us/page %12d bytes allocated/page%n",
+                name, elapsed / 1_000.0 / MEASURED_ITERATIONS, allocated / MEASURED_ITERATIONS);
+    }
+
+    @FunctionalInterface
+    private interface ParseCall {
+        Object parse() throws IOException;
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Both parsers are run against recorded College Navigator pages and must agree.
+ */
+public class CollegeNavigatorParserTests {
+
+    private final JsoupCollegeNavigatorParser jsoupParser = new JsoupCollegeNavigatorParser();
+    private final StreamingCollegeNavigatorParser streamingParser = new StreamingCollegeNavigatorParser();
+
+    @ParameterizedTest
+    @ValueSource(strings = { "results-empty.html", "results-single-page.html", "results-multi-page.html" })
+    void parseResults_recordedPages_parsersAgree(String fixture) throws IOException {
+        RegistryResponse response = fixture(fixture);
+
+        assertThat(streamingParser.parseResults(response)).isEqualTo(jsoupParser.parseResults(response));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void parseResults_emptyPage_noResults(boolean streaming) throws IOException {
+        ResultsPage actual = parser(streaming).parseResults(fixture("results-empty.html"));
+
+        assertThat(actual.hasResults()).isFalse();
+        assertThat(actual.schools()).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void parseResults_singlePage_allResultsAndNoNextPage(boolean streaming) throws IOException {
+        ResultsPage actual = parser(streaming).parseResults(fixture("results-single-page.html"));
+
+        assertThat(actual.hasResults()).isTrue();
+        assertThat(actual.pagingText()).isEqualTo("Showing All Results");
+        assertThat(actual.hasNextPageLink()).isFalse();
+        assertThat(actual.schools()).hasSize(9);
+        assertThat(actual.schools().get(0)).isEqualTo(new SchoolLink("The University of Alabama", "100751"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void parseResults_multiPage_pagingAndNextPage(boolean streaming) throws IOException {
+        ResultsPage actual = parser(streaming).parseResults(fixture("results-multi-page.html"));
+
+        assertThat(actual.pagingText()).endsWith("Page 1 of 6");
+        assertThat(actual.hasNextPageLink()).isTrue();
+        assertThat(actual.schools()).hasSize(15);
+        assertThat(actual.schools().get(7))
+                .isEqualTo(new SchoolLink("Columbia University in the City of New York", "190259"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void parseDetails_recordedPage_addressAndWebsite(boolean streaming) throws IOException {
+        SchoolDetails expected = new SchoolDetails(
+                "200 California Hall, Berkeley, California 94720",
+                "https://www.berkeley.edu/");
+
+        SchoolDetails actual = parser(streaming).parseDetails(fixture("details.html"));
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    /**
+     * Without a charset in the Content-Type header, the one declared by the page's meta tag is used.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void parseDetails_charsetOnlyInMetaTag_decodedWithIt(boolean streaming) throws IOException {
+        Charset windows1252 = Charset.forName("windows-1252");
+        String html = new String(fixture("details.html").body(), StandardCharsets.UTF_8)
+                .replace("charset=utf-8", "charset=windows-1252")
+                .replace("California Hall", "Café Hall");
+        RegistryResponse response = new RegistryResponse(200, "https://nces.ed.gov/collegenavigator/", Map.of(),
+                html.getBytes(windows1252));
+
+        SchoolDetails actual = parser(streaming).parseDetails(response);
+
+        assertThat(actual.address()).isEqualTo("200 Café Hall, Berkeley, California 94720");
+    }
+
+    private CollegeNavigatorParser parser(boolean streaming) {
+        return streaming ? streamingParser : jsoupParser;
+    }
+
+    static RegistryResponse fixture(String name) throws IOException {
+        try (InputStream fixture = CollegeNavigatorParserTests.class.getResourceAsStream("/collegenavigator/" + name)) {
+            return new RegistryResponse(200, "https://nces.ed.gov/collegenavigator/", Map.of(), fixture.readAllBytes());
+        }
+    }
+}
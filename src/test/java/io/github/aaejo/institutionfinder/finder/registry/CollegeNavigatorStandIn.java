@@ -0,0 +1,205 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.aaejo.institutionfinder.finder.USAInstitutionFinder;
+
+/**
+ * Local stand-in for College Navigator, serving results and detail pages built
+ * from the recorded pages in {@code src/test/resources/collegenavigator}.
+ *
+ * Every state in {@link USAInstitutionFinder#STATES} has the configured number
+ * of results pages, each listing the configured number of schools with IDs
+ * unique across states. Every detail page is the recorded UC Berkeley page.
+ * Responses can be delayed, and a share of requests can fail with a 503.
+ */
+public class CollegeNavigatorStandIn implements AutoCloseable {
+
+    private static final String PAGING_CONTROLS = "<div id=\"ctl00_cphCollegeNavBody_ucResultsMain_divPagingControls\"";
+    private static final String RESULTS_END = "</tbody>\n</table>";
+    private static final List<String> STATES = Arrays.asList(USAInstitutionFinder.STATES);
+
+    /**
+     * @param pagesPerState     results pages for every state. 0 gives every state an empty results page.
+     * @param schoolsPerPage    schools listed on every results page
+     * @param latency           delay before every response
+     * @param errorRate         share of requests, between 0 and 1, that fail with a 503
+     */
+    public record Settings(int pagesPerState, int schoolsPerPage, Duration latency, double errorRate) {
+
+        public static final Settings DEFAULTS = new Settings(3, 15, Duration.ZERO, 0.0);
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final String resultsPrefix;
+    private final String resultsSuffix;
+    private final byte[] emptyResults;
+    private final byte[] details;
+
+    private final AtomicLong resultsRequests = new AtomicLong();
+    private final AtomicLong detailRequests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public CollegeNavigatorStandIn(Settings settings) throws IOException {
+        this.settings = settings;
+
+        String template = new String(resource("results-multi-page.html"), StandardCharsets.UTF_8);
+        this.resultsPrefix = template.substring(0, template.indexOf(PAGING_CONTROLS));
+        this.resultsSuffix = template.substring(template.indexOf(RESULTS_END));
+        this.emptyResults = resource("results-empty.html");
+        this.details = resource("details.html");
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/collegenavigator", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    public URI url() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/collegenavigator/");
+    }
+
+    public long resultsRequests() {
+        return resultsRequests.get();
+    }
+
+    public long detailRequests() {
+        return detailRequests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    /**
+     * @return number of distinct institutions listed across all states
+     */
+    public int institutionCount() {
+        return STATES.size() * settings.pagesPerState() * settings.schoolsPerPage();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Map<String, String> params = query(exchange.getRequestURI());
+            if (params.containsKey("id")) {
+                detailRequests.incrementAndGet();
+            } else {
+                resultsRequests.incrementAndGet();
+            }
+
+            if (!settings.latency().isZero()) {
+                try {
+                    Thread.sleep(settings.latency().toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            if (settings.errorRate() > 0 && ThreadLocalRandom.current().nextDouble() < settings.errorRate()) {
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            byte[] body = params.containsKey("id") ? details : resultsPage(params);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private byte[] resultsPage(Map<String, String> params) {
+        String state = params.getOrDefault("s", "");
+        int stateIndex = STATES.indexOf(state);
+        int page = Integer.parseInt(params.getOrDefault("pg", "1"));
+        int pages = settings.pagesPerState();
+        if (stateIndex < 0 || page < 1 || page > pages || settings.schoolsPerPage() == 0) {
+            return emptyResults;
+        }
+
+        int perPage = settings.schoolsPerPage();
+        int total = pages * perPage;
+        int first = (page - 1) * perPage;
+        String query = "?s=" + state + "&amp;p=" + params.getOrDefault("p", "");
+
+        StringBuilder html = new StringBuilder(resultsPrefix.length() + resultsSuffix.length() + perPage * 700);
+        html.append(resultsPrefix).append(PAGING_CONTROLS).append(" class=\"colorful\">");
+        if (pages == 1) {
+            html.append("Showing All Results</div>\n");
+        } else {
+            html.append("\n<div class=\"pagingResults\">Showing ").append(first + 1).append(" - ")
+                    .append(first + perPage).append(" of ").append(total).append(" Results</div>\n");
+            if (page < pages) {
+                html.append("<div class=\"pagingLinks\"><a href=\"").append(query).append("&amp;pg=")
+                        .append(page + 1).append("\">Next Page &#187;</a></div>\n");
+            }
+            html.append(" Page ").append(page).append(" of ").append(pages).append("\n</div>\n");
+        }
+
+        html.append("<table id=\"ctl00_cphCollegeNavBody_ucResultsMain_tblResults\" class=\"resultsTable\">\n<tbody>\n");
+        for (int i = 0; i < perPage; i++) {
+            int id = 100_000 + stateIndex * 10_000 + first + i;
+            html.append("<tr class=\"").append(i % 2 == 0 ? "resultsW" : "resultsY").append("\">")
+                    .append("<td style=\"width:20px;\"><a href=\"").append(query).append("&amp;id=").append(id)
+                    .append("#general\" title=\"More information\"><img src=\"images/info.gif\" alt=\"info\" /></a></td>")
+                    .append("<td><a href=\"").append(query).append("&amp;id=").append(id).append("\"><strong>")
+                    .append("Stand-in College ").append(state).append(' ').append(first + i + 1)
+                    .append("</strong></a><br />Somewhere, ").append(state).append("</td>")
+                    .append("<td style=\"width:20px;\"><input type=\"image\" src=\"images/add.gif\" alt=\"Add to favorites\" /></td></tr>\n");
+        }
+        html.append(resultsSuffix);
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String rawQuery = uri.getRawQuery();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = CollegeNavigatorStandIn.class.getResourceAsStream("/collegenavigator/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+}
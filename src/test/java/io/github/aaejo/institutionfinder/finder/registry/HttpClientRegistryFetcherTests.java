@@ -0,0 +1,117 @@
+package io.github.aaejo.institutionfinder.finder.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpClientRegistryFetcherTests {
+
+    private static final String PAGE = "<html><body><table id=\"ctl00_cphCollegeNavBody_ucResultsMain_tblResults\"></table></body></html>";
+
+    private HttpServer server;
+    private URI registryUrl;
+    private final List<HttpExchange> exchanges = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+        registryUrl = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/collegenavigator");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Parameters are encoded into the query string and a gzip response is decompressed.
+     */
+    @Test
+    void fetch_gzipResponse_decompressedBody() throws IOException {
+        respond(200, Map.of("Content-Encoding", "gzip", "ETag", "\"abc\""), gzip(PAGE));
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("p", "45.0101+45.1001");
+        params.put("s", "AL");
+        RegistryResponse response = fetcher(true).fetch(params);
+
+        assertThat(new String(response.body(), StandardCharsets.UTF_8)).isEqualTo(PAGE);
+        assertThat(response.header("ETag")).isEqualTo("\"abc\"");
+        assertThat(response.header("Content-Encoding")).isNull();
+        assertThat(exchanges).hasSize(1);
+        assertThat(exchanges.get(0).getRequestURI().getRawQuery()).isEqualTo("p=45.0101%2B45.1001&s=AL");
+        assertThat(exchanges.get(0).getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+    }
+
+    /**
+     * Compression is not requested when disabled, and request headers are passed on.
+     */
+    @Test
+    void fetch_compressionDisabled_plainRequest() throws IOException {
+        respond(304, Map.of(), new byte[0]);
+
+        RegistryResponse response = fetcher(false).fetch(Map.of("id", "1"), Map.of("If-None-Match", "\"abc\""));
+
+        assertThat(response.notModified()).isTrue();
+        assertThat(exchanges.get(0).getRequestHeaders().getFirst("Accept-Encoding")).isNull();
+        assertThat(exchanges.get(0).getRequestHeaders().getFirst("If-None-Match")).isEqualTo("\"abc\"");
+    }
+
+    /**
+     * Error statuses are raised with the registry's requested retry delay.
+     */
+    @Test
+    void fetch_serviceUnavailable_statusExceptionWithRetryAfter() {
+        respond(503, Map.of("Retry-After", "120"), new byte[0]);
+
+        assertThatExceptionOfType(RegistryStatusException.class)
+                .isThrownBy(() -> fetcher(true).fetch(Map.of("id", "1")))
+                .satisfies(e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(503);
+                    assertThat(e.getRetryAfter()).isEqualTo(Duration.ofMinutes(2));
+                });
+    }
+
+    private HttpClientRegistryFetcher fetcher(boolean compression) {
+        return new HttpClientRegistryFetcher(registryUrl, Duration.ofSeconds(5), Duration.ofSeconds(5), compression);
+    }
+
+    private void respond(int status, Map<String, String> headers, byte[] body) {
+        server.createContext("/collegenavigator", exchange -> {
+            exchanges.add(exchange);
+            headers.forEach(exchange.getResponseHeaders()::add);
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,245 @@
+package io.github.aaejo.institutionfinder.finder.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoup.HttpStatusException;
+import org.junit.jupiter.api.Test;
+import org.springframework.retry.support.RetryTemplate;
+
+import io.github.aaejo.institutionfinder.finder.registry.RegistryCacheMissException;
+import io.github.aaejo.institutionfinder.finder.registry.RegistryStatusException;
+
+public class RegistryRetryTests {
+
+    private static final String URL = "https://nces.ed.gov/collegenavigator";
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-03-01T12:00:00Z"));
+    private final List<Long> sleeps = new ArrayList<>();
+
+    /**
+     * Only failures that may go away on their own are retried.
+     */
+    @Test
+    void isTransient_variousFailures_onlyTransientRetried() {
+        assertThat(RegistryRetryPolicy.isTransient(new RuntimeException(new SocketTimeoutException()))).isTrue();
+        assertThat(RegistryRetryPolicy.isTransient(new HttpStatusException("", 503, URL))).isTrue();
+        assertThat(RegistryRetryPolicy.isTransient(new HttpStatusException("", 429, URL))).isTrue();
+        assertThat(RegistryRetryPolicy.isTransient(new HttpStatusException("", 404, URL))).isFalse();
+        assertThat(RegistryRetryPolicy.isTransient(new RuntimeException(new RegistryCacheMissException("")))).isFalse();
+        assertThat(RegistryRetryPolicy.isTransient(new IllegalStateException("Missing address"))).isFalse();
+    }
+
+    /**
+     * A Retry-After delay from the registry is used instead of the exponential backoff, up to the maximum.
+     */
+    @Test
+    void backOff_retryAfter_honouredUpToMaximum() {
+        RetryTemplate retryTemplate = retryTemplate(3, null);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = retryTemplate.execute(context -> {
+            switch (attempts.incrementAndGet()) {
+                case 1 -> throw new RuntimeException(
+                        new RegistryStatusException("", 429, URL, Duration.ofSeconds(10)));
+                case 2 -> throw new RuntimeException(
+                        new RegistryStatusException("", 503, URL, Duration.ofHours(1)));
+                default -> {
+                    return "ok";
+                }
+            }
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(sleeps).containsExactly(10_000L, 60_000L);
+    }
+
+    /**
+     * Without Retry-After, delays grow exponentially with jitter from the upper half of each interval.
+     */
+    @Test
+    void backOff_noRetryAfter_exponentialWithJitter() {
+        RetryTemplate retryTemplate = retryTemplate(4, null);
+
+        assertThatThrownBy(() -> retryTemplate.execute(context -> {
+            throw new RuntimeException(new SocketTimeoutException());
+        })).hasCauseInstanceOf(SocketTimeoutException.class);
+
+        assertThat(sleeps).hasSize(3);
+        assertThat(sleeps.get(0)).isBetween(500L, 1_000L);
+        assertThat(sleeps.get(1)).isBetween(1_000L, 2_000L);
+        assertThat(sleeps.get(2)).isBetween(1_500L, 3_000L); // Capped at the maximum interval
+    }
+
+    /**
+     * Client errors fail immediately, without retries or opening the circuit breaker.
+     */
+    @Test
+    void execute_clientError_notRetried() {
+        RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(1, Duration.ofSeconds(30),
+                Duration.ofMinutes(5), clock);
+        RetryTemplate retryTemplate = retryTemplate(3, breaker);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryTemplate.execute(context -> {
+            attempts.incrementAndGet();
+            throw new RuntimeException(new HttpStatusException("", 404, URL));
+        })).hasCauseInstanceOf(HttpStatusException.class);
+
+        assertThat(attempts).hasValue(1);
+        assertThat(sleeps).isEmpty();
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * Repeated failures open the breaker, a failed probe keeps it open for longer, and a successful probe closes it.
+     */
+    @Test
+    void circuitBreaker_repeatedFailures_opensThenProbes() throws InterruptedException {
+        RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(3, Duration.ofSeconds(30),
+                Duration.ofSeconds(45), clock);
+
+        breaker.recordFailure(null);
+        breaker.recordFailure(null);
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.CLOSED);
+        breaker.recordFailure(null);
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.OPEN);
+
+        clock.advance(Duration.ofSeconds(30));
+        breaker.awaitPermission();
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.HALF_OPEN);
+
+        // Failed probe reopens for double the time, capped at the maximum
+        breaker.recordFailure(null);
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.OPEN);
+        clock.advance(Duration.ofSeconds(44));
+        Thread waiter = new Thread(() -> {
+            try {
+                breaker.awaitPermission();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(100L);
+        assertThat(waiter.isAlive()).isTrue();
+
+        clock.advance(Duration.ofSeconds(1));
+        waiter.join(5_000L);
+        assertThat(waiter.isAlive()).isFalse();
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.HALF_OPEN);
+
+        breaker.recordSuccess();
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * A retry waits for the breaker opened by the attempt before it, not just the first attempt.
+     */
+    @Test
+    void execute_breakerOpenedByFirstAttempt_retryWaitsForIt() throws InterruptedException {
+        RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(1, Duration.ofSeconds(1),
+                Duration.ofMinutes(5), clock);
+        RetryTemplate retryTemplate = retryTemplate(2, breaker);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Thread request = new Thread(() -> retryTemplate.execute(context -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException(new SocketTimeoutException());
+            }
+            return "ok";
+        }));
+        request.start();
+        request.join(200L);
+        assertThat(request.isAlive()).isTrue();
+        assertThat(attempts).hasValue(1);
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.OPEN);
+
+        clock.advance(Duration.ofSeconds(1));
+        request.join(5_000L);
+        assertThat(request.isAlive()).isFalse();
+        assertThat(attempts).hasValue(2);
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * A probe that never reports back doesn't hold up other requests for good.
+     */
+    @Test
+    void awaitPermission_probeNeverCompletes_anotherProbeLetThrough() throws InterruptedException {
+        RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(1, Duration.ofSeconds(1),
+                Duration.ofMinutes(5), clock);
+        breaker.recordFailure(null);
+        clock.advance(Duration.ofSeconds(1));
+        breaker.awaitPermission(); // The probe, which never reports back
+
+        Thread waiter = new Thread(() -> {
+            try {
+                breaker.awaitPermission();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(100L);
+        assertThat(waiter.isAlive()).isTrue();
+
+        clock.advance(Duration.ofSeconds(1));
+        waiter.join(5_000L);
+        assertThat(waiter.isAlive()).isFalse();
+        assertThat(breaker.getState()).isEqualTo(RegistryCircuitBreaker.State.HALF_OPEN);
+    }
+
+    private RetryTemplate retryTemplate(int maxAttempts, RegistryCircuitBreaker breaker) {
+        RegistryBackOffPolicy backOffPolicy = new RegistryBackOffPolicy(Duration.ofSeconds(1), 2.0,
+                Duration.ofSeconds(3), Duration.ofMinutes(1), breaker);
+        backOffPolicy.setSleeper(sleeps::add);
+
+        var builder = RetryTemplate.builder()
+                .customPolicy(new RegistryRetryPolicy(maxAttempts))
+                .customBackoff(backOffPolicy);
+        if (breaker != null) {
+            builder.withListener(breaker);
+        }
+        return builder.build();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
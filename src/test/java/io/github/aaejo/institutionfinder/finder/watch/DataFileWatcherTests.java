@@ -0,0 +1,43 @@
+package io.github.aaejo.institutionfinder.finder.watch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DataFileWatcherTests {
+
+    @Test
+    void watch_matchingFileEditedRepeatedly_callbackRunOnce(@TempDir Path tempDir)
+            throws IOException, InterruptedException {
+        DataFileWatcher watcher = new DataFileWatcher(Duration.ofMillis(500));
+        CountDownLatch changed = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        watcher.watch(tempDir, "canada.json"::equals, () -> {
+            runs.incrementAndGet();
+            changed.countDown();
+        });
+        watcher.start();
+
+        try {
+            Files.writeString(tempDir.resolve("uk.json"), "[]");
+            Files.writeString(tempDir.resolve("canada.json"), "[");
+            Files.writeString(tempDir.resolve("canada.json"), "[]");
+
+            assertThat(changed.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(runs).hasValue(1);
+        } finally {
+            watcher.stop();
+        }
+
+        assertThat(watcher.isRunning()).isFalse();
+    }
+}
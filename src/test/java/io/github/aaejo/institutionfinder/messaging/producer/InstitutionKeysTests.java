@@ -0,0 +1,28 @@
+package io.github.aaejo.institutionfinder.messaging.producer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class InstitutionKeysTests {
+
+    @Test
+    void byName_spellingVariants_sameKey() {
+        assertThat(InstitutionKeys.byName("NEW_ZEALAND", "Te Whare Wānanga o Waitaha – University of Canterbury"))
+                .isEqualTo("new zealand:te whare wananga o waitaha university of canterbury")
+                .isEqualTo(InstitutionKeys.byName("new zealand",
+                        "  te whare wananga o waitaha, University of  Canterbury "));
+    }
+
+    @Test
+    void bySourceId_countryNormalized() {
+        assertThat(InstitutionKeys.bySourceId("USA", " 100751 ")).isEqualTo("usa:100751");
+    }
+
+    @Test
+    void country_keyFromEitherScheme_normalizedCountry() {
+        assertThat(InstitutionKeys.country(InstitutionKeys.byName("NEW_ZEALAND", "Lincoln University")))
+                .isEqualTo("new zealand");
+        assertThat(InstitutionKeys.country(InstitutionKeys.bySourceId("USA", "100751"))).isEqualTo("usa");
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.aaejo.institutionfinder.messaging.producer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.institutionfinder.messaging.configuration.ProducerProperties;
+import io.github.aaejo.institutionfinder.messaging.spool.SendSpool;
+import io.github.aaejo.institutionfinder.messaging.spool.SpoolDrainer;
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class InstitutionsProducerTests {
+
+    private static final String KEY = "canada:acadia university";
+
+    private final Institution institution = new Institution(
+            "Acadia University",
+            "Canada",
+            "15 University Ave, Wolfville, NS, B4P 2R6",
+            "https://philosophy.acadiau.ca/facstaff.html");
+
+    /**
+     * Template whose sends are only acknowledged when the test completes their futures,
+     * unless the broker is set to acknowledge them immediately.
+     */
+    private final List<CompletableFuture<SendResult<String, Institution>>> pendingSends = new CopyOnWriteArrayList<>();
+    private final List<String> sentKeys = new CopyOnWriteArrayList<>();
+    private volatile boolean brokerAcknowledges = false;
+    private final KafkaTemplate<String, Institution> template = new KafkaTemplate<>(
+            new DefaultKafkaProducerFactory<>(Map.of())) {
+        @Override
+        public CompletableFuture<SendResult<String, Institution>> send(String topic, String key,
+                Institution data) {
+            sentKeys.add(key);
+            if (brokerAcknowledges) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<SendResult<String, Institution>> future = new CompletableFuture<>();
+            pendingSends.add(future);
+            return future;
+        }
+    };
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void send_maxInFlightReached_blocksUntilAcknowledged()
+            throws InterruptedException, ExecutionException, TimeoutException {
+        InstitutionsProducer producer = new InstitutionsProducer(template, properties(2), registry);
+        producer.send(KEY, institution);
+        producer.send(KEY, institution);
+
+        CompletableFuture<Void> thirdSend = CompletableFuture.runAsync(() -> producer.send(KEY, institution));
+        Thread.sleep(200);
+        assertThat(thirdSend).isNotDone();
+        assertThat(registry.get("jds.institution-finder.producer.in-flight").gauge().value()).isEqualTo(2);
+
+        pendingSends.get(0).completeExceptionally(new IllegalStateException("Broker unavailable"));
+        thirdSend.get(5, TimeUnit.SECONDS);
+
+        assertThat(pendingSends).hasSize(3);
+        assertThat(registry.get("jds.institution-finder.producer.in-flight").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("jds.institution-finder.producer.wait").timer().max(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void send_noLimit_neverBlocks() {
+        InstitutionsProducer producer = new InstitutionsProducer(template, properties(0), registry);
+
+        for (int i = 0; i < 10_000; i++) {
+            producer.send(KEY, institution);
+        }
+
+        assertThat(pendingSends).hasSize(10_000);
+        assertThat(registry.get("jds.institution-finder.producer.in-flight").gauge().value()).isEqualTo(10_000);
+    }
+
+    @Test
+    void send_acknowledged_ackLatencyRecordedByCountry() throws InterruptedException {
+        InstitutionsProducer producer = new InstitutionsProducer(template, properties(0), registry);
+        producer.send(KEY, institution);
+        producer.sendTombstone("usa:110635");
+
+        Thread.sleep(50);
+        pendingSends.forEach(send -> send.complete(null));
+
+        assertThat(registry.get("jds.institution-finder.producer.ack").tag("country", "canada").timer()
+                .max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+        assertThat(registry.get("jds.institution-finder.producer.ack").tag("country", "usa").timer().count())
+                .isEqualTo(1);
+    }
+
+    /**
+     * Once a send fails, it and every later send are spooled and replayed in order.
+     */
+    @Test
+    void send_brokerUnavailable_spooledAndReplayedInOrder(@TempDir Path tempDir) {
+        InstitutionsProducer producer = new InstitutionsProducer(template, properties(10), registry);
+        SendSpool spool = new SendSpool(tempDir.resolve("spool.ndjson"), new ObjectMapper(), registry);
+        producer.setSpool(spool);
+
+        producer.send("canada:acadia university", institution);
+        pendingSends.get(0).completeExceptionally(new IllegalStateException("Broker unavailable"));
+        producer.sendTombstone("canada:brandon university");
+
+        assertThat(spool.pending()).isEqualTo(2);
+        assertThat(sentKeys).containsExactly("canada:acadia university");
+
+        brokerAcknowledges = true;
+        new SpoolDrainer(spool, producer, 1, Duration.ofSeconds(10), Duration.ofSeconds(1)).drain();
+
+        assertThat(spool.hasPending()).isFalse();
+        assertThat(sentKeys).containsExactly(
+                "canada:acadia university", "canada:acadia university", "canada:brandon university");
+
+        producer.send("canada:acadia university", institution);
+        assertThat(sentKeys).hasSize(4);
+    }
+
+    /**
+     * A send spooled while an earlier send with the same key is in flight
+     * stays behind it when that one fails and is spooled too.
+     */
+    @Test
+    void send_spooledWhileSameKeyInFlight_spooledAfterIt(@TempDir Path tempDir) {
+        InstitutionsProducer producer = new InstitutionsProducer(template, properties(1), registry);
+        SendSpool spool = new SendSpool(tempDir.resolve("spool.ndjson"), new ObjectMapper(), registry);
+        producer.setSpool(spool);
+
+        producer.send("canada:acadia university", institution);
+        producer.sendTombstone("canada:brandon university"); // Over the limit, so spooled
+        CompletableFuture<SendOutcome> tombstone = producer.sendTombstone("canada:acadia university");
+        assertThat(tombstone).isNotDone();
+        pendingSends.get(0).completeExceptionally(new IllegalStateException("Broker unavailable"));
+
+        assertThat(tombstone).isCompletedWithValue(SendOutcome.SPOOLED);
+        assertThat(spool.peek(10).sends()).extracting(SendSpool.SpooledSend::key).containsExactly(
+                "canada:brandon university", "canada:acadia university", "canada:acadia university");
+        assertThat(spool.peek(10).sends().get(2).institution()).isNull();
+    }
+
+    private static ProducerProperties properties(int maxInFlight) {
+        return new ProducerProperties(maxInFlight, ProducerProperties.Topic.DEFAULTS, ProducerProperties.Spool.DEFAULTS);
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.aaejo.institutionfinder.messaging.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.messaging.records.Institution;
+
+/**
+ * Compares message size and serialization throughput of the JSON serializer
+ * configured by default with the Smile serializer, over the institutions
+ * bundled on the classpath. Message size counts the headers a serializer
+ * adds along with the value, as both are sent.
+ *
+ * Not part of the regular test run. Run with
+ * {@code ./mvnw test -Dtest=SerializationBenchmark -Dbenchmark=true}, optionally
+ * adding {@code -Dbenchmark.rounds=200} to change how many times every
+ * institution is serialized.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SerializationBenchmark {
+
+    private static final String TOPIC = "institutions";
+
+    @Test
+    void serialize() throws IOException {
+        List<Institution> institutions = new ArrayList<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String file : List.of("australia.json", "canada.json", "new_zealand.json", "uk.json")) {
+            try (InputStream inputStream = new ClassPathResource(file).getInputStream()) {
+                institutions.addAll(objectMapper.readValue(inputStream, new TypeReference<List<Institution>>() {
+                }));
+            }
+        }
+        int rounds = Integer.getInteger("benchmark.rounds", 200);
+
+        try (JsonSerializer<Institution> jsonSerializer = new JsonSerializer<>();
+                JsonDeserializer<Institution> jsonDeserializer = new JsonDeserializer<>(Institution.class, false)) {
+            measure("JSON", jsonSerializer, jsonDeserializer, institutions, rounds);
+        }
+        measure("Smile", new SmileInstitutionSerializer(), new SmileInstitutionDeserializer(), institutions, rounds);
+    }
+
+    private static void measure(String name, Serializer<Institution> serializer,
+            Deserializer<Institution> deserializer, List<Institution> institutions, int rounds) {
+        long bytes = 0;
+        List<byte[]> serialized = new ArrayList<>(institutions.size());
+        for (Institution institution : institutions) {
+            RecordHeaders headers = new RecordHeaders();
+            byte[] value = serializer.serialize(TOPIC, headers, institution);
+            serialized.add(value);
+            bytes += value.length;
+            for (Header header : headers) {
+                bytes += header.key().getBytes(StandardCharsets.UTF_8).length + header.value().length;
+            }
+        }
+
+        // Warm up before timing, then time the same work
+        long checksum = run(serializer, deserializer, institutions, serialized, rounds);
+        long start = System.nanoTime();
+        checksum += run(serializer, deserializer, institutions, serialized, rounds);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long messages = (long) institutions.size() * rounds;
+        System.out.printf("%-5s %7.1f bytes/message, %10.0f serialized+deserialized/sec (checksum %d)%n",
+                name, (double) bytes / institutions.size(), messages / seconds, checksum);
+    }
+
+    private static long run(Serializer<Institution> serializer, Deserializer<Institution> deserializer,
+            List<Institution> institutions, List<byte[]> serialized, int rounds) {
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < institutions.size(); i++) {
+                checksum += serializer.serialize(TOPIC, new RecordHeaders(), institutions.get(i)).length;
+                checksum += deserializer.deserialize(TOPIC, serialized.get(i)).name().length();
+            }
+        }
+        return checksum;
+    }
+}
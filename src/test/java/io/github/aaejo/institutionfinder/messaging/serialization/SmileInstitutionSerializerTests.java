@@ -0,0 +1,51 @@
+package io.github.aaejo.institutionfinder.messaging.serialization;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import io.github.aaejo.messaging.records.Institution;
+
+public class SmileInstitutionSerializerTests {
+
+    private final SmileInstitutionSerializer serializer = new SmileInstitutionSerializer();
+    private final SmileInstitutionDeserializer deserializer = new SmileInstitutionDeserializer();
+
+    private final Institution institution = new Institution(
+            "Acadia University",
+            "Canada",
+            "15 University Ave, Wolfville, NS, B4P 2R6",
+            "https://philosophy.acadiau.ca/facstaff.html");
+
+    @Test
+    void serialize_roundTrip_smallerThanJson() {
+        RecordHeaders headers = new RecordHeaders();
+        byte[] smile = serializer.serialize("institutions", headers, institution);
+        byte[] json;
+        try (JsonSerializer<Institution> jsonSerializer = new JsonSerializer<>()) {
+            json = jsonSerializer.serialize("institutions", institution);
+        }
+
+        assertThat(deserializer.deserialize("institutions", smile)).isEqualTo(institution);
+        assertThat(smile.length).isLessThan(json.length);
+        assertThat(headers.toArray()).isEmpty(); // Nothing sent besides the value
+    }
+
+    @Test
+    void deserialize_json_readAsJson() {
+        byte[] json;
+        try (JsonSerializer<Institution> jsonSerializer = new JsonSerializer<>()) {
+            json = jsonSerializer.serialize("institutions", institution);
+        }
+
+        assertThat(deserializer.deserialize("institutions", json)).isEqualTo(institution);
+    }
+
+    @Test
+    void serialize_tombstone_null() {
+        assertThat(serializer.serialize("institutions", new RecordHeaders(), null)).isNull();
+        assertThat(deserializer.deserialize("institutions", null)).isNull();
+    }
+}
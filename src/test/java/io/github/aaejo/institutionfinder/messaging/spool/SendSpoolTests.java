@@ -0,0 +1,97 @@
+package io.github.aaejo.institutionfinder.messaging.spool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.aaejo.messaging.records.Institution;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SendSpoolTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Institution acadia = new Institution(
+            "Acadia University",
+            "Canada",
+            "15 University Ave, Wolfville, NS, B4P 2R6",
+            "https://philosophy.acadiau.ca/facstaff.html");
+    private final Institution ottawa = new Institution(
+            "University of Ottawa",
+            "Canada",
+            "75 Laurier Ave E, Ottawa, ON, K1N 6N5",
+            "https://www.uottawa.ca/faculty-arts/philosophy");
+
+    /**
+     * Sends replayed before a restart are not replayed again after it.
+     */
+    @Test
+    void peek_afterRemoveAndReopen_continuesFromOffset(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("spool.ndjson");
+        try (SendSpool spool = new SendSpool(file, objectMapper, registry)) {
+            spool.append("canada:acadia university", acadia);
+            spool.append("canada:brandon university", null);
+            spool.append("canada:university of ottawa", ottawa);
+
+            SendSpool.Batch batch = spool.peek(2);
+            assertThat(batch.sends()).containsExactly(
+                    new SendSpool.SpooledSend("canada:acadia university", acadia),
+                    new SendSpool.SpooledSend("canada:brandon university", null));
+            spool.remove(batch);
+        }
+
+        try (SendSpool spool = new SendSpool(file, objectMapper, new SimpleMeterRegistry())) {
+            assertThat(spool.pending()).isEqualTo(1);
+            SendSpool.Batch batch = spool.peek(10);
+            assertThat(batch.sends()).containsExactly(new SendSpool.SpooledSend("canada:university of ottawa", ottawa));
+
+            spool.remove(batch);
+            assertThat(spool.hasPending()).isFalse();
+        }
+
+        assertThat(Files.size(file)).isZero();
+    }
+
+    /**
+     * A send cut short at the end of the spool is dropped on opening, and an
+     * unreadable one is moved aside rather than blocking the sends after it.
+     */
+    @Test
+    void peek_corruptAndPartialLines_skippedAndDrained(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("spool.ndjson");
+        try (SendSpool spool = new SendSpool(file, objectMapper, registry)) {
+            spool.append("canada:acadia university", acadia);
+        }
+        Files.writeString(file, "{\"key\": \"canada:brandon\n", StandardOpenOption.APPEND);
+        try (SendSpool spool = new SendSpool(file, objectMapper, new SimpleMeterRegistry())) {
+            spool.append("canada:university of ottawa", ottawa);
+        }
+        Files.writeString(file, "{\"key\": \"canada:mcgill", StandardOpenOption.APPEND);
+
+        try (SendSpool spool = new SendSpool(file, objectMapper, new SimpleMeterRegistry())) {
+            assertThat(spool.pending()).isEqualTo(3);
+            SendSpool.Batch batch = spool.peek(10);
+            assertThat(batch.sends()).containsExactly(
+                    new SendSpool.SpooledSend("canada:acadia university", acadia),
+                    new SendSpool.SpooledSend("canada:university of ottawa", ottawa));
+            assertThat(batch.rejected()).isEqualTo(1);
+
+            spool.remove(batch);
+            assertThat(spool.hasPending()).isFalse();
+        }
+
+        assertThat(Files.size(file)).isZero();
+        assertThat(Files.readString(tempDir.resolve("spool.ndjson.rejected"), StandardCharsets.UTF_8))
+                .isEqualTo("{\"key\": \"canada:brandon\n");
+    }
+}